@@ -1,6 +1,7 @@
 package com.wave.hextractor;
 
 import com.wave.hextractor.gui.HexViewer;
+import com.wave.hextractor.object.HexTable;
 import com.wave.hextractor.util.*;
 
 import java.io.File;
@@ -26,8 +27,13 @@ public class Hextractor {
 		INSERT_HEX,
 		INSERT_FILE,
 		ASCII_TO_HEX,
+		ASCII_TO_HEX_OPTIMAL,
 		EXTRACT_ASCII,
 		SEARCH_RELATIVE_8,
+		SEARCH_RELATIVE_16,
+		FIND_HEX,
+		FUZZY_FIND,
+		FIND_REGEX,
 		SEARCH_ALL,
 		CLEAN_EXTRACTED_FILE,
 		CREATE_IPS_PATCH,
@@ -74,12 +80,27 @@ public class Hextractor {
 	/** The Constant MODE_ASCII_TO_HEX. */
 	public static final String MODE_ASCII_TO_HEX = "-h";
 
+	/** The Constant MODE_ASCII_TO_HEX_OPTIMAL. */
+	public static final String MODE_ASCII_TO_HEX_OPTIMAL = "-ho";
+
 	/** The Constant MODE_EXTRACT_ASCII. */
 	public static final String MODE_EXTRACT_ASCII = "-a";
 
 	/** The Constant MODE_SEARCH_RELATIVE_8. */
 	public static final String MODE_SEARCH_RELATIVE_8 = "-sr8";
 
+	/** The Constant MODE_SEARCH_RELATIVE_16. */
+	public static final String MODE_SEARCH_RELATIVE_16 = "-sr16";
+
+	/** The Constant MODE_FIND_HEX. */
+	public static final String MODE_FIND_HEX = "-fh";
+
+	/** The Constant MODE_FUZZY_FIND. */
+	public static final String MODE_FUZZY_FIND = "-ff";
+
+	/** The Constant MODE_FIND_REGEX. */
+	public static final String MODE_FIND_REGEX = "-fre";
+
 	/** The Constant MODE_SEARCH_ALL. */
 	public static final String MODE_SEARCH_ALL = "-sa";
 
@@ -139,8 +160,13 @@ public class Hextractor {
 			case MODE_INSERT_HEX -> Mode.INSERT_HEX;
 			case MODE_INSERT_FILE -> Mode.INSERT_FILE;
 			case MODE_ASCII_TO_HEX -> Mode.ASCII_TO_HEX;
+			case MODE_ASCII_TO_HEX_OPTIMAL -> Mode.ASCII_TO_HEX_OPTIMAL;
 			case MODE_EXTRACT_ASCII -> Mode.EXTRACT_ASCII;
 			case MODE_SEARCH_RELATIVE_8 -> Mode.SEARCH_RELATIVE_8;
+			case MODE_SEARCH_RELATIVE_16 -> Mode.SEARCH_RELATIVE_16;
+			case MODE_FIND_HEX -> Mode.FIND_HEX;
+			case MODE_FUZZY_FIND -> Mode.FUZZY_FIND;
+			case MODE_FIND_REGEX -> Mode.FIND_REGEX;
 			case MODE_SEARCH_ALL -> Mode.SEARCH_ALL;
 			case MODE_CLEAN_EXTRACTED_FILE -> Mode.CLEAN_EXTRACTED_FILE;
 			case CREATE_IPS_PATCH -> Mode.CREATE_IPS_PATCH;
@@ -266,6 +292,14 @@ public class Hextractor {
 				printUsage(rb);
 			}
 			break;
+		case 7:
+			if (mode == Mode.SEARCH_ALL) {
+				FileUtils.searchAllStrings(args[1], args[2], Integer.parseInt(args[3]), args[4], args[5],
+						Float.parseFloat(args[6]));
+			} else {
+				printUsage(rb);
+			}
+			break;
 		default:
 		case 1:
 			if (mode == Mode.HEX_VIEW) {
@@ -281,6 +315,8 @@ public class Hextractor {
 		switch (mode) {
 			case EXTRACT_ASCII -> FileUtils.extractAsciiFile(args[1], args[2], args[3], args[4]);
 			case SEARCH_ALL -> FileUtils.searchAllStrings(args[1], args[2], Integer.parseInt(args[3]), args[4]);
+			case SEARCH_RELATIVE_16 -> FileUtils.searchRelative16Bits(args[1], args[2], args[3], args[4]);
+			case FUZZY_FIND -> FileUtils.fuzzyFindString(args[1], args[2], args[3], Integer.parseInt(args[4]));
 			case EXTRACT_ASCII_3_4 -> FileUtils.extractAscii3To4Data(args[1], args[2], args[3], args[4]);
 			default -> printUsage(rb);
 		}
@@ -289,7 +325,9 @@ public class Hextractor {
 	private static void manageModes4Args(String[] args, ResourceBundle rb, Mode mode) throws IOException {
 		switch (mode) {
 			case ASCII_TO_HEX -> FileUtils.insertAsciiAsHex(args[1], args[2], args[3]);
+			case ASCII_TO_HEX_OPTIMAL -> FileUtils.insertAsciiAsHex(args[1], args[2], args[3], HexTable.EncodingMode.OPTIMAL);
 			case SEARCH_RELATIVE_8 -> FileUtils.searchRelative8Bits(args[1], args[2], args[3]);
+			case FIND_REGEX -> FileUtils.findRegex(args[1], args[2], args[3]);
 			case CREATE_IPS_PATCH -> IpsPatchUtils.createIpsPatch(args[1], args[2], args[3]);
 			case APPLY_IPS_PATCH -> IpsPatchUtils.applyIpsPatch(args[1], args[2], args[3]);
 			case VERIFY_IPS_PATCH -> IpsPatchUtils.validateIpsPatch(args[1], args[2], args[3]);
@@ -309,6 +347,7 @@ public class Hextractor {
 			case INSERT_HEX -> FileUtils.insertHexData(args[1], args[2]);
 			case CLEAN_EXTRACTED_FILE -> FileUtils.cleanExtractedFile(args[1], args[2]);
 			case HEX_VIEW -> HexViewer.view(args[1], args[2]);
+			case FIND_HEX -> FileUtils.findHex(args[1], args[2]);
 			case FIX_ZXTAP_CHECKSUM -> TAPChecksumUtils.checkUpdateZxTapChecksum(args[1], args[2]);
 			case FIX_ZXTZX_CHECKSUM -> TAPChecksumUtils.checkUpdateZxTzxChecksum(args[1], args[2]);
 			default -> printUsage(rb);
@@ -1,6 +1,11 @@
 package com.wave.hextractor.gui;
 
+import com.wave.hextractor.object.DictionaryIndex;
 import com.wave.hextractor.object.HexTable;
+import com.wave.hextractor.object.MaskedBytePattern;
+import com.wave.hextractor.object.RegexSearch;
+import com.wave.hextractor.object.SearchHitBuffer;
+import com.wave.hextractor.object.SuffixArrayIndex;
 import com.wave.hextractor.pojo.OffsetEntry;
 import com.wave.hextractor.pojo.TableSearchResult;
 import com.wave.hextractor.util.*;
@@ -25,6 +30,10 @@ import java.util.*;
 import java.util.List;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Gui for the hextractor tools.
@@ -129,6 +138,7 @@ public class HexViewer extends JFrame implements ActionListener {
     private JMenuItem loadOffsets;
     private JMenuItem find;
     private JMenuItem findHex;
+    private JMenuItem findRegex;
     private JMenuItem findPointers;
     private JMenuItem clearOffsets;
     private JMenuItem compareRomsItem;
@@ -183,6 +193,9 @@ public class HexViewer extends JFrame implements ActionListener {
     /** The Constant SEARCHRES_FONT_SIZE. */
     private static final int SEARCHRES_FONT_SIZE = com.wave.hextractor.util.GuiUtils.scaleInt(18);
 
+    /** The Constant SEARCHRES_COLUMNS, chars that fit in a search result cell. */
+    private static final int SEARCHRES_COLUMNS = 64;
+
     /** The Constant BASE_FONT_SIZE. */
     private static final int BASE_FONT_SIZE = 13;
 
@@ -208,6 +221,9 @@ public class HexViewer extends JFrame implements ActionListener {
     /** The Constant SEARCH_ALL_MAX_PROGRESS. */
     private static final int SEARCH_ALL_MAX_PROGRESS = 100;
 
+    /** Time between the updates of the entries shown while search all runs. */
+    private static final long SEARCH_ALL_REFRESH_MILLIS = 500;
+
     /** The Constant ROM_EXTENSIONS. */
     private static final String[] ROM_EXTENSIONS = {"md", "smd", "sms", "gba", "sfc", "nes", "bin", "smc", "gen", "gb", "gbc", "gg", "iso"};
 
@@ -391,6 +407,15 @@ public class HexViewer extends JFrame implements ActionListener {
     /** The search all thread error. */
     private boolean searchAllThreadError = false;
 
+    /** Index of the file bytes, null until it is built in the background. */
+    private transient volatile SuffixArrayIndex romIndex = null;
+
+    /** Regex search over the file bytes, keeps the decoded text of every table used. */
+    private transient RegexSearch regexSearch = null;
+
+    /** Search all dictionary index, loaded on the first search all of the session. */
+    private transient volatile DictionaryIndex dictionaryIndex = null;
+
     /** Base font (recomputed when scale changes). */
     private Font baseFont;
 
@@ -493,6 +518,102 @@ public class HexViewer extends JFrame implements ActionListener {
         }
         // Ensure initial content populated for tests without relying on EDT
         refreshAll();
+        buildRomIndex();
+    }
+
+    /**
+     * Builds the index of the file bytes in the background, or loads it from its sidecar file.
+     */
+    private void buildRomIndex() {
+        romIndex = null;
+        final byte[] indexedBytes = fileBytes;
+        final File indexedFile = hexFile;
+        if(!SuffixArrayIndex.isEnabled() || indexedBytes == null || indexedBytes.length < Constants.ROM_INDEX_MIN_SIZE) {
+            return;
+        }
+        Thread indexThread = new Thread(() -> {
+            try {
+                SuffixArrayIndex index = SuffixArrayIndex.load(indexedFile.toPath(), indexedBytes);
+                // Another file may have been opened meanwhile
+                if(fileBytes == indexedBytes) {
+                    romIndex = index;
+                }
+            } catch (Exception | OutOfMemoryError e) {
+                Utils.log("WARNING - Rom index could not be built: " + e.getMessage());
+            }
+        });
+        indexThread.setDaemon(true);
+        indexThread.setPriority(Thread.MIN_PRIORITY);
+        indexThread.start();
+    }
+
+    /**
+     * Index of the file bytes if it is ready.
+     *
+     * @return the index, null if it is not ready
+     */
+    private SuffixArrayIndex getRomIndex() {
+        SuffixArrayIndex index = romIndex;
+        return index != null && index.isFor(fileBytes) ? index : null;
+    }
+
+    /**
+     * Search all dictionary index, loaded once and kept for the session.
+     *
+     * @param dictPath the dictionary file
+     * @return the index
+     * @throws IOException the exception
+     */
+    private DictionaryIndex getDictionaryIndex(java.nio.file.Path dictPath) throws IOException {
+        DictionaryIndex index = dictionaryIndex;
+        if(index == null) {
+            index = DictionaryIndex.load(dictPath);
+            dictionaryIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Regex search over the file bytes, created again when another file is opened.
+     *
+     * @return the regex search
+     */
+    private RegexSearch getRegexSearch() {
+        if(regexSearch == null || !regexSearch.isFor(fileBytes)) {
+            regexSearch = new RegexSearch(fileBytes);
+        }
+        return regexSearch;
+    }
+
+    /**
+     * Finds the byte sequence between from and to (exclusive), with the index if it is ready.
+     *
+     * @param searchBytes the byte sequence
+     * @param from the start offset
+     * @param to the end offset (exclusive)
+     * @return the offsets, ordered
+     */
+    private List<Integer> findBytes(byte[] searchBytes, int from, int to) {
+        SuffixArrayIndex index = getRomIndex();
+        if(index != null) {
+            return index.locate(searchBytes, from, to);
+        }
+        return ScanUtils.findAll(fileBytes, searchBytes, from, to);
+    }
+
+    /**
+     * Shows the search results, the list builds only the results it shows.
+     *
+     * @param size the number of results
+     * @param results builds the result of an index
+     */
+    private void showSearchResults(int size, IntFunction<TableSearchResult> results) {
+        SearchResultListModel model = new SearchResultListModel(size, results);
+        searchResults.setModel(model);
+        resultsWindow.setTitle(rb.getString(KeyConstants.KEY_SEARCH_RESULT_TITLE) + " (" + size + ")");
+        resultsWindow.pack();
+        resultsWindow.setLocationRelativeTo(HexViewer.this);
+        resultsWindow.setVisible(true);
     }
 
     private String getOffsetLabelValue() {
@@ -647,6 +768,10 @@ public class HexViewer extends JFrame implements ActionListener {
         searchResults.setLayoutOrientation(JList.VERTICAL);
         searchResults.setVisibleRowCount(8);
         searchResults.setFont(new Font(Font.MONOSPACED, Font.PLAIN, SEARCHRES_FONT_SIZE));
+        // Fixed cell sizes so the list does not measure every result, whatever the text of the first one
+        FontMetrics searchResultsMetrics = searchResults.getFontMetrics(searchResults.getFont());
+        searchResults.setFixedCellHeight(searchResultsMetrics.getHeight() + 2);
+        searchResults.setFixedCellWidth(searchResultsMetrics.charWidth('W') * SEARCHRES_COLUMNS);
         // Listener: al seleccionar un resultado, mover caret y vista al offset
         searchResults.addListSelectionListener(e -> {
             if (!e.getValueIsAdjusting()) {
@@ -1528,6 +1653,7 @@ public class HexViewer extends JFrame implements ActionListener {
         loadOffsets = new JMenuItem(rb.getString(KeyConstants.KEY_LOAD_OFFSETS_MENUITEM));
         find = new JMenuItem(rb.getString(KeyConstants.KEY_FIND_MENUITEM));
         findHex = new JMenuItem(rb.getString(KeyConstants.KEY_FIND_HEX_MENUITEM));
+        findRegex = new JMenuItem(rb.getString(KeyConstants.KEY_FIND_REGEX_MENUITEM));
         findPointers = new JMenuItem(rb.getString(KeyConstants.KEY_FIND_POINTERS_MENUITEM));
         nextOffset = new JMenuItem(rb.getString(KeyConstants.KEY_NEXT_RANGE_MENUITEM));
         prevOffset = new JMenuItem(rb.getString(KeyConstants.KEY_PREV_TANGE_MENUITEM));
@@ -1560,6 +1686,7 @@ public class HexViewer extends JFrame implements ActionListener {
         toolsMenu.add(searchRelative);
         toolsMenu.add(find);
         toolsMenu.add(findHex);
+        toolsMenu.add(findRegex);
         toolsMenu.add(findPointers);
 
         // Comparar ROMs
@@ -1931,10 +2058,7 @@ public class HexViewer extends JFrame implements ActionListener {
                                     rb.getString(KeyConstants.KEY_NO_RESULTS_TITLE), JOptionPane.INFORMATION_MESSAGE);
                         }
                         else {
-                            searchResults.setListData(results.toArray(new TableSearchResult[0]));
-                            resultsWindow.pack();
-                            resultsWindow.setLocationRelativeTo(HexViewer.this);
-                            resultsWindow.setVisible(true);
+                            showSearchResults(results.size(), results::get);
                         }
                     } catch (Exception e1) {
                         JOptionPane.showMessageDialog(searchRelative, rb.getString(KeyConstants.KEY_SEARCH_RELATIVE_MIN_LENGTH));
@@ -1952,17 +2076,16 @@ public class HexViewer extends JFrame implements ActionListener {
                 var searchString = JOptionPane.showInputDialog(rb.getString(KeyConstants.KEY_FIND));
                 if(searchString != null && searchString.length() > 0) {
                     try {
-                        List<TableSearchResult>  results = FileUtils.multiFindString(fileBytes, hexTable, searchString, true,
-                                SEARCH_JOKER_EXPANSIONS);
+                        SearchHitBuffer results = FileUtils.findStringHits(fileBytes, hexTable, searchString, true,
+                                SEARCH_JOKER_EXPANSIONS, getRomIndex());
                         if(results.isEmpty()) {
                             JOptionPane.showMessageDialog(help, rb.getString(KeyConstants.KEY_NO_RESULTS_DESC),
                                     rb.getString(KeyConstants.KEY_NO_RESULTS_TITLE), JOptionPane.INFORMATION_MESSAGE);
                         }
                         else {
-                            searchResults.setListData(results.toArray(new TableSearchResult[0]));
-                            resultsWindow.pack();
-                            resultsWindow.setLocationRelativeTo(HexViewer.this);
-                            resultsWindow.setVisible(true);
+                            HexTable table = hexTable;
+                            showSearchResults(results.size(),
+                                    i -> FileUtils.toTableResult(table, searchString, results.get(i)));
                         }
                     } catch (Exception e1) {
                         JOptionPane.showMessageDialog(searchRelative, rb.getString(KeyConstants.KEY_FIND_MIN_LENGTH));
@@ -1980,50 +2103,57 @@ public class HexViewer extends JFrame implements ActionListener {
                 var searchString = JOptionPane.showInputDialog(rb.getString(KeyConstants.KEY_FIND_HEX));
                 if(searchString != null && searchString.length() > 0) {
                     try {
-                        // Parse hex string to bytes (remove spaces and split into pairs)
-                        String cleanHex = searchString.trim().replaceAll("\\s+", "");
-                        if (cleanHex.length() % 2 != 0) {
-                            throw new IllegalArgumentException("Hex string must have even number of characters");
-                        }
-                        byte[] searchBytes = new byte[cleanHex.length() / 2];
-                        for (int i = 0; i < searchBytes.length; i++) {
-                            searchBytes[i] = (byte) Integer.parseInt(cleanHex.substring(i * 2, i * 2 + 2), 16);
-                        }
-                        // Search for the byte sequence
-                        List<Integer> results = new ArrayList<>();
-                        for (int i = 0; i <= fileBytes.length - searchBytes.length; i++) {
-                            boolean match = true;
-                            for (int j = 0; j < searchBytes.length; j++) {
-                                if (fileBytes[i + j] != searchBytes[j]) {
-                                    match = false;
-                                    break;
-                                }
-                            }
-                            if (match) {
-                                results.add(i);
-                            }
-                        }
+                        // Parse the hex pattern, ? matches any nibble
+                        MaskedBytePattern pattern = new MaskedBytePattern(searchString);
+                        List<Integer> results = pattern.isExact() ? findBytes(pattern.toBytes(), 0, fileBytes.length)
+                                : pattern.findAll(fileBytes, 0, fileBytes.length);
                         if(results.isEmpty()) {
                             JOptionPane.showMessageDialog(help, rb.getString(KeyConstants.KEY_NO_RESULTS_DESC),
                                     rb.getString(KeyConstants.KEY_NO_RESULTS_TITLE), JOptionPane.INFORMATION_MESSAGE);
                         }
                         else {
-                            // Convert to TableSearchResult for compatibility
-                            List<TableSearchResult> tableResults = new ArrayList<>();
-                            for (Integer offset : results) {
+                            HexTable table = hexTable;
+                            showSearchResults(results.size(), i -> {
                                 TableSearchResult tsr = new TableSearchResult();
-                                tsr.setHexTable(hexTable);
-                                tsr.setOffset(offset);
+                                tsr.setHexTable(table);
+                                tsr.setOffset(results.get(i));
                                 tsr.setWord(searchString);
-                                tableResults.add(tsr);
-                            }
-                            searchResults.setListData(tableResults.toArray(new TableSearchResult[0]));
-                            resultsWindow.pack();
-                            resultsWindow.setLocationRelativeTo(HexViewer.this);
-                            resultsWindow.setVisible(true);
+                                return tsr;
+                            });
                         }
                     } catch (Exception e1) {
-                        JOptionPane.showMessageDialog(searchRelative, "Invalid hex format. Use hexadecimal characters without spaces (e.g., FF0012)");
+                        JOptionPane.showMessageDialog(searchRelative, "Invalid hex format. Use hexadecimal characters and ? for any nibble (e.g., A9??8D?021)");
+                    }
+                    vsb.setValue(offset);
+                }
+            }
+        });
+        findRegex.setAction(new AbstractAction(rb.getString(KeyConstants.KEY_FIND_REGEX_MENUITEM)) {
+            /** serialVersionUID */
+            private static final long serialVersionUID = 251407879942401222L;
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                var searchString = JOptionPane.showInputDialog(rb.getString(KeyConstants.KEY_FIND_REGEX));
+                if(searchString != null && searchString.length() > 0) {
+                    try {
+                        List<RegexSearch.Match> results = getRegexSearch().find(hexTable, Pattern.compile(searchString));
+                        if(results.isEmpty()) {
+                            JOptionPane.showMessageDialog(help, rb.getString(KeyConstants.KEY_NO_RESULTS_DESC),
+                                    rb.getString(KeyConstants.KEY_NO_RESULTS_TITLE), JOptionPane.INFORMATION_MESSAGE);
+                        }
+                        else {
+                            HexTable table = hexTable;
+                            showSearchResults(results.size(), i -> {
+                                TableSearchResult tsr = new TableSearchResult();
+                                tsr.setHexTable(table);
+                                tsr.setOffset(results.get(i).start());
+                                tsr.setWord(results.get(i).text());
+                                return tsr;
+                            });
+                        }
+                    } catch (PatternSyntaxException e1) {
+                        JOptionPane.showMessageDialog(findRegex, e1.getDescription());
                     }
                     vsb.setValue(offset);
                 }
@@ -2081,7 +2211,6 @@ public class HexViewer extends JFrame implements ActionListener {
                     @Override
                     public void actionPerformed(ActionEvent ae) {
                         try {
-                            final int MAX_POINTER_RESULTS = 10000;
                             String startHex = startField.getText().trim().replaceAll("\\s+", "");
                             String endHex = endField.getText().trim().replaceAll("\\s+", "");
                             if (startHex.isEmpty() || endHex.isEmpty()) {
@@ -2114,67 +2243,29 @@ public class HexViewer extends JFrame implements ActionListener {
                                 JOptionPane.showMessageDialog(dialog, rb.getString(KeyConstants.KEY_FIND_POINTERS_INVALID_RANGE));
                                 return;
                             }
-                            // Buscar todas las posiciones de startBytes en el rango
-                            List<Integer> startPositions = new ArrayList<>();
-                            int startMin = (int) Math.max(0, minOffset);
-                            int startMax = (int) Math.min(fileBytes.length - startBytes.length, maxOffset - startBytes.length + 1);
-                            for (int i = startMin; i <= startMax; i++) {
-                                boolean match = true;
-                                for (int j = 0; j < startBytes.length; j++) {
-                                    if (fileBytes[i + j] != startBytes[j]) {
-                                        match = false;
-                                        break;
-                                    }
-                                }
-                                if (match) {
-                                    startPositions.add(i);
-                                    if (startPositions.size() > MAX_POINTER_RESULTS) {
-                                        JOptionPane.showMessageDialog(dialog, "La búsqueda excede el límite de 10,000 resultados. Ajusta los parámetros para reducir el rango.");
-                                        return;
-                                    }
-                                }
-                            }
-                            // Buscar todas las posiciones de endBytes en el rango
-                            List<Integer> endPositions = new ArrayList<>();
-                            int endMin = (int) Math.max(0, minOffset);
-                            int endMax = (int) Math.min(fileBytes.length - endBytes.length, maxOffset - endBytes.length + 1);
-                            for (int i = endMin; i <= endMax; i++) {
-                                boolean match = true;
-                                for (int j = 0; j < endBytes.length; j++) {
-                                    if (fileBytes[i + j] != endBytes[j]) {
-                                        match = false;
-                                        break;
-                                    }
-                                }
-                                if (match) {
-                                    endPositions.add(i);
-                                    if (endPositions.size() > MAX_POINTER_RESULTS) {
-                                        JOptionPane.showMessageDialog(dialog, "La búsqueda excede el límite de 10,000 resultados. Ajusta los parámetros para reducir el rango.");
-                                        return;
-                                    }
-                                }
-                            }
+                            // Buscar todas las posiciones de startBytes y endBytes en el rango
+                            List<Integer> startPositions = findBytes(startBytes, (int) Math.max(0, minOffset),
+                                    (int) Math.min(fileBytes.length, maxOffset + 1));
+                            List<Integer> endPositions = findBytes(endBytes, (int) Math.max(0, minOffset),
+                                    (int) Math.min(fileBytes.length, maxOffset + 1));
                             if (startPositions.isEmpty() || endPositions.isEmpty()) {
                                 JOptionPane.showMessageDialog(dialog, rb.getString(KeyConstants.KEY_FIND_POINTERS_NOT_FOUND));
                                 return;
                             }
-                            // Crear rangos entre cada start y la siguiente end
+                            // Crear rangos entre cada start y la siguiente end, las dos listas estan ordenadas
                             List<OffsetEntry> foundEntries = new ArrayList<>();
+                            int endIndex = 0;
                             for (int startPos : startPositions) {
-                                for (int endPos : endPositions) {
-                                    if (endPos > startPos + startBytes.length) {
-                                        int rangeStart = startPos + startBytes.length;
-                                        int rangeEnd = endPos - 1;
-                                        if (rangeStart < rangeEnd) {
-                                            OffsetEntry entry = new OffsetEntry(rangeStart, rangeEnd, null);
-                                            foundEntries.add(entry);
-                                            if (foundEntries.size() > MAX_POINTER_RESULTS) {
-                                                JOptionPane.showMessageDialog(dialog, "La búsqueda excede el límite de 10,000 rangos encontrados. Ajusta los parámetros para reducir el rango.");
-                                                return;
-                                            }
-                                        }
-                                        break; // Solo la primera end después de este start
-                                    }
+                                int rangeStart = startPos + startBytes.length;
+                                while (endIndex < endPositions.size() && endPositions.get(endIndex) <= rangeStart) {
+                                    endIndex++;
+                                }
+                                if (endIndex == endPositions.size()) {
+                                    break;
+                                }
+                                int rangeEnd = endPositions.get(endIndex) - 1;
+                                if (rangeStart < rangeEnd) {
+                                    foundEntries.add(new OffsetEntry(rangeStart, rangeEnd, null));
                                 }
                             }
                             if (foundEntries.isEmpty()) {
@@ -2487,25 +2578,25 @@ public class HexViewer extends JFrame implements ActionListener {
         setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
         
         searchAllThreadError = false;
-        final List<OffsetEntry> foundEntries = new ArrayList<>();
+        // Filled by the scan as the entries are found, shown in batches while it runs
+        final List<OffsetEntry> foundEntries = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger searchPercent = new AtomicInteger(SEARCH_ALL_MIN_PROGRESS);
+        final List<OffsetEntry> previousEntries = offEntries != null ? new ArrayList<>(offEntries) : null;
         
         searchAllThread = new Thread(() -> {
             try {
                 java.nio.file.Path dictPath = com.wave.hextractor.util.FileUtils.findInParents(java.nio.file.Paths.get(Constants.DEFAULT_DICT));
                 File file = (dictPath != null) ? dictPath.toFile() : null;
                 if (file != null && file.exists()) {
-                    // Get the entries string from getAllEntries without multibyte processing
-                    String entries = hexTable.getAllEntries(fileBytes,
+                    DictionaryIndex dict = getDictionaryIndex(dictPath);
+                    // Stream the entries without multibyte processing
+                    hexTable.searchAllEntries(fileBytes,
                             Constants.MIN_NUM_CHARS_WORD, 
                             searchAllWinSkipCharsOpt.getSelectedIndex(), 
                             Arrays.asList(searchAllWinEndCharsInput.getText().toUpperCase()
                                     .replace(Constants.SPACE_STR, Constants.EMPTY).split(Constants.OFFSET_CHAR_SEPARATOR)),
-                            file.getAbsolutePath(), false);
-                    
-                    if (entries != null && entries.length() > 0) {
-                        // Parse the entries and add them to the list
-                        foundEntries.addAll(Utils.getOffsets(entries));
-                    }
+                            dict, dict.model(), 0, false, percent -> searchPercent.set((int) percent),
+                            foundEntries::add);
                 }
                 else {
                     searchAllThreadError = true;
@@ -2516,14 +2607,20 @@ public class HexViewer extends JFrame implements ActionListener {
             }
         });
         searchAllThread.start();
+        int shownEntries = 0;
+        long lastShown = System.currentTimeMillis();
         synchronized (searchAllLock) {
             while (searchAllThread != null &&
                     searchAllThread.isAlive() &&
                     !searchAllThread.isInterrupted()) {
                 try {
                     searchAllLock.wait(50);
-                    SwingUtilities.invokeLater(() -> searchAllWinProgressBar.setValue((int) hexTable.getSearchPercent()));
+                    SwingUtilities.invokeLater(() -> searchAllWinProgressBar.setValue(searchPercent.get()));
                     searchAllLock.wait(50);
+                    if (System.currentTimeMillis() - lastShown > SEARCH_ALL_REFRESH_MILLIS) {
+                        shownEntries += showFoundEntries(foundEntries, shownEntries);
+                        lastShown = System.currentTimeMillis();
+                    }
                 } catch (InterruptedException ex) {
                     searchAllThreadError = true;
                     searchAllThread.interrupt();
@@ -2532,30 +2629,32 @@ public class HexViewer extends JFrame implements ActionListener {
         }
         setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         if(searchAllThreadError) {
+            // Remove the entries shown while the scan ran
+            SwingUtilities.invokeLater(() -> {
+                offEntries = previousEntries;
+                refreshAll();
+            });
             JOptionPane.showMessageDialog(searchAllStringsWin, rb.getString(KeyConstants.KEY_SEARCH_ALL_WIN_ERROR),
                     rb.getString(KeyConstants.KEY_SEARCH_ALL_WIN_ERROR), JOptionPane.INFORMATION_MESSAGE);
         }
         else {
-            // Add found entries to offEntries and refresh the view
-            if (offEntries == null) {
-                offEntries = new ArrayList<>();
-            }
-            offEntries.addAll(foundEntries);
-            
-            // Remove duplicates and sort
-            Set<OffsetEntry> unique = new HashSet<>(offEntries);
-            offEntries.clear();
-            offEntries.addAll(unique);
-            Collections.sort(offEntries);
+            showFoundEntries(foundEntries, shownEntries);
+            SwingUtilities.invokeLater(() -> {
+                // Remove duplicates and sort
+                if (offEntries != null) {
+                    Set<OffsetEntry> unique = new HashSet<>(offEntries);
+                    offEntries.clear();
+                    offEntries.addAll(unique);
+                    Collections.sort(offEntries);
+                }
+                refreshAll();
+            });
             
             // Show success message with the number of ranges found
             JOptionPane.showMessageDialog(searchAllStringsWin, 
                     rb.getString(KeyConstants.KEY_SEARCHED_ALL_DESC) + foundEntries.size() + " rangos encontrados",
                     rb.getString(KeyConstants.KEY_SEARCHED_ALL_TITLE), JOptionPane.INFORMATION_MESSAGE);
             searchAllStringsWin.setVisible(false);
-            
-            // Refresh the display to show the marked ranges
-            refreshAll();
         }
         SwingUtilities.invokeLater(() -> {
             enableSearchAllWindow();
@@ -2563,6 +2662,30 @@ public class HexViewer extends JFrame implements ActionListener {
         });
     }
 
+    /**
+     * Adds the search all entries found since the last call to the offsets and highlights them.
+     *
+     * @param foundEntries the entries found so far
+     * @param shownEntries the entries already shown
+     * @return the entries added
+     */
+    private int showFoundEntries(List<OffsetEntry> foundEntries, int shownEntries) {
+        List<OffsetEntry> batch;
+        synchronized (foundEntries) {
+            batch = new ArrayList<>(foundEntries.subList(shownEntries, foundEntries.size()));
+        }
+        if (!batch.isEmpty()) {
+            SwingUtilities.invokeLater(() -> {
+                if (offEntries == null) {
+                    offEntries = new ArrayList<>();
+                }
+                offEntries.addAll(batch);
+                refreshAll();
+            });
+        }
+        return batch.size();
+    }
+
     /**
      * Confirm selected file.
      *
@@ -2721,8 +2844,9 @@ public class HexViewer extends JFrame implements ActionListener {
                 int[] interesting = {0x22E1, 0x24841};
                 for (int p : interesting) {
                     if (p >= 0 && fileBytes != null && p < fileBytes.length) {
-                        HexTable.Match mm = hexTableMatchFromOffset(fileBytes, p, p + Math.max(1, getViewSize()));
-                        Utils.log("[DIAG] match at 0x" + Integer.toHexString(p).toUpperCase() + ": " + (mm == null ? "null" : ("len=" + mm.length + " val='" + mm.value + "'")));
+                        long mm = hexTable.matchAt(fileBytes, p, p + Math.max(1, getViewSize()));
+                        Utils.log("[DIAG] match at 0x" + Integer.toHexString(p).toUpperCase() + ": " + (mm == HexTable.NO_MATCH ? "null"
+                                : ("len=" + HexTable.matchLength(mm) + " val='" + hexTable.getValue(HexTable.matchValueId(mm)) + "'")));
                     }
                 }
             }
@@ -2817,6 +2941,7 @@ public class HexViewer extends JFrame implements ActionListener {
         }
         offset = 0;
         refreshAll();
+        buildRomIndex();
     }
 
     /* ================= Option A support: mapping & three-area viewer ================= */
@@ -3283,6 +3408,8 @@ public class HexViewer extends JFrame implements ActionListener {
         StringBuilder offsBuilder = new StringBuilder();
         int bytesPerRow = visibleColumns;
         int rowCount = visibleRows;
+        // Active table, the table switch codes change it while the view is decoded
+        HexTable state = hexTable;
         for (int r = 0; r < rowCount; r++) {
             int rowOffset = offset + r * bytesPerRow;
             if (rowOffset >= end) break;
@@ -3300,23 +3427,27 @@ public class HexViewer extends JFrame implements ActionListener {
                 if (hexTable != null) {
                     // Buscar el match más largo desde idx, pero no pasar el final de la fila ni del archivo
                     int maxLen = Math.min(bytesPerRow - c, end - idx);
-                    HexTable.Match m = null;
-                    if (maxLen > 0) {
-                        // Limitar el match al final de la línea visual
-                        m = hexTableMatchFromOffset(fileBytes, idx, idx + maxLen);
-                    }
-                    if (m != null && m.length > 0) {
+                    long m = state.matchAt(fileBytes, idx, fileBytes.length);
+                    int mLength = HexTable.matchLength(m);
+                    if (mLength > 0) {
+                        // A match longer than the visual row only consumes the row bytes but
+                        // still displays the mapped character at its first byte, keeping alignment.
+                        mLength = Math.min(mLength, maxLen);
                         // Mostrar espacios para los bytes previos y el carácter solo en el último byte del match
-                        for (int j = 0; j < m.length; j++) {
+                        for (int j = 0; j < mLength; j++) {
                             if (j == 0) {
                                 // Render the mapping at the FIRST byte of the match (one visible char)
-                                asciiBuilder.append(getSingleDisplayChar(m.value));
+                                if (state.isTableSwitch(m)) {
+                                    asciiBuilder.append(Constants.HEX_VIEWER_UNKNOWN_CHAR);
+                                } else {
+                                    asciiBuilder.append(getSingleDisplayChar(state.getValue(HexTable.matchValueId(m))));
+                                }
                             } else {
                                 asciiBuilder.append(' ');
                             }
                         }
                         // Para cada byte del match, mostrar su hex
-                        for (int j = 0; j < m.length; j++) {
+                        for (int j = 0; j < mLength; j++) {
                             int hexIdx = idx + j;
                             if (hexIdx < end) {
                                 byte b = fileBytes[hexIdx];
@@ -3325,13 +3456,14 @@ public class HexViewer extends JFrame implements ActionListener {
                                 hexBuilder.append("   ");
                             }
                         }
-                        c += m.length;
+                        state = state.nextTable(m);
+                        c += mLength;
                         continue;
                     } else {
                         // Si no hay match, mostrar como byte suelto
                         byte b = fileBytes[idx];
-                        // hexTable.toString(...) can return multi-character strings; display a single char placeholder
-                        asciiBuilder.append(getSingleDisplayChar(hexTable.toString(b, false)));
+                        // Precomputed single char placeholder, multi-character values show the unknown char
+                        asciiBuilder.append(state.toChar(b));
                         hexBuilder.append(String.format("%02X ", b));
                         c++;
                         continue;
@@ -3373,37 +3505,6 @@ public class HexViewer extends JFrame implements ActionListener {
 
     }
 
-    // Helper para buscar el match más largo posible desde un offset
-    private HexTable.Match hexTableMatchFromOffset(byte[] data, int pos, int end) {
-        if (hexTable == null) return null;
-        // El método findLongestMatch es privado, así que replicamos la lógica aquí
-        // pero usando la API pública: toAscii(byte[], expand, decodeUnknown) no sirve para un solo offset
-        // Así que accedemos por reflexión si es posible, si no, solo 1 byte
-        try {
-            java.lang.reflect.Method m = hexTable.getClass().getDeclaredMethod("findLongestMatch", byte[].class, int.class);
-            m.setAccessible(true);
-            Object result = m.invoke(hexTable, data, pos);
-            if (result instanceof HexTable.Match) {
-                HexTable.Match hm = (HexTable.Match) result;
-                int allowed = end - pos;
-                if (allowed <= 0) return null;
-                // If the reflected match is longer than the allowed length (end of visual row),
-                // return a truncated match that only consumes the allowed bytes but still
-                // displays the mapping at the first byte. This preserves alignment while
-                // showing the mapped character at the start of the row.
-                if (hm.length > allowed) {
-                    return new HexTable.Match(allowed, hm.value);
-                }
-                return hm;
-            }
-        } catch (Exception e) {
-            // fallback: 1 byte
-        }
-        // fallback: 1 byte
-        String val = hexTable.toString(data[pos], false);
-        return new HexTable.Match(1, val);
-    }
-
     /** Return a single-character string representing the first Unicode codepoint of s. */
     private String getFirstCodePoint(String s) {
         if (s == null || s.isEmpty()) return " ";
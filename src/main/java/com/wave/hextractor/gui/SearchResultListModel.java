@@ -0,0 +1,50 @@
+package com.wave.hextractor.gui;
+
+import com.wave.hextractor.pojo.TableSearchResult;
+
+import javax.swing.AbstractListModel;
+import java.util.function.IntFunction;
+
+/**
+ * List model of the search results that builds only the results the list shows.
+ * @author slcantero
+ */
+public class SearchResultListModel extends AbstractListModel<TableSearchResult> {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = -4286473316271963587L;
+
+	/** Number of results. */
+	private final int size;
+
+	/** Builds the result of an index. */
+	private final transient IntFunction<TableSearchResult> results;
+
+	/**
+	 * Instantiates a new search result list model.
+	 *
+	 * @param size the number of results
+	 * @param results builds the result of an index
+	 */
+	public SearchResultListModel(int size, IntFunction<TableSearchResult> results) {
+		this.size = size;
+		this.results = results;
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.swing.ListModel#getSize()
+	 */
+	@Override
+	public int getSize() {
+		return size;
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.swing.ListModel#getElementAt(int)
+	 */
+	@Override
+	public TableSearchResult getElementAt(int index) {
+		return results.apply(index);
+	}
+
+}
@@ -0,0 +1,137 @@
+package com.wave.hextractor.object;
+
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Aho-Corasick automaton over byte patterns, finds the occurrences of all the patterns
+ * in one pass over the data.
+ * <p>
+ * The goto function is a {@link ByteTrie} of the patterns. Every node keeps its failure link and the
+ * next node of the failure chain that ends a pattern, so the scan is linear in the data plus the matches
+ * reported. The automaton is immutable once built.
+ * @author slcantero
+ */
+public final class BytePatternMatcher {
+
+	/** Trie of the patterns. */
+	private final ByteTrie trie = new ByteTrie();
+
+	/** Length of the pattern that ends at each node, 0 if none. */
+	private int[] patternLengths;
+
+	/** Failure link of each node, the longest proper suffix that is also a trie node. */
+	private int[] fail;
+
+	/** Next node of the failure chain that ends a pattern, 0 if none. */
+	private int[] output;
+
+	/**
+	 * Builds the automaton, empty patterns are ignored.
+	 *
+	 * @param patterns the patterns
+	 */
+	public BytePatternMatcher(List<byte[]> patterns) {
+		for(byte[] pattern : patterns) {
+			if(pattern.length > 0) {
+				trie.put(pattern, null);
+			}
+		}
+		buildLinks();
+	}
+
+	/**
+	 * Longest pattern.
+	 *
+	 * @return the length
+	 */
+	public int maxLength() {
+		return trie.maxKeyLength();
+	}
+
+	/**
+	 * Reports the start of every occurrence of the patterns that lies between from and to (exclusive).
+	 * Starts are reported when the occurrence ends, so they are not ordered, and a start is reported
+	 * once for every pattern found there.
+	 *
+	 * @param data the data
+	 * @param from the start position
+	 * @param to the end position (exclusive)
+	 * @param starts receives the start positions
+	 */
+	public void forEachMatch(byte[] data, int from, int to, IntConsumer starts) {
+		int end = Math.min(to, data.length);
+		int node = 0;
+		for(int i = from; i < end; i++) {
+			node = step(node, data[i]);
+			int match = patternLengths[node] > 0 ? node : output[node];
+			while(match != 0) {
+				starts.accept(i - patternLengths[match] + 1);
+				match = output[match];
+			}
+		}
+	}
+
+	/**
+	 * Automaton transition.
+	 *
+	 * @param node the current node
+	 * @param key the byte
+	 * @return the next node
+	 */
+	private int step(int node, byte key) {
+		int current = node;
+		while(current != 0) {
+			int child = trie.child(current, key);
+			if(child != 0) {
+				return child;
+			}
+			current = fail[current];
+		}
+		return trie.child(0, key);
+	}
+
+	/**
+	 * Sets the pattern lengths and the failure and output links, breadth first.
+	 */
+	private void buildLinks() {
+		int nodeCount = trie.nodeCount();
+		patternLengths = new int[nodeCount];
+		fail = new int[nodeCount];
+		output = new int[nodeCount];
+		int[] depths = new int[nodeCount];
+		int[] queue = new int[nodeCount];
+		int head = 0;
+		int tail = 0;
+		for(int b = 0; b < 256; b++) {
+			int child = trie.child(0, (byte) b);
+			if(child != 0) {
+				depths[child] = 1;
+				setPatternLength(child, depths);
+				queue[tail++] = child;
+			}
+		}
+		while(head < tail) {
+			int node = queue[head++];
+			for(int c = 0; c < trie.childCount(node); c++) {
+				int child = trie.childNode(node, c);
+				depths[child] = depths[node] + 1;
+				setPatternLength(child, depths);
+				int link = step(fail[node], trie.childKey(node, c));
+				fail[child] = link;
+				output[child] = patternLengths[link] > 0 ? link : output[link];
+				queue[tail++] = child;
+			}
+		}
+	}
+
+	/**
+	 * Sets the pattern length of the node, its depth if a pattern ends there.
+	 */
+	private void setPatternLength(int node, int[] depths) {
+		if(trie.nodeValue(node) != ByteTrie.NO_VALUE) {
+			patternLengths[node] = depths[node];
+		}
+	}
+
+}
@@ -0,0 +1,587 @@
+package com.wave.hextractor.object;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact array backed trie used by the table to decode multi-byte keys.
+ * <p>
+ * The root level is a dense 256 slot array, deeper levels store their children as
+ * sorted key / node arrays. Lookups return the match length and the value index packed
+ * in a primitive long, so decoding does not allocate.
+ * @author slcantero
+ */
+final class ByteTrie implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 4518236390215479122L;
+
+	/** Value index of nodes without mapping. */
+	static final int NO_VALUE = -1;
+
+	/** Parameter count of the values that are not control codes. */
+	static final int NO_PARAMS = -1;
+
+	/** Parameter count of the table switch codes, they have no parameters and change the active table. */
+	static final int TABLE_SWITCH = -2;
+
+	/** Returned when there is no match, length 0. */
+	static final long NO_MATCH = 0L;
+
+	/** Below this number of children the lookup is linear instead of binary. */
+	private static final int LINEAR_SEARCH_LIMIT = 8;
+
+	/** Initial number of nodes. */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** Children of the root, indexed by unsigned byte, 0 means no child. */
+	private int[] rootChildren = new int[256];
+
+	/** Sorted (unsigned) child keys of each node. */
+	private byte[][] childKeys = new byte[INITIAL_CAPACITY][];
+
+	/** Child node ids of each node, parallel to childKeys. */
+	private int[][] childNodes = new int[INITIAL_CAPACITY][];
+
+	/** Number of children of each node. */
+	private int[] childCounts = new int[INITIAL_CAPACITY];
+
+	/** Value index of each node, or NO_VALUE. */
+	private int[] nodeValues = new int[INITIAL_CAPACITY];
+
+	/** Number of nodes, node 0 is the root. */
+	private int nodeCount = 1;
+
+	/** Values by index. */
+	private String[] values = new String[INITIAL_CAPACITY];
+
+	/** Parameter bytes of each value, NO_PARAMS if it is not a control code, TABLE_SWITCH for table switches. */
+	private int[] valueParams = new int[INITIAL_CAPACITY];
+
+	/** Number of values. */
+	private int valueCount = 0;
+
+	/** Longest key stored. */
+	private int maxKeyLength = 0;
+
+	/** Frozen tries reject any modification. */
+	private final boolean frozen;
+
+	/**
+	 * Empty trie.
+	 */
+	ByteTrie() {
+		nodeValues[0] = NO_VALUE;
+		frozen = false;
+	}
+
+	/**
+	 * Deep copy of the trie with the arrays trimmed to size.
+	 *
+	 * @param other the trie to copy
+	 * @param frozen true if the copy must reject modifications
+	 */
+	ByteTrie(ByteTrie other, boolean frozen) {
+		this.frozen = frozen;
+		nodeCount = other.nodeCount;
+		valueCount = other.valueCount;
+		maxKeyLength = other.maxKeyLength;
+		rootChildren = other.rootChildren.clone();
+		int capacity = Math.max(nodeCount, 1);
+		childKeys = new byte[capacity][];
+		childNodes = new int[capacity][];
+		for(int node = 0; node < nodeCount; node++) {
+			int count = other.childCounts[node];
+			if(count > 0) {
+				childKeys[node] = Arrays.copyOf(other.childKeys[node], count);
+				childNodes[node] = Arrays.copyOf(other.childNodes[node], count);
+			}
+		}
+		childCounts = Arrays.copyOf(other.childCounts, capacity);
+		nodeValues = Arrays.copyOf(other.nodeValues, capacity);
+		values = Arrays.copyOf(other.values, Math.max(valueCount, 1));
+		valueParams = Arrays.copyOf(other.valueParams, Math.max(valueCount, 1));
+	}
+
+	/**
+	 * Fails if the trie is frozen.
+	 */
+	private void checkNotFrozen() {
+		if(frozen) {
+			throw new IllegalStateException("Compiled table can't be modified");
+		}
+	}
+
+	/**
+	 * Packs a match.
+	 *
+	 * @param length the match length
+	 * @param valueId the value index
+	 * @return the packed match
+	 */
+	static long pack(int length, int valueId) {
+		return ((long) valueId << 32) | (length & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Length of a packed match, 0 if there is no match.
+	 *
+	 * @param match the packed match
+	 * @return the length
+	 */
+	static int length(long match) {
+		return (int) match;
+	}
+
+	/**
+	 * Value index of a packed match.
+	 *
+	 * @param match the packed match
+	 * @return the value index
+	 */
+	static int valueId(long match) {
+		return (int) (match >>> 32);
+	}
+
+	/**
+	 * Removes all the keys.
+	 */
+	void clear() {
+		checkNotFrozen();
+		Arrays.fill(rootChildren, 0);
+		Arrays.fill(childKeys, 0, nodeCount, null);
+		Arrays.fill(childNodes, 0, nodeCount, null);
+		Arrays.fill(childCounts, 0, nodeCount, 0);
+		Arrays.fill(values, 0, valueCount, null);
+		nodeCount = 1;
+		nodeValues[0] = NO_VALUE;
+		valueCount = 0;
+		maxKeyLength = 0;
+	}
+
+	/**
+	 * Stores the value for the key, overwriting the previous one.
+	 *
+	 * @param key the key, at least one byte
+	 * @param value the value
+	 * @return the value index
+	 */
+	int put(byte[] key, String value) {
+		return put(key, value, NO_PARAMS);
+	}
+
+	/**
+	 * Stores the value for the key with its parameter bytes, overwriting the previous one.
+	 *
+	 * @param key the key, at least one byte
+	 * @param value the value
+	 * @param params the parameter bytes that follow the key, NO_PARAMS if it is not a control code
+	 * or TABLE_SWITCH for the table switch codes
+	 * @return the value index
+	 */
+	int put(byte[] key, String value, int params) {
+		checkNotFrozen();
+		int node = rootChildren[key[0] & 0xFF];
+		if(node == 0) {
+			node = newNode();
+			rootChildren[key[0] & 0xFF] = node;
+		}
+		for(int i = 1; i < key.length; i++) {
+			int child = findChild(node, key[i]);
+			if(child == 0) {
+				child = newNode();
+				insertChild(node, key[i], child);
+			}
+			node = child;
+		}
+		int valueId = nodeValues[node];
+		if(valueId == NO_VALUE) {
+			if(valueCount == values.length) {
+				values = Arrays.copyOf(values, valueCount * 2);
+				valueParams = Arrays.copyOf(valueParams, valueCount * 2);
+			}
+			valueId = valueCount++;
+			nodeValues[node] = valueId;
+		}
+		values[valueId] = value;
+		valueParams[valueId] = params;
+		if(key.length > maxKeyLength) {
+			maxKeyLength = key.length;
+		}
+		return valueId;
+	}
+
+	/**
+	 * Finds the longest key that starts at pos and ends before end.
+	 *
+	 * @param data the data
+	 * @param pos the start position
+	 * @param end the end position (exclusive)
+	 * @return the packed match or NO_MATCH
+	 */
+	long longestMatch(byte[] data, int pos, int end) {
+		if(pos >= end) {
+			return NO_MATCH;
+		}
+		int node = rootChildren[data[pos] & 0xFF];
+		int lastLen = 0;
+		int lastVal = NO_VALUE;
+		int i = pos;
+		while(node != 0) {
+			int valueId = nodeValues[node];
+			if(valueId != NO_VALUE) {
+				lastLen = i - pos + 1;
+				lastVal = valueId;
+			}
+			i++;
+			if(i >= end || childCounts[node] == 0) {
+				break;
+			}
+			node = findChild(node, data[i]);
+		}
+		return lastLen == 0 ? NO_MATCH : pack(lastLen, lastVal);
+	}
+
+	/**
+	 * Value index of the single byte key, or NO_VALUE.
+	 *
+	 * @param aByte the byte
+	 * @return the value index
+	 */
+	int singleByteValueId(byte aByte) {
+		int node = rootChildren[aByte & 0xFF];
+		return node == 0 ? NO_VALUE : nodeValues[node];
+	}
+
+	/**
+	 * Returns true if some key starts with the byte.
+	 *
+	 * @param aByte the byte
+	 * @return true, if some key starts with it
+	 */
+	boolean startsKey(byte aByte) {
+		return rootChildren[aByte & 0xFF] != 0;
+	}
+
+	/**
+	 * Gets the value by index.
+	 *
+	 * @param valueId the value index
+	 * @return the value
+	 */
+	String value(int valueId) {
+		return values[valueId];
+	}
+
+	/**
+	 * Gets the parameter bytes of the value.
+	 *
+	 * @param valueId the value index
+	 * @return the parameter bytes, NO_PARAMS if it is not a control code or TABLE_SWITCH
+	 */
+	int params(int valueId) {
+		return valueParams[valueId];
+	}
+
+	/**
+	 * Number of values stored.
+	 *
+	 * @return the value count
+	 */
+	int valueCount() {
+		return valueCount;
+	}
+
+	/**
+	 * Longest key stored.
+	 *
+	 * @return the length
+	 */
+	int maxKeyLength() {
+		return maxKeyLength;
+	}
+
+	/**
+	 * Number of nodes, node 0 is the root.
+	 *
+	 * @return the node count
+	 */
+	int nodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Child of the node for the key byte, the root children are looked up in the dense array.
+	 *
+	 * @param node the node, 0 for the root
+	 * @param key the key byte
+	 * @return the child node, 0 if none
+	 */
+	int child(int node, byte key) {
+		return node == 0 ? rootChildren[key & 0xFF] : findChild(node, key);
+	}
+
+	/**
+	 * Number of children of a node below the root.
+	 *
+	 * @param node the node
+	 * @return the child count
+	 */
+	int childCount(int node) {
+		return childCounts[node];
+	}
+
+	/**
+	 * Key byte of a child of a node below the root, children are ordered by unsigned key.
+	 *
+	 * @param node the node
+	 * @param index the child index
+	 * @return the key byte
+	 */
+	byte childKey(int node, int index) {
+		return childKeys[node][index];
+	}
+
+	/**
+	 * Child of a node below the root by index.
+	 *
+	 * @param node the node
+	 * @param index the child index
+	 * @return the child node
+	 */
+	int childNode(int node, int index) {
+		return childNodes[node][index];
+	}
+
+	/**
+	 * Value index of a node.
+	 *
+	 * @param node the node
+	 * @return the value index, NO_VALUE if no key ends at the node
+	 */
+	int nodeValue(int node) {
+		return nodeValues[node];
+	}
+
+	/**
+	 * Receives the entries of the trie.
+	 */
+	@FunctionalInterface
+	interface EntryConsumer {
+
+		/**
+		 * Receives an entry.
+		 *
+		 * @param key the key, a new array every call
+		 * @param value the value
+		 * @param params the parameter bytes, NO_PARAMS if it is not a control code
+		 */
+		void accept(byte[] key, String value, int params);
+	}
+
+	/**
+	 * Visits every key / value pair, ordered by unsigned key bytes.
+	 *
+	 * @param consumer the consumer
+	 */
+	void forEach(EntryConsumer consumer) {
+		byte[] path = new byte[Math.max(1, maxKeyLength)];
+		for(int b = 0; b < rootChildren.length; b++) {
+			if(rootChildren[b] != 0) {
+				path[0] = (byte) b;
+				visit(rootChildren[b], path, 1, consumer);
+			}
+		}
+	}
+
+	/**
+	 * Visits a node and its children.
+	 */
+	private void visit(int node, byte[] path, int depth, EntryConsumer consumer) {
+		int valueId = nodeValues[node];
+		if(valueId != NO_VALUE) {
+			consumer.accept(Arrays.copyOf(path, depth), values[valueId], valueParams[valueId]);
+		}
+		for(int c = 0; c < childCounts[node]; c++) {
+			path[depth] = childKeys[node][c];
+			visit(childNodes[node][c], path, depth + 1, consumer);
+		}
+	}
+
+	/**
+	 * Writes the trie arrays, trimmed to size.
+	 *
+	 * @param out the output
+	 * @throws IOException the exception
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeInt(nodeCount);
+		out.writeInt(valueCount);
+		out.writeInt(maxKeyLength);
+		for(int child : rootChildren) {
+			out.writeInt(child);
+		}
+		for(int node = 0; node < nodeCount; node++) {
+			out.writeInt(nodeValues[node]);
+			out.writeInt(childCounts[node]);
+			for(int c = 0; c < childCounts[node]; c++) {
+				out.writeByte(childKeys[node][c]);
+				out.writeInt(childNodes[node][c]);
+			}
+		}
+		for(int v = 0; v < valueCount; v++) {
+			writeString(out, values[v]);
+			out.writeInt(valueParams[v]);
+		}
+	}
+
+	/**
+	 * Replaces the content of the trie with the arrays stored by write.
+	 *
+	 * @param in the input
+	 */
+	void read(ByteBuffer in) {
+		checkNotFrozen();
+		nodeCount = in.getInt();
+		valueCount = in.getInt();
+		maxKeyLength = in.getInt();
+		for(int b = 0; b < rootChildren.length; b++) {
+			rootChildren[b] = in.getInt();
+		}
+		int capacity = Math.max(nodeCount, 1);
+		childKeys = new byte[capacity][];
+		childNodes = new int[capacity][];
+		childCounts = new int[capacity];
+		nodeValues = new int[capacity];
+		for(int node = 0; node < nodeCount; node++) {
+			nodeValues[node] = in.getInt();
+			int count = in.getInt();
+			childCounts[node] = count;
+			if(count > 0) {
+				childKeys[node] = new byte[count];
+				childNodes[node] = new int[count];
+				for(int c = 0; c < count; c++) {
+					childKeys[node][c] = in.get();
+					childNodes[node][c] = in.getInt();
+				}
+			}
+		}
+		values = new String[Math.max(valueCount, 1)];
+		valueParams = new int[values.length];
+		for(int v = 0; v < valueCount; v++) {
+			values[v] = readString(in);
+			valueParams[v] = in.getInt();
+		}
+	}
+
+	/**
+	 * Writes an UTF-8 string with its length in bytes.
+	 *
+	 * @param out the output
+	 * @param value the value
+	 * @throws IOException the exception
+	 */
+	static void writeString(DataOutput out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string stored by writeString.
+	 *
+	 * @param in the input
+	 * @return the string
+	 */
+	static String readString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Finds the child of the node for the key byte.
+	 *
+	 * @return the child node, 0 if none
+	 */
+	private int findChild(int node, byte key) {
+		int count = childCounts[node];
+		byte[] keys = childKeys[node];
+		int k = key & 0xFF;
+		if(count <= LINEAR_SEARCH_LIMIT) {
+			for(int c = 0; c < count; c++) {
+				if(keys[c] == key) {
+					return childNodes[node][c];
+				}
+			}
+			return 0;
+		}
+		int low = 0;
+		int high = count - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			int midKey = keys[mid] & 0xFF;
+			if(midKey < k) {
+				low = mid + 1;
+			}
+			else if(midKey > k) {
+				high = mid - 1;
+			}
+			else {
+				return childNodes[node][mid];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Inserts the child keeping the keys sorted.
+	 */
+	private void insertChild(int node, byte key, int child) {
+		int count = childCounts[node];
+		byte[] keys = childKeys[node];
+		int[] nodes = childNodes[node];
+		if(keys == null) {
+			keys = new byte[2];
+			nodes = new int[2];
+		}
+		else if(count == keys.length) {
+			keys = Arrays.copyOf(keys, count * 2);
+			nodes = Arrays.copyOf(nodes, count * 2);
+		}
+		int k = key & 0xFF;
+		int pos = count;
+		while(pos > 0 && (keys[pos - 1] & 0xFF) > k) {
+			keys[pos] = keys[pos - 1];
+			nodes[pos] = nodes[pos - 1];
+			pos--;
+		}
+		keys[pos] = key;
+		nodes[pos] = child;
+		childKeys[node] = keys;
+		childNodes[node] = nodes;
+		childCounts[node] = count + 1;
+	}
+
+	/**
+	 * Allocates a new node.
+	 *
+	 * @return the node id
+	 */
+	private int newNode() {
+		if(nodeCount == nodeValues.length) {
+			int capacity = nodeCount * 2;
+			childKeys = Arrays.copyOf(childKeys, capacity);
+			childNodes = Arrays.copyOf(childNodes, capacity);
+			childCounts = Arrays.copyOf(childCounts, capacity);
+			nodeValues = Arrays.copyOf(nodeValues, capacity);
+		}
+		nodeValues[nodeCount] = NO_VALUE;
+		return nodeCount++;
+	}
+
+}
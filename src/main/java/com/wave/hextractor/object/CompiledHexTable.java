@@ -0,0 +1,195 @@
+package com.wave.hextractor.object;
+
+import com.wave.hextractor.pojo.OffsetEntry;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable snapshot of a table.
+ * <p>
+ * The mappings are copied into unmodifiable maps and a frozen trie when the table is compiled,
+ * so later changes to the source table are not seen and the decode and encode methods
+ * can be called from several threads at the same time without locks.
+ * @author slcantero
+ */
+public final class CompiledHexTable implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 2871405936613125847L;
+
+	/** Frozen copy of the table, never exposed. */
+	private final HexTable table;
+
+	/**
+	 * Compiles the table.
+	 *
+	 * @param source the source table
+	 */
+	private CompiledHexTable(HexTable source) {
+		table = new HexTable(source, true);
+	}
+
+	/**
+	 * Compiles a table.
+	 *
+	 * @param source the source table
+	 * @return the compiled table
+	 */
+	public static CompiledHexTable of(HexTable source) {
+		return new CompiledHexTable(source);
+	}
+
+	/**
+	 * Loads and compiles a table file.
+	 *
+	 * @param tableFile the table file
+	 * @return the compiled table
+	 * @throws IOException the exception
+	 */
+	public static CompiledHexTable load(String tableFile) throws IOException {
+		return new CompiledHexTable(new HexTable(tableFile));
+	}
+
+	/**
+	 * Mutable copy of the mappings.
+	 *
+	 * @return a new table
+	 */
+	public HexTable toHexTable() {
+		return new HexTable(table, false);
+	}
+
+	/**
+	 * Transforms the byte into a String.
+	 */
+	public String toString(byte aByte, boolean expand, boolean decodeUnknown) {
+		return table.toString(aByte, expand, decodeUnknown);
+	}
+
+	/**
+	 * Transforms the byte into a single display char.
+	 */
+	public char toChar(byte aByte) {
+		return table.toChar(aByte);
+	}
+
+	/**
+	 * Translates a hex string to ascii.
+	 */
+	public String toAscii(byte[] hexString, boolean expand, boolean decodeUnknown) {
+		return table.toAscii(hexString, expand, decodeUnknown);
+	}
+
+	/**
+	 * Translates to ascii entry to a hex string.
+	 */
+	public String toAscii(byte[] hexString, OffsetEntry entry, boolean showExtracting, boolean splitLines) {
+		return table.toAscii(hexString, entry, showExtracting, splitLines);
+	}
+
+	/**
+	 * Translates the entry to ascii, streaming the lines to the output.
+	 */
+	public void toAscii(byte[] hexString, OffsetEntry entry, boolean showExtracting, boolean splitLines, Appendable out)
+			throws IOException {
+		table.toAscii(hexString, entry, showExtracting, splitLines, out);
+	}
+
+	/**
+	 * Simple string to hex using table.
+	 */
+	public byte[] toHex(String aString) {
+		return table.toHex(aString);
+	}
+
+	/**
+	 * Transforms the ascii string into hex bytes.
+	 */
+	public byte[] toHex(String string, OffsetEntry entry) {
+		return table.toHex(string, entry);
+	}
+
+	/**
+	 * Transforms the ascii string into hex bytes with the encoding mode.
+	 */
+	public byte[] toHex(String string, OffsetEntry entry, HexTable.EncodingMode mode, IntConsumer savedBytes) {
+		return table.toHex(string, entry, mode, savedBytes);
+	}
+
+	/**
+	 * Finds the longest mapping that starts at pos and ends before end, see {@link HexTable#matchAt(byte[], int, int)}.
+	 */
+	public long matchAt(byte[] data, int pos, int end) {
+		return table.matchAt(data, pos, end);
+	}
+
+	/**
+	 * Gets the table value of a value id.
+	 */
+	public String getValue(int valueId) {
+		return table.getValue(valueId);
+	}
+
+	/**
+	 * Decodes the bytes into the caller buffers, see {@link HexTable#decodeRange(byte[], int, int, int[], int[])}.
+	 */
+	public int decodeRange(byte[] data, int start, int end, int[] lengths, int[] valueIds) {
+		return table.decodeRange(data, start, end, lengths, valueIds);
+	}
+
+	/**
+	 * Get all entries from the file, the progress goes to the consumer as the table is shared.
+	 */
+	public String getAllEntries(byte[] secondFileBytes, int numMinChars, int numIgnoredChars,
+			List<String> endCharsList, String dictFile, boolean useMultibyte, DoubleConsumer progress) throws IOException {
+		return table.getAllEntries(secondFileBytes, numMinChars, numIgnoredChars, endCharsList, dictFile, useMultibyte, progress);
+	}
+
+	/**
+	 * Get all entries from the file with a dictionary index already loaded, the progress goes to the consumer.
+	 */
+	public String getAllEntries(byte[] secondFileBytes, int numMinChars, int numIgnoredChars,
+			List<String> endCharsList, DictionaryIndex dict, boolean useMultibyte, DoubleConsumer progress) {
+		return table.getAllEntries(secondFileBytes, numMinChars, numIgnoredChars, endCharsList, dict, useMultibyte, progress);
+	}
+
+	/**
+	 * Searches all the entries of the file, passing them on as they are found.
+	 */
+	public void searchAllEntries(byte[] fileBytes, int numMinChars, int numIgnoredChars, List<String> endCharsList,
+			DictionaryIndex dict, NgramModel model, float minConfidence, boolean useMultibyte, DoubleConsumer progress,
+			Consumer<OffsetEntry> entries) {
+		table.searchAllEntries(fileBytes, numMinChars, numIgnoredChars, endCharsList, dict, model, minConfidence,
+				useMultibyte, progress, entries);
+	}
+
+	/**
+	 * Transforms the table into ascii.
+	 */
+	public String toAsciiTable() {
+		return table.toAsciiTable();
+	}
+
+	/**
+	 * Gets the selection description.
+	 */
+	public String toSelectionString() {
+		return table.toSelectionString();
+	}
+
+	@Override
+	public int hashCode() {
+		return table.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof CompiledHexTable && table.equals(((CompiledHexTable) obj).table);
+	}
+
+}
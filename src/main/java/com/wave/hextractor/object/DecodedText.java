@@ -0,0 +1,214 @@
+package com.wave.hextractor.object;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Text decoded from a byte range with a table, as a {@link CharSequence} that maps every char back
+ * to the bytes it was decoded from.
+ * <p>
+ * The text is rendered as the extraction does, following the table switches, with the control codes
+ * and their parameters and the unknown bytes in hex. The position map keeps a byte per char, the length
+ * of its token on the last char of the token and 0 on the others, plus the offset of every 64th char,
+ * so the offset of a char is found adding up at most 63 lengths. The chars of the tokens that are not
+ * table text, the unknown bytes, table switches and control codes, are marked too.
+ * @author slcantero
+ */
+public final class DecodedText implements CharSequence {
+
+	/** Chars per stored offset, a power of 2. */
+	private static final int CHECKPOINT_SHIFT = 6;
+
+	/** Stored in the lengths when the token is too long for a byte. */
+	private static final int LONG_TOKEN = 0xFF;
+
+	/** The text. */
+	private final String text;
+
+	/** Byte length of the token ended by every char, 0 if the token goes on. */
+	private final byte[] tokenLengths;
+
+	/** Lengths of the tokens of {@link #LONG_TOKEN} bytes or more, by their last char. */
+	private final Map<Integer, Integer> longTokens;
+
+	/** Chars of the unknown bytes, table switches and control codes. */
+	private final BitSet codes;
+
+	/** Offset of every 64th char. */
+	private final int[] checkpoints;
+
+	/** End offset of the bytes decoded (exclusive). */
+	private final int end;
+
+	/**
+	 * Instantiates a new decoded text.
+	 */
+	private DecodedText(String text, byte[] tokenLengths, Map<Integer, Integer> longTokens, BitSet codes,
+			int start, int end) {
+		this.text = text;
+		this.tokenLengths = tokenLengths;
+		this.longTokens = longTokens;
+		this.codes = codes;
+		this.end = end;
+		checkpoints = new int[(text.length() >> CHECKPOINT_SHIFT) + 1];
+		int offset = start;
+		for(int i = 0; i < text.length(); i++) {
+			if((i & (1 << CHECKPOINT_SHIFT) - 1) == 0) {
+				checkpoints[i >> CHECKPOINT_SHIFT] = offset;
+			}
+			offset += tokenLength(i);
+		}
+		if((text.length() & (1 << CHECKPOINT_SHIFT) - 1) == 0) {
+			checkpoints[text.length() >> CHECKPOINT_SHIFT] = offset;
+		}
+	}
+
+	/**
+	 * Decodes the bytes from start to end (exclusive) with the table.
+	 *
+	 * @param data the data
+	 * @param hexTable the table
+	 * @param start the start offset
+	 * @param end the end offset (exclusive)
+	 * @return the decoded text
+	 */
+	public static DecodedText decode(byte[] data, HexTable hexTable, int start, int end) {
+		int from = Math.max(start, 0);
+		int to = Math.max(Math.min(end, data.length), from);
+		StringBuilder sb = new StringBuilder(to - from);
+		Map<Integer, Integer> longTokens = new HashMap<>();
+		BitSet codes = new BitSet();
+		// Byte length of the token ended by every char and bytes of the empty tokens before the first char
+		byte[][] lengths = {new byte[to - from]};
+		int[] leading = {0};
+		int[] tokenStart = {0};
+		hexTable.toAscii(data, from, to, sb, (length, code) -> {
+			if(code) {
+				codes.set(tokenStart[0], sb.length());
+			}
+			tokenStart[0] = sb.length();
+			int last = sb.length() - 1;
+			if(last < 0) {
+				leading[0] += length;
+				return;
+			}
+			if(last >= lengths[0].length) {
+				lengths[0] = Arrays.copyOf(lengths[0], Math.max(lengths[0].length * 2, last + 1));
+			}
+			// A token without text adds its bytes to the previous token
+			int total = length + tokenLength(lengths[0], longTokens, last);
+			if(total >= LONG_TOKEN) {
+				longTokens.put(last, total);
+				lengths[0][last] = (byte) LONG_TOKEN;
+			}
+			else {
+				lengths[0][last] = (byte) total;
+			}
+		});
+		return new DecodedText(sb.toString(), Arrays.copyOf(lengths[0], sb.length()), longTokens, codes,
+				from + leading[0], to);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.CharSequence#length()
+	 */
+	@Override
+	public int length() {
+		return text.length();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.CharSequence#charAt(int)
+	 */
+	@Override
+	public char charAt(int index) {
+		return text.charAt(index);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.CharSequence#subSequence(int, int)
+	 */
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return text.substring(start, end);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return text;
+	}
+
+	/**
+	 * Offset of the first byte of the token of the char, the end offset for the length of the text.
+	 *
+	 * @param index the char index, up to the length
+	 * @return the offset
+	 */
+	public int offset(int index) {
+		if(index >= text.length()) {
+			return end;
+		}
+		int offset = checkpoints[index >> CHECKPOINT_SHIFT];
+		for(int i = index & -(1 << CHECKPOINT_SHIFT); i < index; i++) {
+			offset += tokenLength(i);
+		}
+		return offset;
+	}
+
+	/**
+	 * Offset after the token of the char before the index, so the chars from a start to the index
+	 * decode from the bytes between offset(start) and endOffset(index).
+	 *
+	 * @param index the char index (exclusive), up to the length
+	 * @return the end offset (exclusive)
+	 */
+	public int endOffset(int index) {
+		return offset(tokenEnd(index));
+	}
+
+	/**
+	 * First char index from the index on where a token starts, the length if there is none.
+	 *
+	 * @param index the char index
+	 * @return the char index
+	 */
+	public int tokenEnd(int index) {
+		int i = index;
+		while(i > 0 && i < text.length() && tokenLengths[i - 1] == 0) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Returns true if the char belongs to an unknown byte, a table switch or a control code,
+	 * rendered in hex and not table text.
+	 *
+	 * @param index the char index
+	 * @return true, if it is not table text
+	 */
+	public boolean isCode(int index) {
+		return codes.get(index);
+	}
+
+	/**
+	 * Byte length of the token ended by the char, 0 if the token goes on.
+	 */
+	private int tokenLength(int index) {
+		return tokenLength(tokenLengths, longTokens, index);
+	}
+
+	/**
+	 * Byte length of the token ended by the char, 0 if the token goes on.
+	 */
+	private static int tokenLength(byte[] tokenLengths, Map<Integer, Integer> longTokens, int index) {
+		int length = tokenLengths[index] & LONG_TOKEN;
+		return length == LONG_TOKEN ? longTokens.get(index) : length;
+	}
+
+}
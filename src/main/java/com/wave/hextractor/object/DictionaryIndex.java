@@ -0,0 +1,378 @@
+package com.wave.hextractor.object;
+
+import com.wave.hextractor.util.Constants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Compiled index of the dictionary words checked by search all.
+ * <p>
+ * The words are kept as UTF-8 bytes in one array and found through an open addressing hash table of
+ * the 64 bit FNV-1a hash of their bytes, with a Bloom filter in front that rejects most of the words
+ * that are not in the dictionary without probing the table. The hash is computed a char at a time, so
+ * the words are checked while they are decoded, without building strings. The chars outside the basic
+ * plane are encoded surrogate by surrogate. The index keeps a {@link NgramModel} of the words too.
+ * <p>
+ * The index is stored in a sidecar file (dictionary name plus {@link Constants#DICT_INDEX_EXTENSION})
+ * with the size, modification time and CRC32 of the dictionary, as the table cache does. Set the system
+ * property {@link Constants#DICT_INDEX_PROPERTY} to false to disable it.
+ * @author slcantero
+ */
+public final class DictionaryIndex {
+
+	/** The Constant MAGIC, "HXDI". */
+	private static final int MAGIC = 0x48584449;
+
+	/** Index file format version, change it when the stored structures change. */
+	private static final int VERSION = 2;
+
+	/** Hash of the empty word, the FNV-1a offset basis. */
+	public static final long EMPTY_HASH = 0xCBF29CE484222325L;
+
+	/** The FNV-1a prime. */
+	private static final long FNV_PRIME = 0x100000001B3L;
+
+	/** Minimal Bloom filter bits per word, rounded up to a power of two. */
+	private static final int BLOOM_BITS_PER_WORD = 10;
+
+	/** Bits of the Bloom filter set per word. */
+	private static final int BLOOM_HASHES = 3;
+
+	/** The words, UTF-8 encoded one after the other. */
+	private final byte[] words;
+
+	/** Start of every word in the bytes, plus the end of the last one. */
+	private final int[] wordStarts;
+
+	/** Open addressing table of word index plus one, 0 for the empty slots, a power of two long. */
+	private final int[] slots;
+
+	/** The Bloom filter, a power of two bits long. */
+	private final long[] bloom;
+
+	/** Trigram model of the words. */
+	private final NgramModel model;
+
+	/**
+	 * Instantiates a new dictionary index.
+	 */
+	private DictionaryIndex(byte[] words, int[] wordStarts, int[] slots, long[] bloom, NgramModel model) {
+		this.words = words;
+		this.wordStarts = wordStarts;
+		this.slots = slots;
+		this.bloom = bloom;
+		this.model = model;
+	}
+
+	/**
+	 * Builds the index of the words.
+	 *
+	 * @param dictWords the words, the repeated ones are stored once
+	 * @return the index
+	 */
+	public static DictionaryIndex of(Collection<String> dictWords) {
+		Set<String> unique = new LinkedHashSet<>(dictWords);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		int[] wordStarts = new int[unique.size() + 1];
+		int[] slots = new int[Integer.highestOneBit(Math.max(unique.size(), 1) * 2 - 1) << 1];
+		long[] bloom = new long[Math.max(Integer.highestOneBit(Math.max(unique.size(), 1) * BLOOM_BITS_PER_WORD - 1)
+				>> 5, 1)];
+		int word = 0;
+		for(String dictWord : unique) {
+			wordStarts[word] = bytes.size();
+			long hash = EMPTY_HASH;
+			for(int i = 0; i < dictWord.length(); i++) {
+				char c = dictWord.charAt(i);
+				hash = hash(hash, c);
+				writeUtf8(bytes, c);
+			}
+			int slot = slot(hash, slots.length);
+			while(slots[slot] != 0) {
+				slot = slot + 1 & slots.length - 1;
+			}
+			slots[slot] = ++word;
+			for(int k = 0; k < BLOOM_HASHES; k++) {
+				int bit = bloomBit(hash, k, bloom.length);
+				bloom[bit >>> 6] |= 1L << bit;
+			}
+		}
+		wordStarts[word] = bytes.size();
+		return new DictionaryIndex(bytes.toByteArray(), wordStarts, slots, bloom, NgramModel.of(unique));
+	}
+
+	/**
+	 * Loads the index of the dictionary file, one word per line, from the index file if it is up to
+	 * date, building it and rewriting the index file otherwise.
+	 *
+	 * @param dictFile the dictionary file
+	 * @return the index
+	 * @throws IOException the exception
+	 */
+	public static DictionaryIndex load(Path dictFile) throws IOException {
+		if(!isEnabled()) {
+			return parse(dictFile);
+		}
+		long size = Files.size(dictFile);
+		long modified = Files.getLastModifiedTime(dictFile).toMillis();
+		long crc = HexTableCache.crc(dictFile, size);
+		Path indexFile = indexFile(dictFile);
+		DictionaryIndex res = read(indexFile, size, modified, crc);
+		if(res == null) {
+			res = parse(dictFile);
+			res.write(indexFile, size, modified, crc);
+		}
+		return res;
+	}
+
+	/**
+	 * Returns true if the index file is enabled.
+	 *
+	 * @return true, if enabled
+	 */
+	static boolean isEnabled() {
+		return !Boolean.FALSE.toString().equalsIgnoreCase(System.getProperty(Constants.DICT_INDEX_PROPERTY));
+	}
+
+	/**
+	 * Sidecar index file of the dictionary.
+	 *
+	 * @param dictFile the dictionary file
+	 * @return the index file
+	 */
+	static Path indexFile(Path dictFile) {
+		return dictFile.resolveSibling(dictFile.getFileName() + Constants.DICT_INDEX_EXTENSION);
+	}
+
+	/**
+	 * Hash of the word.
+	 *
+	 * @param word the word
+	 * @return the hash
+	 */
+	public static long hash(CharSequence word) {
+		long hash = EMPTY_HASH;
+		for(int i = 0; i < word.length(); i++) {
+			hash = hash(hash, word.charAt(i));
+		}
+		return hash;
+	}
+
+	/**
+	 * Hash of a word plus a char, from the hash of the word.
+	 *
+	 * @param hash the hash of the word, {@link #EMPTY_HASH} for the empty word
+	 * @param c the char appended
+	 * @return the hash
+	 */
+	public static long hash(long hash, char c) {
+		if(c < 0x80) {
+			return (hash ^ c) * FNV_PRIME;
+		}
+		long res = hash;
+		int length = utf8Length(c);
+		for(int i = 0; i < length; i++) {
+			res = (res ^ utf8Byte(c, length, i)) * FNV_PRIME;
+		}
+		return res;
+	}
+
+	/**
+	 * Number of words.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return wordStarts.length - 1;
+	}
+
+	/**
+	 * Trigram model trained with the words.
+	 *
+	 * @return the model
+	 */
+	public NgramModel model() {
+		return model;
+	}
+
+	/**
+	 * Returns true if the word is in the dictionary.
+	 *
+	 * @param word the word
+	 * @return true, if found
+	 */
+	public boolean contains(CharSequence word) {
+		return contains(hash(word), word);
+	}
+
+	/**
+	 * Returns true if the word is in the dictionary, with its hash already computed.
+	 *
+	 * @param hash the hash of the word, see {@link #hash(long, char)}
+	 * @param word the word
+	 * @return true, if found
+	 */
+	public boolean contains(long hash, CharSequence word) {
+		for(int k = 0; k < BLOOM_HASHES; k++) {
+			int bit = bloomBit(hash, k, bloom.length);
+			if((bloom[bit >>> 6] & 1L << bit) == 0) {
+				return false;
+			}
+		}
+		for(int slot = slot(hash, slots.length); slots[slot] != 0; slot = slot + 1 & slots.length - 1) {
+			if(matches(slots[slot] - 1, word)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if the stored word has the chars of the word.
+	 */
+	private boolean matches(int word, CharSequence text) {
+		int pos = wordStarts[word];
+		int end = wordStarts[word + 1];
+		for(int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			int length = utf8Length(c);
+			if(end - pos < length) {
+				return false;
+			}
+			for(int b = 0; b < length; b++) {
+				if((words[pos++] & Constants.MASK_8BIT) != utf8Byte(c, length, b)) {
+					return false;
+				}
+			}
+		}
+		return pos == end;
+	}
+
+	/**
+	 * Writes the UTF-8 bytes of the char.
+	 */
+	private static void writeUtf8(ByteArrayOutputStream out, char c) {
+		int length = utf8Length(c);
+		for(int i = 0; i < length; i++) {
+			out.write(utf8Byte(c, length, i));
+		}
+	}
+
+	/**
+	 * Number of UTF-8 bytes of the char.
+	 */
+	private static int utf8Length(char c) {
+		if(c < 0x80) {
+			return 1;
+		}
+		return c < 0x800 ? 2 : 3;
+	}
+
+	/**
+	 * Byte i of the UTF-8 bytes of the char.
+	 */
+	private static int utf8Byte(char c, int length, int i) {
+		if(i > 0) {
+			return 0x80 | c >> 6 * (length - 1 - i) & 0x3F;
+		}
+		if(length == 1) {
+			return c;
+		}
+		return length == 2 ? 0xC0 | c >> 6 : 0xE0 | c >> 12;
+	}
+
+	/**
+	 * Table slot of the hash.
+	 */
+	private static int slot(long hash, int length) {
+		return (int) (hash ^ hash >>> 32) & length - 1;
+	}
+
+	/**
+	 * Bloom filter bit k of the hash, double hashing with both halves of the hash.
+	 */
+	private static int bloomBit(long hash, int k, int longs) {
+		return (int) hash + k * ((int) (hash >>> 32) | 1) & (longs << 6) - 1;
+	}
+
+	/**
+	 * Builds the index of the dictionary file.
+	 */
+	private static DictionaryIndex parse(Path dictFile) throws IOException {
+		return of(Files.readAllLines(dictFile, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Loads the index file if it matches the dictionary.
+	 *
+	 * @return the index, null if the file is missing or not valid
+	 */
+	private static DictionaryIndex read(Path indexFile, long size, long modified, long crc) {
+		return HexTableCache.readSidecar(indexFile, "Dictionary index", "the dictionary will be parsed", channel -> {
+			ByteBuffer in = HexTableCache.readAll(channel);
+			if(in.getInt() != MAGIC || in.getInt() != VERSION || in.getLong() != size
+					|| in.getLong() != modified || in.getLong() != crc) {
+				return null;
+			}
+			byte[] words = new byte[in.getInt()];
+			in.get(words);
+			int[] wordStarts = readInts(in);
+			int[] slots = readInts(in);
+			long[] bloom = new long[in.getInt()];
+			in.asLongBuffer().get(bloom);
+			in.position(in.position() + bloom.length * Long.BYTES);
+			return new DictionaryIndex(words, wordStarts, slots, bloom, NgramModel.read(in));
+		});
+	}
+
+	/**
+	 * Reads an int array stored with its length.
+	 */
+	private static int[] readInts(ByteBuffer in) {
+		int[] res = new int[in.getInt()];
+		in.asIntBuffer().get(res);
+		in.position(in.position() + res.length * Integer.BYTES);
+		return res;
+	}
+
+	/**
+	 * Writes the index file.
+	 */
+	private void write(Path indexFile, long size, long modified, long crc) {
+		HexTableCache.writeSidecar(indexFile, "Dictionary index", out -> {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(size);
+			out.writeLong(modified);
+			out.writeLong(crc);
+			out.writeInt(words.length);
+			out.write(words);
+			writeInts(out, wordStarts);
+			writeInts(out, slots);
+			out.writeInt(bloom.length);
+			for(long bits : bloom) {
+				out.writeLong(bits);
+			}
+			model.write(out);
+		});
+	}
+
+	/**
+	 * Writes an int array with its length.
+	 */
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		out.writeInt(values.length);
+		for(int value : values) {
+			out.writeInt(value);
+		}
+	}
+
+}
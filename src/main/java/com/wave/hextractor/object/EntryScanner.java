@@ -0,0 +1,464 @@
+package com.wave.hextractor.object;
+
+import com.wave.hextractor.pojo.OffsetEntry;
+import com.wave.hextractor.util.Constants;
+import com.wave.hextractor.util.ScanUtils;
+import com.wave.hextractor.util.Utils;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Search all state machine, finds the ranges of the data that decode to text with dictionary words.
+ * <p>
+ * Every byte is looked up in a 256 entry table of the current table that tells if a mapping can start
+ * with it, so the unknown bytes skip the table lookup. The words are decoded into a reused buffer and
+ * checked by scanning its chars as the cleaning regex of {@link Utils#stringHasWords} would leave them.
+ * <p>
+ * Large data is split into chunks scanned on the common fork/join pool. Every split point is moved to
+ * the end of a run of bytes that no table maps, long enough to end any string whatever the state before
+ * it, so every chunk starts searching a new string as the sequential scan would and the entries of the
+ * chunks, merged in order, are the same. The entries are passed on by the calling thread as soon as the chunks
+ * before them end.
+ * <p>
+ * Every char decoded is scored with the text model as it is appended, the entries get the confidence of
+ * their chars and the ones below the min confidence are dropped.
+ * @author slcantero
+ */
+final class EntryScanner {
+
+	/** Bytes scanned between progress reports, power of two. */
+	private static final int PROGRESS_STEP = 0x1000;
+
+	/** Carriage return, ignored in multi-byte mode. */
+	private static final byte CR = 0x0D;
+
+	/** Shortest dictionary word checked. */
+	private static final int MIN_DICT_WORD_LENGTH = 4;
+
+	/**
+	 * The scanner status.
+	 */
+	private enum Status {
+		/** The searching start of string. */
+		SEARCHING_START_OF_STRING,
+		/** The searching end of string. */
+		SEARCHING_END_OF_STRING,
+		/** The skipping chars. */
+		SKIPPING_CHARS,
+	}
+
+	/** The table every string starts with. */
+	private final HexTable table;
+
+	/** The data. */
+	private final byte[] data;
+
+	/** The num min chars. */
+	private final int numMinChars;
+
+	/** The num ignored chars. */
+	private final int numIgnoredChars;
+
+	/** The end chars of the entries. */
+	private final List<String> endCharsList;
+
+	/** The dictionary. */
+	private final DictionaryIndex dict;
+
+	/** The text model that scores the entries. */
+	private final NgramModel model;
+
+	/** Entries with less confidence are dropped. */
+	private final float minConfidence;
+
+	/** True to decode multi-byte mappings. */
+	private final boolean useMultibyte;
+
+	/** Bytes that can start a mapping of every table used. */
+	private final Map<HexTable, boolean[]> knownBytes = new IdentityHashMap<>();
+
+	/** Text of the current word. */
+	private final StringBuilder word = new StringBuilder();
+
+	/** Dictionary word candidate, reused. */
+	private final StringBuilder candidate = new StringBuilder();
+
+	/** Hash of the candidate, updated as it grows. */
+	private long candidateHash = DictionaryIndex.EMPTY_HASH;
+
+	/** Last trigram of the current entry. */
+	private int trigram;
+
+	/** Sum of the log-probabilities of the chars of the current entry. */
+	private double logProbSum;
+
+	/** Chars scored of the current entry. */
+	private int scoredChars;
+
+	/**
+	 * Instantiates a new entry scanner.
+	 *
+	 * @param table the table every string starts with
+	 * @param data the data
+	 * @param numMinChars the num min chars
+	 * @param numIgnoredChars the num ignored chars
+	 * @param endCharsList the end chars of the entries
+	 * @param dict the dictionary
+	 * @param model the text model that scores the entries
+	 * @param minConfidence entries with less confidence are dropped, 0 keeps all
+	 * @param useMultibyte true to decode multi-byte mappings
+	 */
+	EntryScanner(HexTable table, byte[] data, int numMinChars, int numIgnoredChars, List<String> endCharsList,
+			DictionaryIndex dict, NgramModel model, float minConfidence, boolean useMultibyte) {
+		this.table = table;
+		this.data = data;
+		this.numMinChars = numMinChars;
+		this.numIgnoredChars = numIgnoredChars;
+		this.endCharsList = endCharsList;
+		this.dict = dict;
+		this.model = model;
+		this.minConfidence = minConfidence;
+		this.useMultibyte = useMultibyte;
+	}
+
+	/**
+	 * Scans the whole data, in parallel chunks if it is large.
+	 *
+	 * @param progress receives the completion percent, from any thread
+	 * @return the entries found, ordered
+	 */
+	List<OffsetEntry> scan(DoubleConsumer progress) {
+		List<OffsetEntry> res = new ArrayList<>();
+		scan(progress, res::add);
+		return res;
+	}
+
+	/**
+	 * Scans the whole data, in parallel chunks if it is large, passing the entries of every chunk on
+	 * as soon as the chunks before it end.
+	 *
+	 * @param progress receives the completion percent, from any thread
+	 * @param results receives the entries in order, on the calling thread
+	 */
+	void scan(DoubleConsumer progress, Consumer<OffsetEntry> results) {
+		int limit = Math.max(data.length - numMinChars, 0);
+		// The workers stop when the thread that started the search is interrupted
+		Thread caller = Thread.currentThread();
+		AtomicLong scanned = new AtomicLong();
+		AtomicLong lastTime = new AtomicLong(System.currentTimeMillis());
+		IntConsumer scannedBytes = bytes -> {
+			float percent = scanned.addAndGet(bytes) * 100f / data.length;
+			progress.accept(percent);
+			long time = System.currentTimeMillis();
+			long last = lastTime.get();
+			if(time - last > 1000 && lastTime.compareAndSet(last, time)) {
+				Utils.log(percent + "% completed.");
+			}
+		};
+		int[] splits = splits(limit);
+		if(splits.length == 2) {
+			scan(0, limit, caller, scannedBytes, results);
+			return;
+		}
+		ScanUtils.inOrder(splits.length - 1, chunk -> {
+			List<OffsetEntry> entries = new ArrayList<>();
+			new EntryScanner(table, data, numMinChars, numIgnoredChars, endCharsList, dict, model, minConfidence,
+					useMultibyte).scan(splits[chunk], splits[chunk + 1], caller, scannedBytes, entries::add);
+			return entries;
+		}, entries -> entries.forEach(results));
+	}
+
+	/**
+	 * Chunk boundaries of the scan up to the limit, from 0 to the limit, ordered.
+	 */
+	private int[] splits(int limit) {
+		int chunkSize = ScanUtils.chunkSize(limit);
+		if(limit <= chunkSize) {
+			return new int[] {0, limit};
+		}
+		boolean[] unmapped = new boolean[256];
+		int maxScanLength = 1;
+		List<HexTable> tables = table.linkedTables();
+		for(int b = 0; b < unmapped.length; b++) {
+			unmapped[b] = !useMultibyte || b != CR;
+			for(HexTable t : tables) {
+				unmapped[b] &= !knownBytes(t)[b];
+			}
+		}
+		for(HexTable t : tables) {
+			maxScanLength = Math.max(maxScanLength, t.maxScanLength(useMultibyte));
+		}
+		// A match before the run can cover its first bytes, the rest end the string as unknown bytes
+		int runLength = Math.max(2, numIgnoredChars + 1) + maxScanLength - 1;
+		int[] found = IntStream.range(1, (limit - 1) / chunkSize + 1).parallel()
+				.map(chunk -> split(unmapped, runLength, chunk * chunkSize, Math.min((chunk + 1) * chunkSize, limit)))
+				.filter(split -> split >= 0).toArray();
+		int[] res = new int[found.length + 2];
+		System.arraycopy(found, 0, res, 1, found.length);
+		res[res.length - 1] = limit;
+		return res;
+	}
+
+	/**
+	 * First offset from start to end (exclusive) after a run of unmapped bytes of the length, -1 if there is none.
+	 */
+	private int split(boolean[] unmapped, int runLength, int start, int end) {
+		int run = 0;
+		for(int i = Math.max(start - runLength, 0); i < end; i++) {
+			run = unmapped[data[i] & Constants.MASK_8BIT] ? run + 1 : 0;
+			if(run >= runLength) {
+				return i + 1 < end ? i + 1 : -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Scans the data from the start to the end (exclusive) on the calling thread.
+	 *
+	 * @param from the start offset, where a string can start
+	 * @param to the end offset (exclusive)
+	 * @param caller the thread that started the search, the scan stops if it is interrupted
+	 * @param scannedBytes receives the bytes scanned since the last call
+	 * @param results receives the entries found, in order
+	 */
+	void scan(int from, int to, Thread caller, IntConsumer scannedBytes, Consumer<OffsetEntry> results) {
+		int entryStart = 0;
+		boolean validString = false;
+		int sentenceLength = 0;
+		int skipped = 0;
+		Status status = Status.SEARCHING_START_OF_STRING;
+		// Every string starts with this table, the switch codes change it until the string ends
+		HexTable state = table;
+		boolean[] known = knownBytes(state);
+		int reported = from;
+		for(int i = from; i < to && !caller.isInterrupted(); i++) {
+			if(i - reported >= PROGRESS_STEP) {
+				scannedBytes.accept(i - reported);
+				reported = i;
+			}
+			if(useMultibyte && data[i] == CR) {
+				continue;
+			}
+			long m = known[data[i] & Constants.MASK_8BIT] ? state.scanMatch(data, i, useMultibyte) : ByteTrie.NO_MATCH;
+			int mLength = ByteTrie.length(m);
+			if(mLength > 0) {
+				if(status != Status.SEARCHING_END_OF_STRING) {
+					if(status == Status.SEARCHING_START_OF_STRING) {
+						entryStart = i;
+						sentenceLength = 0;
+						validString = false;
+						trigram = NgramModel.START;
+						logProbSum = 0;
+						scoredChars = 0;
+					}
+					word.setLength(0);
+					status = Status.SEARCHING_END_OF_STRING;
+				}
+				int wordLength = word.length();
+				state.appendText(word, m, data, i);
+				sentenceLength += word.length() - wordLength;
+				score(wordLength);
+				HexTable next = state.nextTable(m);
+				if(next != state) {
+					state = next;
+					known = knownBytes(state);
+				}
+				i += mLength - 1;
+			}
+			else if(status == Status.SEARCHING_END_OF_STRING) {
+				if(cleanedLengthAtLeast(word, 2)) {
+					if(!validString) {
+						validString = hasWords(word);
+					}
+					sentenceLength++;
+					word.append(Constants.SPACE_CHAR);
+					score(word.length() - 1);
+					skipped = 1;
+					status = Status.SKIPPING_CHARS;
+				}
+				else {
+					if(validString) {
+						addEntry(results, entryStart, i);
+					}
+					entryStart = 0;
+					state = table;
+					known = knownBytes(state);
+					status = Status.SEARCHING_START_OF_STRING;
+				}
+			}
+			else if(status == Status.SKIPPING_CHARS && ++skipped > numIgnoredChars) {
+				if(sentenceLength > numMinChars && (validString || hasWords(word))) {
+					addEntry(results, entryStart, i);
+				}
+				entryStart = 0;
+				state = table;
+				known = knownBytes(state);
+				status = Status.SEARCHING_START_OF_STRING;
+			}
+		}
+		scannedBytes.accept(to - reported);
+		// Only the last chunk can end inside a string
+		if(entryStart > 0) {
+			addEntry(results, entryStart, data.length - 1);
+		}
+	}
+
+	/**
+	 * Scores the chars of the word from the index on, as part of the current entry.
+	 */
+	private void score(int from) {
+		for(int i = from; i < word.length(); i++) {
+			trigram = NgramModel.next(trigram, word.charAt(i));
+			logProbSum += model.logProbability(trigram);
+		}
+		scoredChars += word.length() - from;
+	}
+
+	/**
+	 * Adds the current entry with its confidence, if it has the min confidence.
+	 */
+	private void addEntry(Consumer<OffsetEntry> results, int start, int end) {
+		float confidence = NgramModel.confidence(logProbSum, scoredChars);
+		if(confidence >= minConfidence) {
+			OffsetEntry entry = new OffsetEntry(start, end, endCharsList);
+			entry.setConfidence(confidence);
+			results.accept(entry);
+		}
+	}
+
+	/**
+	 * Bytes that can start a mapping of the table.
+	 */
+	private boolean[] knownBytes(HexTable hexTable) {
+		return knownBytes.computeIfAbsent(hexTable, t -> {
+			boolean[] res = new boolean[256];
+			for(int b = 0; b < res.length; b++) {
+				res[b] = t.startsMapping((byte) b, useMultibyte);
+			}
+			return res;
+		});
+	}
+
+	/**
+	 * Returns true if the word has the min length once cleaned as {@link Utils#getCleanedString(String)} does,
+	 * every run of whitespace counts as one char.
+	 */
+	private static boolean cleanedLengthAtLeast(CharSequence text, int min) {
+		int length = 0;
+		boolean space = false;
+		for(int i = 0; i < text.length() && length < min; i++) {
+			char c = text.charAt(i);
+			if(isSpace(c)) {
+				if(!space) {
+					length++;
+				}
+				space = true;
+			}
+			else {
+				space = false;
+				if(isKept(lowerCase(c))) {
+					length++;
+				}
+			}
+		}
+		return length >= min;
+	}
+
+	/**
+	 * Returns true if the text has a dictionary word, split and cleaned as {@link Utils#stringHasWords} does.
+	 * A single whitespace other than a space stays in the word, as the cleaning regex leaves it.
+	 */
+	private boolean hasWords(CharSequence text) {
+		clearCandidate();
+		int i = 0;
+		while(i < text.length()) {
+			char c = text.charAt(i);
+			if(isSpace(c)) {
+				int runEnd = i + 1;
+				while(runEnd < text.length() && isSpace(text.charAt(runEnd))) {
+					runEnd++;
+				}
+				if(c == Constants.SPACE_CHAR || runEnd - i > 1) {
+					if(isDictWord()) {
+						return true;
+					}
+					clearCandidate();
+				}
+				else {
+					appendCandidate(c);
+				}
+				i = runEnd;
+			}
+			else {
+				char lower = lowerCase(c);
+				if(isKept(lower)) {
+					appendCandidate(lower);
+				}
+				i++;
+			}
+		}
+		return isDictWord();
+	}
+
+	/**
+	 * Returns true if the candidate is long enough without the surrounding whitespace and is in the dictionary.
+	 */
+	private boolean isDictWord() {
+		int start = 0;
+		int end = candidate.length();
+		while(start < end && candidate.charAt(start) <= Constants.SPACE_CHAR) {
+			start++;
+		}
+		while(end > start && candidate.charAt(end - 1) <= Constants.SPACE_CHAR) {
+			end--;
+		}
+		return end - start >= MIN_DICT_WORD_LENGTH && dict.contains(candidateHash, candidate);
+	}
+
+	/**
+	 * Empties the candidate.
+	 */
+	private void clearCandidate() {
+		candidate.setLength(0);
+		candidateHash = DictionaryIndex.EMPTY_HASH;
+	}
+
+	/**
+	 * Appends the char to the candidate, updating its hash.
+	 */
+	private void appendCandidate(char c) {
+		candidate.append(c);
+		candidateHash = DictionaryIndex.hash(candidateHash, c);
+	}
+
+	/**
+	 * Returns true for the chars of the regex whitespace class.
+	 */
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	/**
+	 * Returns true for the chars the cleaning regex keeps, [a-zA-z1-9'].
+	 */
+	private static boolean isKept(char c) {
+		return c >= 'A' && c <= 'z' || c >= '1' && c <= '9' || c == '\'';
+	}
+
+	/**
+	 * Lower case of the char, the dotted capital I lowers to an i and a combining dot that is not kept.
+	 */
+	private static char lowerCase(char c) {
+		return c == '\u0130' ? 'i' : Character.toLowerCase(c);
+	}
+
+}
@@ -0,0 +1,266 @@
+package com.wave.hextractor.object;
+
+import com.wave.hextractor.util.Constants;
+import com.wave.hextractor.util.ScanUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Approximate search of a word in the text decoded with a table, finds the substrings within
+ * a number of edits (insertions, deletions or substitutions) of the word.
+ * <p>
+ * The data is decoded once into a {@link DecodedText}, as the extraction renders it, and every token
+ * of an unknown byte, table switch or control code is searched as a single char that matches nothing,
+ * so their hex digits and braces are not taken as letters. The chars are searched with Myers' bit-vector
+ * algorithm, one long keeps the whole column of the edit distance matrix, so the search is linear in the data.
+ * Every run of consecutive ends within the distance is reported once, at its best end, and the start
+ * of the match is found with a small backwards alignment.
+ * @author slcantero
+ */
+public final class FuzzySearch {
+
+	/**
+	 * A match.
+	 *
+	 * @param offset the offset of the first byte
+	 * @param length the length in bytes
+	 * @param distance the edit distance to the word
+	 * @param text the decoded text
+	 */
+	public record Match(int offset, int length, int distance, String text) {
+	}
+
+	/**
+	 * Chars searched, the table text chars and one char for every other token, with their index in the
+	 * decoded text.
+	 */
+	private record SearchedText(char[] chars, int[] textIndexes) {
+	}
+
+	/** Longest word, the bits of a long. */
+	public static final int MAX_WORD_LENGTH = Long.SIZE;
+
+	/** Char of the unknown bytes, table switches and control codes, it matches nothing. */
+	private static final char NO_CHAR = '\uFFFF';
+
+	/** Order of the matches, by distance and offset. */
+	private static final Comparator<Match> RANK = Comparator.comparingInt(Match::distance)
+			.thenComparingInt(Match::offset);
+
+	/** The word. */
+	private final char[] word;
+
+	/** The max distance. */
+	private final int maxDistance;
+
+	/** True to ignore the case. */
+	private final boolean ignoreCase;
+
+	/** Positions of every char below 256 in the word, bit i for position i. */
+	private final long[] lowPositions = new long[256];
+
+	/** Positions of the other chars in the word. */
+	private final Map<Character, Long> highPositions = new HashMap<>();
+
+	/**
+	 * Compiles the word.
+	 *
+	 * @param searchString the word
+	 * @param maxDistance the max number of edits
+	 * @param ignoreCase true to ignore the case
+	 * @throws IllegalArgumentException if the word is shorter than {@link Constants#MIN_SEARCH_WORD_LENGTH},
+	 * longer than {@link #MAX_WORD_LENGTH} or the distance is not lower than its length
+	 */
+	public FuzzySearch(String searchString, int maxDistance, boolean ignoreCase) {
+		if(searchString.length() < Constants.MIN_SEARCH_WORD_LENGTH) {
+			throw new IllegalArgumentException(
+					"Minimal word length / Longitud minima de palabra : " + Constants.MIN_SEARCH_WORD_LENGTH);
+		}
+		if(searchString.length() > MAX_WORD_LENGTH) {
+			throw new IllegalArgumentException("Maximal word length / Longitud maxima de palabra : " + MAX_WORD_LENGTH);
+		}
+		if(maxDistance < 0 || maxDistance >= searchString.length()) {
+			throw new IllegalArgumentException("Distance must be lower than the word length: " + maxDistance);
+		}
+		this.maxDistance = maxDistance;
+		this.ignoreCase = ignoreCase;
+		word = searchString.toCharArray();
+		for(int i = 0; i < word.length; i++) {
+			word[i] = normalize(word[i]);
+			if(word[i] == NO_CHAR) {
+				continue;
+			}
+			if(word[i] < lowPositions.length) {
+				lowPositions[word[i]] |= 1L << i;
+			}
+			else {
+				highPositions.merge(word[i], 1L << i, (a, b) -> a | b);
+			}
+		}
+	}
+
+	/**
+	 * Finds the matches of the word in the data decoded with the table.
+	 *
+	 * @param data the data
+	 * @param hexTable the table
+	 * @param maxResults the max number of matches returned
+	 * @return the best matches, ordered by distance and offset
+	 */
+	public List<Match> find(byte[] data, HexTable hexTable, int maxResults) {
+		return find(DecodedText.decode(data, hexTable, 0, data.length), maxResults);
+	}
+
+	/**
+	 * Finds the matches of the word in the decoded text.
+	 *
+	 * @param text the decoded text
+	 * @param maxResults the max number of matches returned
+	 * @return the best matches, ordered by distance and offset
+	 */
+	public List<Match> find(DecodedText text, int maxResults) {
+		SearchedText searched = searched(text);
+		char[] chars = searched.chars();
+		int window = word.length + maxDistance;
+		// Distance of every end within the max distance, ordered by end
+		List<long[]> ends = ScanUtils.scan(chars.length, 0, Comparator.comparingLong(e -> e[0]),
+				(from, to, end, results) -> scanEnds(chars, Math.max(from - window, 0), from, to, results));
+		List<Match> res = new ArrayList<>();
+		int i = 0;
+		while(i < ends.size()) {
+			long[] best = ends.get(i);
+			int j = i + 1;
+			while(j < ends.size() && ends.get(j)[0] == ends.get(j - 1)[0] + 1) {
+				if(ends.get(j)[1] < best[1]) {
+					best = ends.get(j);
+				}
+				j++;
+			}
+			res.add(toMatch(text, searched, (int) best[0], (int) best[1]));
+			i = j;
+		}
+		res.sort(RANK);
+		return res.size() > maxResults ? new ArrayList<>(res.subList(0, maxResults)) : res;
+	}
+
+	/**
+	 * Chars of the decoded text to search, a {@link #NO_CHAR} for every token that is not table text.
+	 */
+	private static SearchedText searched(DecodedText text) {
+		char[] chars = new char[text.length()];
+		int[] textIndexes = new int[text.length()];
+		int length = 0;
+		int i = 0;
+		while(i < text.length()) {
+			int next = text.tokenEnd(i + 1);
+			if(text.isCode(i)) {
+				chars[length] = NO_CHAR;
+				textIndexes[length++] = i;
+			}
+			else {
+				for(int k = i; k < next; k++) {
+					chars[length] = text.charAt(k);
+					textIndexes[length++] = k;
+				}
+			}
+			i = next;
+		}
+		return new SearchedText(Arrays.copyOf(chars, length), Arrays.copyOf(textIndexes, length));
+	}
+
+	/**
+	 * Myers' search from start, reports the ends between from and to (exclusive) within the max distance
+	 * as {end, distance}.
+	 */
+	private void scanEnds(char[] text, int start, int from, int to, Consumer<long[]> results) {
+		long high = 1L << word.length - 1;
+		long pv = -1L;
+		long mv = 0;
+		int score = word.length;
+		for(int j = start; j < to; j++) {
+			long eq = positions(text[j]);
+			long xv = eq | mv;
+			long xh = ((eq & pv) + pv ^ pv) | eq;
+			long ph = mv | ~(xh | pv);
+			long mh = pv & xh;
+			if((ph & high) != 0) {
+				score++;
+			}
+			else if((mh & high) != 0) {
+				score--;
+			}
+			// The match can start anywhere, row 0 of the matrix stays 0
+			ph <<= 1;
+			mh <<= 1;
+			pv = mh | ~(xv | ph);
+			mv = ph & xv;
+			if(score <= maxDistance && j >= from) {
+				results.accept(new long[]{j, score});
+			}
+		}
+	}
+
+	/**
+	 * Positions of the char in the word.
+	 */
+	private long positions(char textChar) {
+		char c = normalize(textChar);
+		if(c < lowPositions.length) {
+			return lowPositions[c];
+		}
+		Long res = highPositions.get(c);
+		return res == null ? 0 : res;
+	}
+
+	/**
+	 * Builds the match that ends at the char, its start is the one with the lowest distance.
+	 */
+	private Match toMatch(DecodedText text, SearchedText searched, int end, int distance) {
+		char[] chars = searched.chars();
+		int window = Math.min(word.length + maxDistance, end + 1);
+		// Alignment of the reversed word against the text backwards from the end, the text start is free
+		int[] previous = new int[window + 1];
+		int[] current = new int[window + 1];
+		for(int t = 0; t <= window; t++) {
+			previous[t] = t;
+		}
+		for(int p = 1; p <= word.length; p++) {
+			current[0] = p;
+			char c = word[word.length - p];
+			for(int t = 1; t <= window; t++) {
+				char textChar = chars[end - t + 1];
+				int cost = textChar != NO_CHAR && normalize(textChar) == c ? 0 : 1;
+				current[t] = Math.min(previous[t - 1] + cost, Math.min(previous[t], current[t - 1]) + 1);
+			}
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		int bestLength = 1;
+		for(int t = 1; t <= window; t++) {
+			if(previous[t] < previous[bestLength]) {
+				bestLength = t;
+			}
+		}
+		int startChar = searched.textIndexes()[end - bestLength + 1];
+		// The last token is taken whole
+		int endChar = text.tokenEnd(searched.textIndexes()[end] + 1);
+		int offset = text.offset(startChar);
+		return new Match(offset, text.offset(endChar) - offset, Math.min(distance, previous[bestLength]),
+				text.subSequence(startChar, endChar).toString());
+	}
+
+	/**
+	 * Uppercases the char if the case is ignored.
+	 */
+	private char normalize(char c) {
+		return ignoreCase ? Character.toUpperCase(c) : c;
+	}
+
+}
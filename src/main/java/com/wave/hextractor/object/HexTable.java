@@ -8,13 +8,27 @@ import com.wave.hextractor.util.Constants;
 import com.wave.hextractor.util.FileUtils;
 import com.wave.hextractor.util.Utils;
 
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
 
 /**
  * Class for the table operations.
+ * <p>
+ * Tables can switch to other tables with the table switch codes, the bytes after a switch code
+ * are decoded with the target table until one of its own switch codes is found. The tables and
+ * their switch codes form a state machine, every decoded match gives the table for the next one.
  * @author slcantero
  */
 public class HexTable implements Serializable {
@@ -59,26 +73,117 @@ public class HexTable implements Serializable {
 	/** The reversed map for any-length mappings (value -> bytes). */
 	private Map<String, byte[]> reversedMulti = new HashMap<>();
 
+	/** The reversed map for control codes (template -> opcode bytes). */
+	private Map<String, byte[]> reversedControl = new HashMap<>();
+
+	/** Table active after every table switch code, indexed by value id, null for the other values. */
+	private HexTable[] switchTargets = new HexTable[0];
+
 	/** Trie structure to support multi-byte keys with longest-match decoding. */
-	private final TrieNode trieRoot = new TrieNode();
+	private final ByteTrie trie;
+
+	/** Reverse trie used by the encoder, built on first use. */
+	private transient volatile ValueTrie valueTrie;
+
+	/** Changes of the mappings, so the text decoded with the table can be checked. */
+	private transient int modifications;
+
+	/** Control code templates in the order the encoder matches them, built on first use. */
+	private transient volatile String[] controlTemplates;
+
+	/** Order of the control code templates, the most literal chars first, then the most parameters. */
+	private static final Comparator<String> CONTROL_ORDER = Comparator.comparingInt(HexTable::templateLiterals)
+			.thenComparingInt(HexTable::controlCodeParams).reversed().thenComparing(Comparator.naturalOrder());
+
+	/** Chars with special meaning for the encoder, multi-char values containing them are only encoded as {code}. */
+	private static final String ENCODER_CONTROL_CHARS = new String(new char[]{Constants.COMMENT_LINE, Constants.MAX_BYTES,
+			Constants.HEX_CHAR, Constants.STR_NUM_CHARS, Constants.CODEWORD_START, Constants.NEWLINE});
+
+	/** Returned by matchAt when no mapping starts at the position. */
+	public static final long NO_MATCH = ByteTrie.NO_MATCH;
+
+	/** Value id of the unknown bytes decoded by decodeRange. */
+	public static final int UNKNOWN_VALUE_ID = ByteTrie.NO_VALUE;
 
 	/** The searchPercentCompleted. */
-	private float searchPercent = 0;
+	private volatile float searchPercent = 0;
+
+	/** Hex value of every byte, "00" to "FF". */
+	private static final String[] HEX_BYTES = new String[256];
+
+	/** Hex value of every byte as unknown char, "~00~" to "~FF~". */
+	private static final String[] HEX_UNKNOWN_BYTES = new String[256];
+	static {
+		for(int i = 0; i < 256; i++) {
+			HEX_BYTES[i] = String.format(Constants.HEX_16_FORMAT, i);
+			HEX_UNKNOWN_BYTES[i] = Constants.HEX_CHAR + HEX_BYTES[i] + Constants.HEX_CHAR;
+		}
+	}
+
+	/** Lookup flag for the expand option. */
+	private static final int LOOKUP_EXPAND = 2;
+
+	/** Lookup flag for the decodeUnknown option. */
+	private static final int LOOKUP_DECODE_UNKNOWN = 1;
+
+	/** Single byte renderings for every expand / decodeUnknown combination, indexed by unsigned byte. */
+	private final String[][] byteLookup = new String[4][256];
+
+	/** Single char rendering of every byte for the viewer (not expanded, unknown as dot). */
+	private final char[] charLookup = new char[256];
+
+	{
+		resetByteLookup();
+	}
 
 	/**
 	 * Transforms the byte into a String.
 	 */
 	public String toString(byte aByte, boolean expand, boolean decodeUnknown) {
-		String res = table.get(aByte);
-		if(res == null || (res.length() > 1 && !expand)) {
-			if(decodeUnknown) {
-				res = Constants.HEX_CHAR + Utils.intToHexString(aByte, 2) + Constants.HEX_CHAR;
-			}
-			else {
-				res = Constants.HEX_VIEWER_UNKNOWN_CHAR;
+		return byteLookup[(expand ? LOOKUP_EXPAND : 0) | (decodeUnknown ? LOOKUP_DECODE_UNKNOWN : 0)][aByte & Constants.MASK_8BIT];
+	}
+
+	/**
+	 * Transforms the byte into a single display char, as toString(aByte, false)
+	 * but with a space for empty values.
+	 *
+	 * @param aByte the a byte
+	 * @return the char
+	 */
+	public char toChar(byte aByte) {
+		return charLookup[aByte & Constants.MASK_8BIT];
+	}
+
+	/**
+	 * Sets every byte of the lookup tables as unknown.
+	 */
+	private void resetByteLookup() {
+		for(int i = 0; i < 256; i++) {
+			updateByteLookup(i, null);
+		}
+	}
+
+	/**
+	 * Updates the lookup tables for the byte.
+	 *
+	 * @param index the unsigned byte
+	 * @param value the table value, null if unknown
+	 */
+	private void updateByteLookup(int index, String value) {
+		for(int lookup = 0; lookup < byteLookup.length; lookup++) {
+			String res = value;
+			if(res == null || (res.length() > 1 && (lookup & LOOKUP_EXPAND) == 0)) {
+				if((lookup & LOOKUP_DECODE_UNKNOWN) != 0) {
+					res = HEX_UNKNOWN_BYTES[index];
+				}
+				else {
+					res = Constants.HEX_VIEWER_UNKNOWN_CHAR;
+				}
 			}
+			byteLookup[lookup][index] = res;
 		}
-		return res;
+		String display = byteLookup[0][index];
+		charLookup[index] = display.isEmpty() ? ' ' : display.charAt(0);
 	}
 
 	/**
@@ -98,19 +203,27 @@ public class HexTable implements Serializable {
 	 */
 	public String toSelectionString() {
 		StringBuilder res = new StringBuilder();
-		if(reversedSingle.containsKey(TABLE_KEY_A)) {
-			res.append(TABLE_KEY_A).append(Constants.OFFSET_LENGTH_SEPARATOR).append(Constants.SPACE_STR);
-			res.append(Utils.intToHexString(reversedSingle.get(TABLE_KEY_A), Constants.HEXSIZE_8BIT_VALUE)).append(Constants.SPACE_STR);
+		appendSelectionEntry(res, TABLE_KEY_A);
+		appendSelectionEntry(res, TABLE_KEY_LOWA);
+		appendSelectionEntry(res, TABLE_KEY_ZERO);
+		return res.toString();
+	}
+
+	/**
+	 * Appends the char and its hex value, of one byte or several, if the table has it.
+	 */
+	private void appendSelectionEntry(StringBuilder res, String key) {
+		String hex = null;
+		if(reversedSingle.containsKey(key)) {
+			hex = Utils.intToHexString(reversedSingle.get(key), Constants.HEXSIZE_8BIT_VALUE);
 		}
-		if(reversedSingle.containsKey(TABLE_KEY_LOWA)) {
-			res.append(TABLE_KEY_LOWA).append(Constants.OFFSET_LENGTH_SEPARATOR).append(Constants.SPACE_STR);
-			res.append(Utils.intToHexString(reversedSingle.get(TABLE_KEY_LOWA), Constants.HEXSIZE_8BIT_VALUE)).append(Constants.SPACE_STR);
+		else if(reversedMulti.containsKey(key)) {
+			hex = Utils.bytesToHex(reversedMulti.get(key)).toUpperCase();
 		}
-		if(reversedSingle.containsKey(TABLE_KEY_ZERO)) {
-			res.append(TABLE_KEY_ZERO).append(Constants.OFFSET_LENGTH_SEPARATOR).append(Constants.SPACE_STR);
-			res.append(Utils.intToHexString(reversedSingle.get(TABLE_KEY_ZERO), Constants.HEXSIZE_8BIT_VALUE)).append(Constants.SPACE_STR);
+		if(hex != null) {
+			res.append(key).append(Constants.OFFSET_LENGTH_SEPARATOR).append(Constants.SPACE_STR);
+			res.append(hex).append(Constants.SPACE_STR);
 		}
-		return res.toString();
 	}
 
 	/**
@@ -119,56 +232,259 @@ public class HexTable implements Serializable {
 	 * @param tableLines the table lines
 	 */
 	private void loadLines(List<String> tableLines) {
+		resetTable();
+		int[] counts = new int[3];
+		for(String s : tableLines) {
+			loadLine(s, counts);
+		}
+		logLoaded(counts[0], counts[1], counts[2]);
+	}
+
+	/**
+	 * Loads the table lines from the reader, one line at a time.
+	 *
+	 * @param reader the reader
+	 * @throws IOException the exception
+	 */
+	void loadLines(BufferedReader reader) throws IOException {
+		resetTable();
+		int[] counts = new int[3];
+		String s;
+		while((s = reader.readLine()) != null) {
+			loadLine(stripBom(s), counts);
+		}
+		logLoaded(counts[0], counts[1], counts[2]);
+	}
+
+	/**
+	 * Removes every mapping.
+	 */
+	private void resetTable() {
 		table = new HashMap<>();
 		reversedSingle = new HashMap<>();
 		reversedMulti = new HashMap<>();
-		trieRoot.clear();
-		int singleByteCount = 0;
-		int multiByteCount = 0;
-		for(String s : tableLines) {
-			if(s.length() >= 4 && s.contains(Constants.TABLE_SEPARATOR)) {
-				boolean isEquals = s.contains(Constants.TABLE_SEPARATOR + Constants.TABLE_SEPARATOR);
-				String[] items = s.split(Constants.TABLE_SEPARATOR, 2);
-				String tablechar;
-				if(isEquals) {
-					tablechar = s.substring(s.indexOf(Constants.TABLE_SEPARATOR) + 1);
-				}
-				else {
-					tablechar = items[1];
-				}
-				// Remove CR/LF
-				tablechar = tablechar.replaceAll(Constants.S_NEWLINE, Constants.EMPTY).replaceAll(Constants.S_CRETURN, Constants.EMPTY);
-				if(Constants.RESERVED_CHARS.contains(tablechar)) {
-					Utils.log("WARNING - Table char \"" + tablechar + "\" will not be used because it is reserved.");
-				}
-				else {
-					String keyHex = items[0].toUpperCase().trim().replace(" ", Constants.EMPTY);
-					// Basic validation
-					if(keyHex.length() >= 2 && keyHex.length() % 2 == 0) {
-						try {
-							byte[] keyBytes = Utils.hexStringToByteArray(keyHex);
-							if(keyBytes.length == 1) {
-								addToTable(Byte.valueOf(keyBytes[0]), tablechar);
-								singleByteCount++;
-							}
-							else {
-								addToTable(keyBytes, tablechar);
-								multiByteCount++;
-							}
-						} catch (Exception e) {
-							Utils.log("ERROR - Invalid hex key in line: '" + s + "'");
-						}
-					}
-					else {
-						Utils.log("ERROR - Invalid key length in line: '" + s + "'");
-					}
-				}
+		reversedControl = new HashMap<>();
+		switchTargets = new HexTable[0];
+		trie.clear();
+		valueTrie = null;
+		controlTemplates = null;
+		modifications++;
+		resetByteLookup();
+	}
+
+	/**
+	 * Logs the loaded entries.
+	 *
+	 * @param singleByteCount the single byte entries
+	 * @param multiByteCount the multi byte entries
+	 * @param controlCodeCount the control codes
+	 */
+	private static void logLoaded(int singleByteCount, int multiByteCount, int controlCodeCount) {
+		if(controlCodeCount > 0) {
+			Utils.log("Tabla cargada: " + singleByteCount + " de un byte, " + multiByteCount + " entradas multibyte, "
+					+ controlCodeCount + " códigos de control ");
+		}
+		else {
+			Utils.log("Tabla cargada: " + singleByteCount + " de un byte, " + multiByteCount + " entradas multibyte ");
+		}
+	}
+
+	/**
+	 * Parses a table line "HEX=value" and adds it to the table, the value is everything after
+	 * the first separator without CR/LF and the spaces of the key are ignored.
+	 * Control codes use "$HEX=template", with %1 to %9 for the parameter bytes that follow the key,
+	 * and table switch codes "!HEX=table file", with the file relative to the table file.
+	 *
+	 * @param s the line
+	 * @param counts single byte entries, multi byte entries and control codes (table switches included) loaded, updated
+	 */
+	private void loadLine(String s, int[] counts) {
+		int sep = s.indexOf(Constants.TABLE_SEPARATOR_CHAR);
+		if(s.length() < 4 || sep < 0) {
+			Utils.log("ERROR - Line not valid: '" + s + "'");
+			return;
+		}
+		String tablechar = stripNewlines(s.substring(sep + 1));
+		boolean controlCode = s.charAt(0) == Constants.CONTROL_CODE_CHAR;
+		boolean tableSwitch = s.charAt(0) == Constants.TABLE_SWITCH_CHAR;
+		if(controlCode) {
+			if(tablechar.isEmpty() || tablechar.indexOf(Constants.CODEWORD_START) >= 0 || tablechar.indexOf(Constants.CODEWORD_END) >= 0) {
+				Utils.log("ERROR - Invalid control code template in line: '" + s + "'");
+				return;
 			}
-			else {
-				Utils.log("ERROR - Line not valid: '" + s + "'");
+		}
+		else if(tableSwitch) {
+			tablechar = tablechar.trim();
+			if(tablechar.isEmpty()) {
+				Utils.log("ERROR - Missing switch table file in line: '" + s + "'");
+				return;
+			}
+		}
+		else if(Constants.RESERVED_CHARS.contains(tablechar)) {
+			Utils.log("WARNING - Table char \"" + tablechar + "\" will not be used because it is reserved.");
+			return;
+		}
+		// Count the key digits and check them in the same pass
+		int keyStart = controlCode || tableSwitch ? 1 : 0;
+		int digits = 0;
+		boolean validHex = true;
+		for(int i = keyStart; i < sep; i++) {
+			char c = s.charAt(i);
+			if(c > Constants.SPACE_CHAR) {
+				validHex &= Character.digit(c, 16) >= 0;
+				digits++;
+			}
+		}
+		if(digits < 2 || digits % 2 != 0) {
+			Utils.log("ERROR - Invalid key length in line: '" + s + "'");
+			return;
+		}
+		if(!validHex) {
+			Utils.log("ERROR - Invalid hex key in line: '" + s + "'");
+			return;
+		}
+		byte[] keyBytes = new byte[digits / 2];
+		int digit = 0;
+		for(int i = keyStart; i < sep; i++) {
+			char c = s.charAt(i);
+			if(c > Constants.SPACE_CHAR) {
+				int value = Character.digit(c, 16);
+				keyBytes[digit >> 1] = (byte) ((digit & 1) == 0 ? value << 4 : keyBytes[digit >> 1] | value);
+				digit++;
 			}
 		}
-		Utils.log("Tabla cargada: " + singleByteCount + " de un byte, " + multiByteCount + " entradas multibyte ");
+		if(controlCode) {
+			addControlCode(keyBytes, tablechar);
+			counts[2]++;
+		}
+		else if(tableSwitch) {
+			addTableSwitch(keyBytes, tablechar, null);
+			counts[2]++;
+		}
+		else if(keyBytes.length == 1) {
+			addToTable(Byte.valueOf(keyBytes[0]), tablechar);
+			counts[0]++;
+		}
+		else {
+			addToTable(keyBytes, tablechar);
+			counts[1]++;
+		}
+	}
+
+	/**
+	 * Removes the CR/LF chars of the value.
+	 *
+	 * @param value the value
+	 * @return the value without CR/LF
+	 */
+	private static String stripNewlines(String value) {
+		if(value.indexOf(Constants.NEWLINE) < 0 && value.indexOf(Constants.CRETURN) < 0) {
+			return value;
+		}
+		StringBuilder sb = new StringBuilder(value.length());
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if(c != Constants.NEWLINE && c != Constants.CRETURN) {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Removes the byte order marks of the line.
+	 *
+	 * @param line the line
+	 * @return the line without BOM
+	 */
+	private static String stripBom(String line) {
+		if(line.indexOf(Constants.UTF_8_BOM_BE.charAt(0)) < 0 && line.indexOf(Constants.UTF_8_BOM_LE.charAt(0)) < 0) {
+			return line;
+		}
+		return line.replace(Constants.UTF_8_BOM_BE, Constants.EMPTY).replace(Constants.UTF_8_BOM_LE, Constants.EMPTY);
+	}
+
+	/**
+	 * Writes the loaded mappings for the table cache.
+	 *
+	 * @param out the output
+	 * @throws IOException the exception
+	 */
+	void writeCache(DataOutputStream out) throws IOException {
+		trie.write(out);
+		out.writeInt(table.size());
+		for(Map.Entry<Byte, String> entry : table.entrySet()) {
+			out.writeByte(entry.getKey());
+			ByteTrie.writeString(out, entry.getValue());
+		}
+		out.writeInt(reversedSingle.size());
+		for(Map.Entry<String, Byte> entry : reversedSingle.entrySet()) {
+			ByteTrie.writeString(out, entry.getKey());
+			out.writeByte(entry.getValue());
+		}
+		writeKeyMap(out, reversedMulti);
+		writeKeyMap(out, reversedControl);
+	}
+
+	/**
+	 * Writes a value to key map for the table cache.
+	 */
+	private static void writeKeyMap(DataOutputStream out, Map<String, byte[]> map) throws IOException {
+		out.writeInt(map.size());
+		for(Map.Entry<String, byte[]> entry : map.entrySet()) {
+			ByteTrie.writeString(out, entry.getKey());
+			out.writeInt(entry.getValue().length);
+			out.write(entry.getValue());
+		}
+	}
+
+	/**
+	 * Reads a value to key map stored by writeKeyMap.
+	 */
+	private static Map<String, byte[]> readKeyMap(ByteBuffer in) {
+		int size = in.getInt();
+		Map<String, byte[]> map = new HashMap<>(size * 2);
+		for(int i = 0; i < size; i++) {
+			String value = ByteTrie.readString(in);
+			byte[] key = new byte[in.getInt()];
+			in.get(key);
+			map.put(value, key);
+		}
+		return map;
+	}
+
+	/**
+	 * Replaces the mappings with the ones stored by writeCache.
+	 *
+	 * @param in the input
+	 */
+	void readCache(ByteBuffer in) {
+		resetTable();
+		trie.read(in);
+		int size = in.getInt();
+		table = new HashMap<>(size * 2);
+		for(int i = 0; i < size; i++) {
+			byte key = in.get();
+			String value = ByteTrie.readString(in);
+			table.put(key, value);
+			updateByteLookup(key & Constants.MASK_8BIT, value);
+		}
+		size = in.getInt();
+		reversedSingle = new HashMap<>(size * 2);
+		for(int i = 0; i < size; i++) {
+			String value = ByteTrie.readString(in);
+			reversedSingle.put(value, in.get());
+		}
+		reversedMulti = readKeyMap(in);
+		reversedControl = readKeyMap(in);
+		int tableSwitches = 0;
+		for(int valueId = 0; valueId < trie.valueCount(); valueId++) {
+			if(trie.params(valueId) == ByteTrie.TABLE_SWITCH) {
+				tableSwitches++;
+			}
+		}
+		int controlCodes = reversedControl.size() + tableSwitches;
+		logLoaded(table.size(), trie.valueCount() - table.size() - controlCodes, controlCodes);
 	}
 
 	/**
@@ -177,6 +493,7 @@ public class HexTable implements Serializable {
 	 * @param displacement the displacement
 	 */
 	public HexTable(int displacement) {
+		this();
 		List<String> tableLines = new ArrayList<>();
 		StringBuilder sb = new StringBuilder();
 		byte currChar = (byte) (Constants.MIN_PRINTABLE_CHAR - displacement & Constants.MASK_8BIT);
@@ -194,12 +511,40 @@ public class HexTable implements Serializable {
 		loadLines(tableLines);
 	}
 
+	/**
+	 * Based in a displacement, reconstruct full table from $20 to $7E (included) with 16 bit values.
+	 *
+	 * @param displacement the displacement, char minus value
+	 * @param byteOrder the byte order of the values
+	 */
+	public HexTable(int displacement, ByteOrder byteOrder) {
+		this();
+		List<String> tableLines = new ArrayList<>();
+		StringBuilder sb = new StringBuilder();
+		for(int i = Constants.MIN_PRINTABLE_CHAR; i <= Constants.MAX_PRINTABLE_CHAR; i++) {
+			if(!Constants.RESERVED_CHARS.contains(String.valueOf((char) i))) {
+				int value = i - displacement & Constants.MASK_16BIT;
+				int high = value >> 8;
+				int low = value & Constants.MASK_8BIT;
+				sb.setLength(0);
+				sb.append(String.format(Constants.HEX_16_FORMAT, byteOrder == ByteOrder.BIG_ENDIAN ? high : low));
+				sb.append(String.format(Constants.HEX_16_FORMAT, byteOrder == ByteOrder.BIG_ENDIAN ? low : high));
+				sb.append(Constants.TABLE_SEPARATOR);
+				sb.append((char) i);
+				sb.append(Constants.S_NEWLINE);
+				tableLines.add(sb.toString());
+			}
+		}
+		loadLines(tableLines);
+	}
+
 	/**
 	 * Loads the table lines.
 	 *
 	 * @param tableLines the table lines
 	 */
 	public HexTable(List<String> tableLines) {
+		this();
 		loadLines(tableLines);
 	}
 
@@ -207,6 +552,95 @@ public class HexTable implements Serializable {
 	 * Empty table.
 	 */
 	public HexTable() {
+		trie = new ByteTrie();
+	}
+
+	/**
+	 * Copy of the table, the frozen copies use unmodifiable maps and trie.
+	 * The tables of the switch codes are copied too.
+	 *
+	 * @param other the table to copy
+	 * @param frozen true if the copy must reject modifications
+	 */
+	HexTable(HexTable other, boolean frozen) {
+		this(other, frozen, new IdentityHashMap<>());
+	}
+
+	/**
+	 * Copy of the table and the tables of its switch codes, every table is copied once.
+	 *
+	 * @param other the table to copy
+	 * @param frozen true if the copy must reject modifications
+	 * @param copies the tables already copied, updated
+	 */
+	private HexTable(HexTable other, boolean frozen, Map<HexTable, HexTable> copies) {
+		copies.put(other, this);
+		trie = new ByteTrie(other.trie, frozen);
+		Map<String, byte[]> multi = new HashMap<>();
+		other.reversedMulti.forEach((value, key) -> multi.put(value, key.clone()));
+		Map<String, byte[]> control = new HashMap<>();
+		other.reversedControl.forEach((value, key) -> control.put(value, key.clone()));
+		if(frozen) {
+			table = Map.copyOf(other.table);
+			reversedSingle = Map.copyOf(other.reversedSingle);
+			reversedMulti = Map.copyOf(multi);
+			reversedControl = Map.copyOf(control);
+		}
+		else {
+			table = new HashMap<>(other.table);
+			reversedSingle = new HashMap<>(other.reversedSingle);
+			reversedMulti = multi;
+			reversedControl = control;
+		}
+		for(int lookup = 0; lookup < byteLookup.length; lookup++) {
+			System.arraycopy(other.byteLookup[lookup], 0, byteLookup[lookup], 0, byteLookup[lookup].length);
+		}
+		System.arraycopy(other.charLookup, 0, charLookup, 0, charLookup.length);
+		if(frozen) {
+			valueTrie = new ValueTrie(reversedMulti, ENCODER_CONTROL_CHARS);
+		}
+		switchTargets = new HexTable[other.switchTargets.length];
+		for(int valueId = 0; valueId < switchTargets.length; valueId++) {
+			HexTable target = other.switchTargets[valueId];
+			if(target != null) {
+				HexTable copy = copies.get(target);
+				switchTargets[valueId] = copy != null ? copy : new HexTable(target, frozen, copies);
+			}
+		}
+	}
+
+	/**
+	 * Gets the reverse trie of the table values, building it if the table changed.
+	 *
+	 * @return the value trie
+	 */
+	private ValueTrie valueTrie() {
+		ValueTrie res = valueTrie;
+		if(res == null) {
+			res = new ValueTrie(reversedMulti, ENCODER_CONTROL_CHARS);
+			valueTrie = res;
+		}
+		return res;
+	}
+
+	/**
+	 * Grows the buffer to hold at least the size.
+	 *
+	 * @param buffer the buffer
+	 * @param size the needed size
+	 * @return the buffer or a bigger copy
+	 */
+	private static byte[] ensureCapacity(byte[] buffer, int size) {
+		return size <= buffer.length ? buffer : Arrays.copyOf(buffer, Math.max(size, buffer.length * 2));
+	}
+
+	/**
+	 * Compiles the current mappings into an immutable table that can be shared between threads.
+	 *
+	 * @return the compiled table
+	 */
+	public CompiledHexTable compile() {
+		return CompiledHexTable.of(this);
 	}
 
 	/**
@@ -215,26 +649,64 @@ public class HexTable implements Serializable {
 	 * @param tableFile the table file
 	 * @throws FileNotFoundException the exception
 	 */
+	// The tables of the switch codes loaded with this one keep it to switch back, the class is not extended
+	@SuppressWarnings("this-escape")
 	public HexTable(String tableFile) throws IOException {
-		loadLines(Arrays.asList(FileUtils.getAsciiFile(tableFile).replace(Constants.UTF_8_BOM_BE, Constants.EMPTY).replace(Constants.UTF_8_BOM_LE, Constants.EMPTY).split(String.valueOf(Constants.NEWLINE))));
+		this();
+		Path path = FileUtils.resolveFile(tableFile).toAbsolutePath().normalize();
+		Map<Path, HexTable> loaded = new HashMap<>();
+		loaded.put(path, this);
+		load(path, loaded);
+	}
+
+	/**
+	 * Loads the table file and the tables of its switch codes, every file is loaded once
+	 * so the tables can switch back and forth.
+	 *
+	 * @param tableFile the table file
+	 * @param loaded the tables already loaded by file, updated
+	 * @throws IOException the exception
+	 */
+	private void load(Path tableFile, Map<Path, HexTable> loaded) throws IOException {
+		HexTableCache.load(tableFile, this);
+		for(int valueId = 0; valueId < trie.valueCount(); valueId++) {
+			if(trie.params(valueId) != ByteTrie.TABLE_SWITCH) {
+				continue;
+			}
+			Path targetFile = tableFile.resolveSibling(trie.value(valueId)).normalize();
+			HexTable target = loaded.get(targetFile);
+			if(target == null) {
+				if(!Files.isRegularFile(targetFile)) {
+					Utils.log("ERROR - Switch table not found: " + targetFile);
+					continue;
+				}
+				target = new HexTable();
+				loaded.put(targetFile, target);
+				target.load(targetFile, loaded);
+			}
+			setSwitchTarget(valueId, target);
+		}
 	}
 
 	/** Merge mappings from another HexTable into this one. Existing entries may be overwritten by addToTable semantics. */
 	public void mergeFrom(HexTable other) {
 		if (other == null) return;
-		// Merge single-byte table entries
-		for (Map.Entry<Byte, String> e : other.table.entrySet()) {
-			this.addToTable(e.getKey(), e.getValue());
-		}
-		// Merge multi-byte entries by traversing other's trie
-		List<Map.Entry<byte[], String>> multiList = new ArrayList<>();
-		other.collectTrieMappings(other.trieRoot, new ArrayList<>(), multiList);
-		for (Map.Entry<byte[], String> me : multiList) {
-			byte[] key = me.getKey();
-			if (key != null && key.length > 0) {
-				this.addToTable(Arrays.copyOf(key, key.length), me.getValue());
+		// Merge every mapping by traversing other's trie, single-byte keys also update the table
+		other.trie.forEach((key, value, params) -> {
+			if (params == ByteTrie.TABLE_SWITCH) {
+				HexTable target = other.nextTable(other.trie.longestMatch(key, 0, key.length));
+				this.addTableSwitch(key, value, target == other ? this : target);
 			}
-		}
+			else if (params != ByteTrie.NO_PARAMS) {
+				this.addControlCode(key, value);
+			}
+			else if (key.length == 1) {
+				this.addToTable(Byte.valueOf(key[0]), value);
+			}
+			else {
+				this.addToTable(key, value);
+			}
+		});
 	}
 
 	/**
@@ -242,15 +714,15 @@ public class HexTable implements Serializable {
 	 */
 	public String toAscii(byte[] hexString, boolean expand, boolean decodeUnknown) {
 		StringBuilder sb = new StringBuilder();
+		HexTable state = this;
 		int i = 0;
 		while(i < hexString.length) {
-			Match m = findLongestMatch(hexString, i);
-			if(m == null) {
+			long m = state.match(hexString, i, hexString.length);
+			int mLength = ByteTrie.length(m);
+			if(mLength == 0) {
 				// Unknown byte
 				if(decodeUnknown) {
-					sb.append(Constants.HEX_CHAR)
-					  .append(String.format(Constants.HEX_16_FORMAT, hexString[i]))
-					  .append(Constants.HEX_CHAR);
+					sb.append(HEX_UNKNOWN_BYTES[hexString[i] & Constants.MASK_8BIT]);
 				}
 				else {
 					sb.append(Constants.HEX_VIEWER_UNKNOWN_CHAR);
@@ -258,28 +730,75 @@ public class HexTable implements Serializable {
 				i++;
 			}
 			else {
-				String val = m.value;
-				if((val.length() > 1 || m.length > 1) && !expand) {
+				String val = state.trie.value(ByteTrie.valueId(m));
+				if((val.length() > 1 || mLength > 1) && !expand) {
 					// Respect expand flag: show raw bytes if requested or unknown dot otherwise
 					if(decodeUnknown) {
-						for(int j = 0; j < m.length; j++) {
-							sb.append(Constants.HEX_CHAR)
-							  .append(String.format(Constants.HEX_16_FORMAT, hexString[i + j]))
-							  .append(Constants.HEX_CHAR);
+						for(int j = 0; j < mLength; j++) {
+							sb.append(HEX_UNKNOWN_BYTES[hexString[i + j] & Constants.MASK_8BIT]);
 						}
 					} else {
 						sb.append(Constants.HEX_VIEWER_UNKNOWN_CHAR);
 					}
 				}
 				else {
-					sb.append(val);
+					state.appendValue(sb, m, hexString, i);
 				}
-				i += m.length;
+				i += mLength;
+				state = state.nextTable(m);
 			}
 		}
 		return sb.toString();
 	}
 
+	/**
+	 * Receives the tokens translated by {@link #toAscii(byte[], int, int, StringBuilder, TokenConsumer)}.
+	 */
+	@FunctionalInterface
+	public interface TokenConsumer {
+
+		/**
+		 * Receives a token after its text is appended.
+		 *
+		 * @param length the byte length of the token
+		 * @param code true for the unknown bytes, table switches and control codes, that are not table text
+		 */
+		void accept(int length, boolean code);
+	}
+
+	/**
+	 * Translates the bytes from start to end (exclusive) as {@link #toAscii(byte[], boolean, boolean)} does
+	 * expanded and with the unknown bytes in hex, following the table switches.
+	 * Reports the byte length and kind of every token after its text is appended.
+	 *
+	 * @param data the data
+	 * @param start the start position
+	 * @param end the end position (exclusive)
+	 * @param sb receives the text
+	 * @param tokens receives every token
+	 */
+	public void toAscii(byte[] data, int start, int end, StringBuilder sb, TokenConsumer tokens) {
+		int limit = Math.min(end, data.length);
+		HexTable state = this;
+		int i = start;
+		while(i < limit) {
+			long m = state.match(data, i, limit);
+			int mLength = ByteTrie.length(m);
+			boolean code = mLength == 0;
+			if(code) {
+				sb.append(HEX_UNKNOWN_BYTES[data[i] & Constants.MASK_8BIT]);
+				mLength = 1;
+			}
+			else {
+				code = state.trie.params(ByteTrie.valueId(m)) != ByteTrie.NO_PARAMS;
+				state.appendValue(sb, m, data, i);
+				state = state.nextTable(m);
+			}
+			tokens.accept(mLength, code);
+			i += mLength;
+		}
+	}
+
 	/**
 	 * Translates a hex string to ascii.
 	 */
@@ -288,29 +807,397 @@ public class HexTable implements Serializable {
 	}
 
 	/**
-	 * Simple string to hex using table.
+	 * Simple string to hex using table.
+	 */
+	public byte[] toHex(String aString) {
+		byte[] res = new byte[aString.length()];
+		byte hexSpace;
+		if(reversedSingle.containsKey(Constants.SPACE_STR)) {
+			hexSpace = reversedSingle.get(Constants.SPACE_STR);
+		}
+		else {
+			hexSpace = 0;
+		}
+		int i = 0;
+		for(char c : aString.toCharArray()) {
+			Byte b = reversedSingle.get(String.valueOf(c));
+			if(b == null) {
+				res[i] = hexSpace;
+			}
+			else {
+				res[i] = b;
+			}
+			i++;
+		}
+		return res;
+	}
+
+	/**
+	 * Adds a control code, the key is followed by the parameter bytes of the template,
+	 * rendered as {template} with %1 to %9 replaced by the hex value of every parameter.
+	 *
+	 * @param key the opcode bytes
+	 * @param template the template
+	 */
+	public final void addControlCode(byte[] key, String template) {
+		removeMappings(key);
+		setSwitchTarget(trie.put(key, template, controlCodeParams(template)), null);
+		reversedControl.put(template, Arrays.copyOf(key, key.length));
+		controlTemplates = null;
+	}
+
+	/**
+	 * Adds a table switch code, the bytes after it are decoded with the target table.
+	 * The switch code itself is rendered as its hex bytes so it is inserted back as is.
+	 *
+	 * @param key the switch code bytes
+	 * @param tableName the target table name, the table file relative to this one for the table files
+	 * @param target the target table, null to keep decoding with this table
+	 */
+	public final void addTableSwitch(byte[] key, String tableName, HexTable target) {
+		removeMappings(key);
+		setSwitchTarget(trie.put(key, tableName, ByteTrie.TABLE_SWITCH), target);
+	}
+
+	/**
+	 * Removes the values and control codes encoded with the key, before it is replaced by a control code
+	 * or a table switch, so the encoder does not write the key for them anymore.
+	 *
+	 * @param key the key bytes
+	 */
+	private void removeMappings(byte[] key) {
+		if(key.length == 1 && table.remove(key[0]) != null) {
+			updateByteLookup(key[0] & Constants.MASK_8BIT, null);
+			reversedSingle.values().removeIf(valueKey -> valueKey == key[0]);
+		}
+		if(reversedMulti.values().removeIf(valueKey -> Arrays.equals(valueKey, key))) {
+			valueTrie = null;
+		}
+		if(reversedControl.values().removeIf(controlKey -> Arrays.equals(controlKey, key))) {
+			controlTemplates = null;
+		}
+	}
+
+	/**
+	 * Sets the table of a table switch value.
+	 *
+	 * @param valueId the value id
+	 * @param target the target table, null if the value does not switch tables
+	 */
+	private void setSwitchTarget(int valueId, HexTable target) {
+		// Every mapping added goes through here
+		modifications++;
+		if(valueId >= switchTargets.length) {
+			if(target == null) {
+				return;
+			}
+			switchTargets = Arrays.copyOf(switchTargets, Math.max(valueId + 1, switchTargets.length * 2));
+		}
+		switchTargets[valueId] = target;
+	}
+
+	/**
+	 * Table that decodes the bytes after a match returned by {@link #matchAt(byte[], int, int)},
+	 * the target table for the table switch codes and this table otherwise.
+	 *
+	 * @param match the packed match
+	 * @return the next table
+	 */
+	public HexTable nextTable(long match) {
+		if(ByteTrie.length(match) > 0) {
+			int valueId = ByteTrie.valueId(match);
+			if(valueId < switchTargets.length && switchTargets[valueId] != null) {
+				return switchTargets[valueId];
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Returns true if the match returned by {@link #matchAt(byte[], int, int)} is a table switch code.
+	 *
+	 * @param match the packed match
+	 * @return true, if it is a table switch code
+	 */
+	public boolean isTableSwitch(long match) {
+		return ByteTrie.length(match) > 0 && trie.params(ByteTrie.valueId(match)) == ByteTrie.TABLE_SWITCH;
+	}
+
+	/**
+	 * Parameter number of the placeholder at the position of the template.
+	 *
+	 * @param template the template
+	 * @param pos the position
+	 * @return the parameter number, 1 to 9, or 0 if there is no placeholder
+	 */
+	private static int placeholder(String template, int pos) {
+		if(template.charAt(pos) != Constants.CONTROL_CODE_PARAM || pos + 1 >= template.length()) {
+			return 0;
+		}
+		char c = template.charAt(pos + 1);
+		return c >= '1' && c <= '9' ? c - '0' : 0;
+	}
+
+	/**
+	 * Number of chars of the template that are not placeholders.
+	 *
+	 * @param template the template
+	 * @return the literal chars
+	 */
+	private static int templateLiterals(String template) {
+		int res = 0;
+		for(int i = 0; i < template.length(); i++) {
+			if(placeholder(template, i) > 0) {
+				i++;
+			}
+			else {
+				res++;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Number of parameter bytes of the template, the highest placeholder.
+	 *
+	 * @param template the template
+	 * @return the parameter bytes
+	 */
+	private static int controlCodeParams(String template) {
+		int params = 0;
+		for(int i = 0; i < template.length(); i++) {
+			params = Math.max(params, placeholder(template, i));
+		}
+		return params;
+	}
+
+	/**
+	 * Longest match at pos, including the parameter bytes of the control codes.
+	 *
+	 * @param data the data
+	 * @param pos the position
+	 * @param end the end position (exclusive)
+	 * @return the packed match or NO_MATCH
+	 */
+	private long match(byte[] data, int pos, int end) {
+		return withParams(trie.longestMatch(data, pos, end), pos, end);
+	}
+
+	/**
+	 * Adds the parameter bytes of a control code to the match, a control code
+	 * without all its parameters before the end is not a match.
+	 *
+	 * @param m the packed match
+	 * @param pos the position
+	 * @param end the end position (exclusive)
+	 * @return the packed match or NO_MATCH
+	 */
+	private long withParams(long m, int pos, int end) {
+		if(m != ByteTrie.NO_MATCH) {
+			int valueId = ByteTrie.valueId(m);
+			int params = trie.params(valueId);
+			if(params > 0) {
+				int length = ByteTrie.length(m) + params;
+				return pos + length <= end ? ByteTrie.pack(length, valueId) : ByteTrie.NO_MATCH;
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Appends the text of a match, control codes are rendered with their parameters
+	 * and table switch codes as hex bytes.
+	 *
+	 * @param sb the output
+	 * @param m the packed match
+	 * @param data the data
+	 * @param pos the match position
+	 */
+	private void appendValue(StringBuilder sb, long m, byte[] data, int pos) {
+		int valueId = ByteTrie.valueId(m);
+		String value = trie.value(valueId);
+		int params = trie.params(valueId);
+		if(params == ByteTrie.NO_PARAMS) {
+			sb.append(value);
+			return;
+		}
+		if(params == ByteTrie.TABLE_SWITCH) {
+			for(int i = pos; i < pos + ByteTrie.length(m); i++) {
+				sb.append(HEX_UNKNOWN_BYTES[data[i] & Constants.MASK_8BIT]);
+			}
+			return;
+		}
+		int paramStart = pos + ByteTrie.length(m) - params;
+		sb.append(Constants.CODEWORD_START);
+		for(int i = 0; i < value.length(); i++) {
+			int param = placeholder(value, i);
+			if(param > 0) {
+				sb.append(HEX_BYTES[data[paramStart + param - 1] & Constants.MASK_8BIT]);
+				i++;
+			}
+			else {
+				sb.append(value.charAt(i));
+			}
+		}
+		sb.append(Constants.CODEWORD_END);
+	}
+
+	/**
+	 * Match of the search all scan at pos, only single byte mappings and control codes if not multibyte.
+	 *
+	 * @param data the data
+	 * @param pos the position
+	 * @param multibyte true to match multi-byte mappings
+	 * @return the packed match or NO_MATCH
+	 */
+	long scanMatch(byte[] data, int pos, boolean multibyte) {
+		if(multibyte) {
+			return match(data, pos, data.length);
+		}
+		int valueId = trie.singleByteValueId(data[pos]);
+		return valueId == ByteTrie.NO_VALUE ? ByteTrie.NO_MATCH : withParams(ByteTrie.pack(1, valueId), pos, data.length);
+	}
+
+	/**
+	 * Returns true if a match of {@link #scanMatch(byte[], int, boolean)} can start with the byte.
+	 *
+	 * @param aByte the byte
+	 * @param multibyte true to match multi-byte mappings
+	 * @return true, if a mapping can start with it
+	 */
+	boolean startsMapping(byte aByte, boolean multibyte) {
+		return multibyte ? trie.startsKey(aByte) : trie.singleByteValueId(aByte) != ByteTrie.NO_VALUE;
+	}
+
+	/**
+	 * Appends the text of a match, control codes are rendered with their parameters and table switch
+	 * codes have no text.
+	 *
+	 * @param sb the output
+	 * @param m the packed match
+	 * @param data the data
+	 * @param pos the match position
+	 */
+	void appendText(StringBuilder sb, long m, byte[] data, int pos) {
+		if(trie.params(ByteTrie.valueId(m)) != ByteTrie.TABLE_SWITCH) {
+			appendValue(sb, m, data, pos);
+		}
+	}
+
+	/**
+	 * Longest match {@link #scanMatch(byte[], int, boolean)} can return, parameter bytes included.
+	 *
+	 * @param multibyte true to match multi-byte mappings
+	 * @return the length
+	 */
+	int maxScanLength(boolean multibyte) {
+		int params = 0;
+		for(int valueId = 0; valueId < trie.valueCount(); valueId++) {
+			params = Math.max(params, trie.params(valueId));
+		}
+		return (multibyte ? Math.max(trie.maxKeyLength(), 1) : 1) + params;
+	}
+
+	/**
+	 * Version of the mappings of the table and the tables of its switch codes, it changes whenever
+	 * any of them changes, so text decoded with an older version is stale.
+	 *
+	 * @return the version
+	 */
+	long version() {
+		long res = 0;
+		for(HexTable linked : linkedTables()) {
+			res += linked.modifications;
+		}
+		return res;
+	}
+
+	/**
+	 * This table and every table reachable through the table switch codes.
+	 *
+	 * @return the tables, this one first
+	 */
+	List<HexTable> linkedTables() {
+		List<HexTable> res = new ArrayList<>();
+		Set<HexTable> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		seen.add(this);
+		res.add(this);
+		for(int i = 0; i < res.size(); i++) {
+			for(HexTable target : res.get(i).switchTargets) {
+				if(target != null && seen.add(target)) {
+					res.add(target);
+				}
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Encodes a code word with the control codes, the inverse of appendValue. When several templates
+	 * match, the most specific one wins, see {@link #CONTROL_ORDER}.
+	 *
+	 * @param code the code word without braces
+	 * @return the opcode and parameter bytes, null if no control code matches
+	 */
+	private byte[] encodeControlCode(String code) {
+		for(String template : controlTemplates()) {
+			byte[] res = matchTemplate(template, reversedControl.get(template), code);
+			if(res != null) {
+				return res;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the control code templates in matching order, sorting them if the table changed.
+	 *
+	 * @return the templates
+	 */
+	private String[] controlTemplates() {
+		String[] res = controlTemplates;
+		if(res == null) {
+			res = reversedControl.keySet().toArray(new String[0]);
+			Arrays.sort(res, CONTROL_ORDER);
+			controlTemplates = res;
+		}
+		return res;
+	}
+
+	/**
+	 * Matches the code word with the template.
+	 *
+	 * @param template the template
+	 * @param key the opcode bytes
+	 * @param code the code word
+	 * @return the opcode and parameter bytes, null if it does not match
 	 */
-	public byte[] toHex(String aString) {
-		byte[] res = new byte[aString.length()];
-		byte hexSpace;
-		if(reversedSingle.containsKey(Constants.SPACE_STR)) {
-			hexSpace = reversedSingle.get(Constants.SPACE_STR);
-		}
-		else {
-			hexSpace = 0;
-		}
-		int i = 0;
-		for(char c : aString.toCharArray()) {
-			Byte b = reversedSingle.get(String.valueOf(c));
-			if(b == null) {
-				res[i] = hexSpace;
+	private static byte[] matchTemplate(String template, byte[] key, String code) {
+		byte[] res = Arrays.copyOf(key, key.length + controlCodeParams(template));
+		int j = 0;
+		for(int i = 0; i < template.length(); i++) {
+			int param = placeholder(template, i);
+			if(param > 0) {
+				if(j + 2 > code.length()) {
+					return null;
+				}
+				int high = Character.digit(code.charAt(j), 16);
+				int low = Character.digit(code.charAt(j + 1), 16);
+				if(high < 0 || low < 0) {
+					return null;
+				}
+				res[key.length + param - 1] = (byte) (high << 4 | low);
+				j += 2;
+				i++;
+			}
+			else if(j < code.length() && code.charAt(j) == template.charAt(i)) {
+				j++;
 			}
 			else {
-				res[i] = b;
+				return null;
 			}
-			i++;
 		}
-		return res;
+		return j == code.length() ? res : null;
 	}
 
 	/**
@@ -319,8 +1206,9 @@ public class HexTable implements Serializable {
 	 * @param entry the entry
 	 * @param theChar the the char
 	 */
-	public void addToTable(Byte entry, String theChar) {
+	public final void addToTable(Byte entry, String theChar) {
 		table.put(entry, theChar);
+		updateByteLookup(entry & Constants.MASK_8BIT, theChar);
 		// For single-byte: allow overwriting (allows last definition to win for accents)
 		// E.g., 41=A then 41=Á, the Á will override
 		reversedSingle.put(theChar, entry);
@@ -331,14 +1219,13 @@ public class HexTable implements Serializable {
 	/**
 	 * Adds a multi-byte mapping into the trie and reversed maps.
 	 */
-	public void addToTable(byte[] key, String theChar) {
-		// Build trie path
-		TrieNode node = trieRoot;
-		for(byte b : key) {
-			node = node.children.computeIfAbsent(b, k -> new TrieNode());
+	public final void addToTable(byte[] key, String theChar) {
+		setSwitchTarget(trie.put(key, theChar), null);
+		valueTrie = null;
+		if(!reversedControl.isEmpty() && reversedControl.values().removeIf(controlKey -> Arrays.equals(controlKey, key))) {
+			controlTemplates = null;
 		}
-		node.value = theChar;
-		
+
 		// Update reversedMulti based on key length
 		if(key.length > 1) {
 			// Multi-byte: prefer first definition (unless new one is shorter)
@@ -366,6 +1253,29 @@ public class HexTable implements Serializable {
 	 */
 	public String toAscii(byte[] hexString, OffsetEntry entry, boolean showExtracting, boolean splitLines) {
 		StringBuilder sb = new StringBuilder();
+		try {
+			toAscii(hexString, entry, showExtracting, splitLines, sb);
+		}
+		catch(IOException e) {
+			// StringBuilder does not throw
+			throw new UncheckedIOException(e);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Translates the entry to ascii, writing every line to the output as soon as it is decoded
+	 * so the memory used does not depend on the size of the script.
+	 *
+	 * @param hexString the hex string
+	 * @param entry the entry
+	 * @param showExtracting shows current extraction
+	 * @param splitLines splits the lines at the end chars
+	 * @param out the output
+	 * @throws IOException the exception
+	 */
+	public void toAscii(byte[] hexString, OffsetEntry entry, boolean showExtracting, boolean splitLines, Appendable out)
+			throws IOException {
 		int bytesreaded = 0;
 		int bytesreadedStart = 0;
 		StringBuilder line = new StringBuilder();
@@ -374,79 +1284,108 @@ public class HexTable implements Serializable {
 				Utils.fillLeft(Integer.toHexString(entry.getStart()), Constants.HEX_ADDR_SIZE).toUpperCase(),
 				Utils.fillLeft(Integer.toHexString(entry.getEnd()), Constants.HEX_ADDR_SIZE).toUpperCase()));
 		}
-		sb.append(entry.toString()).append(Constants.NEWLINE);
+		out.append(entry.toString()).append(Constants.NEWLINE);
+		HexTable state = this;
 		int i = entry.getStart();
 		while(i <= entry.getEnd()) {
-			Match m = findLongestMatch(hexString, i);
-			if(m != null) {
+			long m = state.match(hexString, i, hexString.length);
+			int mLength = ByteTrie.length(m);
+			if(mLength > 0) {
 				// Always append the value as-is from the table
-				// Braces are only used if explicitly defined by the user in the table
-				line.append(m.value);
-				i += m.length;
-				bytesreaded += m.length;
+				// Braces are only used if explicitly defined by the user in the table or for control codes
+				state.appendValue(line, m, hexString, i);
+				state = state.nextTable(m);
+				i += mLength;
+				bytesreaded += mLength;
 				if(splitLines) {
 					// If any of the consumed bytes is an end char, close the line
 					// Only treat the token as an end marker when the match itself is single-byte.
 					// Multi-byte characters that *end* with the same byte as the terminator should
 					// not prematurely close the line (e.g. codes like A7 8D where 8D is also the
 					// line terminator).
-					String lastByteHex = String.format(Constants.HEX_16_FORMAT, hexString[i - 1]);
-					boolean endCharMatched = m.length == 1 && entry.getEndChars().contains(lastByteHex);
+					String lastByteHex = HEX_BYTES[hexString[i - 1] & Constants.MASK_8BIT];
+					boolean endCharMatched = mLength == 1 && entry.getEndChars().contains(lastByteHex);
 					if(endCharMatched || i - 1 == entry.getEnd()) {
-						String originalLine = line.toString();
-						String numChars = Utils.fillLeft(String.valueOf(originalLine.length()), Constants.LEN_NUM_CHARS);
-						String numCharsHex = Utils.fillLeft(String.valueOf(bytesreaded - bytesreadedStart), Constants.LEN_NUM_CHARS);
-						sb.append(Constants.COMMENT_LINE).append(Utils.fillLeft(Integer.toHexString(entry.getStart() + bytesreadedStart), Constants.HEX_ADDR_SIZE).toUpperCase());
-						sb.append(Constants.ORG_STR_OPEN).append(originalLine).append(Constants.ORG_STR_CLOSE);
-						sb.append(Constants.STR_NUM_CHARS).append(numChars).append(Constants.STR_NUM_CHARS).append(numCharsHex);
-						sb.append(Constants.NEWLINE);
-						sb.append(line).append(Constants.STR_NUM_CHARS).append(numCharsHex);
-						sb.append(Constants.NEWLINE);
+						appendLine(out, line, entry.getStart() + bytesreadedStart, bytesreaded - bytesreadedStart);
 						line.setLength(0);
 						bytesreadedStart = bytesreaded;
 					}
 				}
 			} else {
 				// Unknown byte at i
-				String hexStr = String.format(Constants.HEX_16_FORMAT, hexString[i]);
+				String hexStr = HEX_BYTES[hexString[i] & Constants.MASK_8BIT];
 				line.append(Constants.HEX_CHAR).append(hexStr).append(Constants.HEX_CHAR);
 				i++;
 				bytesreaded++;
-				if(splitLines) {
-					// Close line if end char or end of entry
-					if(entry.getEndChars().contains(hexStr) || i - 1 == entry.getEnd()) {
-						String originalLine = line.toString();
-						String numChars = Utils.fillLeft(String.valueOf(originalLine.length()), Constants.LEN_NUM_CHARS);
-						String numCharsHex = Utils.fillLeft(String.valueOf(bytesreaded - bytesreadedStart), Constants.LEN_NUM_CHARS);
-						sb.append(Constants.COMMENT_LINE).append(Utils.fillLeft(Integer.toHexString(entry.getStart() + bytesreadedStart), Constants.HEX_ADDR_SIZE).toUpperCase());
-						sb.append(Constants.ORG_STR_OPEN).append(originalLine).append(Constants.ORG_STR_CLOSE);
-						sb.append(Constants.STR_NUM_CHARS).append(numChars).append(Constants.STR_NUM_CHARS).append(numCharsHex);
-						sb.append(Constants.NEWLINE);
-						sb.append(line).append(Constants.STR_NUM_CHARS).append(numCharsHex);
-						sb.append(Constants.NEWLINE);
-						line.setLength(0);
-						bytesreadedStart = bytesreaded;
-					}
+				// Close line if end char or end of entry
+				if(splitLines && (entry.getEndChars().contains(hexStr) || i - 1 == entry.getEnd())) {
+					appendLine(out, line, entry.getStart() + bytesreadedStart, bytesreaded - bytesreadedStart);
+					line.setLength(0);
+					bytesreadedStart = bytesreaded;
 				}
 			}
 		}
 		// Close any remaining incomplete line at the end of the range
 		if(line.length() > 0) {
-			String originalLine = line.toString();
-			String numChars = Utils.fillLeft(String.valueOf(originalLine.length()), Constants.LEN_NUM_CHARS);
-			String numCharsHex = Utils.fillLeft(String.valueOf(bytesreaded - bytesreadedStart), Constants.LEN_NUM_CHARS);
-			sb.append(Constants.COMMENT_LINE).append(Utils.fillLeft(Integer.toHexString(entry.getStart() + bytesreadedStart), Constants.HEX_ADDR_SIZE).toUpperCase());
-			sb.append(Constants.ORG_STR_OPEN).append(originalLine).append(Constants.ORG_STR_CLOSE);
-			sb.append(Constants.STR_NUM_CHARS).append(numChars).append(Constants.STR_NUM_CHARS).append(numCharsHex);
-			sb.append(Constants.NEWLINE);
-			sb.append(line).append(Constants.STR_NUM_CHARS).append(numCharsHex);
-			sb.append(Constants.NEWLINE);
-		}
-		sb.append(Constants.MAX_BYTES).append(bytesreaded).append(Constants.NEWLINE);
+			appendLine(out, line, entry.getStart() + bytesreadedStart, bytesreaded - bytesreadedStart);
+		}
+		out.append(Constants.MAX_BYTES).append(String.valueOf(bytesreaded)).append(Constants.NEWLINE);
 		if(showExtracting) {
 			Utils.log("TOTAL BYTES TO ASCII: " + bytesreaded);
 		}
-		return sb.toString();
+	}
+
+	/**
+	 * Appends the original line comment and the line to translate:
+	 * <pre>;OFFSET{line}#chars#bytes
+	 * line#bytes</pre>
+	 *
+	 * @param out the output
+	 * @param line the line
+	 * @param offset the line offset
+	 * @param numBytes the line bytes
+	 * @throws IOException the exception
+	 */
+	private static void appendLine(Appendable out, CharSequence line, int offset, int numBytes) throws IOException {
+		out.append(Constants.COMMENT_LINE);
+		for(int shift = (Constants.HEX_ADDR_SIZE - 1) * 4; shift >= 0; shift -= 4) {
+			out.append(Constants.HEXCHARS.charAt((offset >>> shift) & 0xF));
+		}
+		out.append(Constants.ORG_STR_OPEN).append(line).append(Constants.ORG_STR_CLOSE);
+		out.append(Constants.STR_NUM_CHARS);
+		appendPadded(out, line.length());
+		out.append(Constants.STR_NUM_CHARS);
+		appendPadded(out, numBytes);
+		out.append(Constants.NEWLINE);
+		out.append(line).append(Constants.STR_NUM_CHARS);
+		appendPadded(out, numBytes);
+		out.append(Constants.NEWLINE);
+	}
+
+	/**
+	 * Appends the number padded with zeros to {@link Constants#LEN_NUM_CHARS} digits.
+	 *
+	 * @param out the output
+	 * @param value the value
+	 * @throws IOException the exception
+	 */
+	private static void appendPadded(Appendable out, int value) throws IOException {
+		for(int limit = 10, digits = 1; digits < Constants.LEN_NUM_CHARS; limit *= 10, digits++) {
+			if(value < limit) {
+				out.append(Constants.PAD_CHAR_STRING);
+			}
+		}
+		out.append(String.valueOf(value));
+	}
+
+	/**
+	 * How the plain text of the scripts is encoded.
+	 */
+	public enum EncodingMode {
+		/** Longest table value first. */
+		GREEDY,
+		/** Shortest byte sequence, using dynamic programming over every plain text run. */
+		OPTIMAL
 	}
 
 	/**
@@ -457,30 +1396,54 @@ public class HexTable implements Serializable {
 	 * @return the byte[]
 	 */
 	public byte[] toHex(String string, OffsetEntry entry) {
+		return toHex(string, entry, EncodingMode.GREEDY, saved -> {});
+	}
+
+	/**
+	 * Transforms the ascii string to hex byte[] with the encoding mode. The text is encoded with the table
+	 * active where it is, the hex bytes of the table switch codes change it as they do when decoding.
+	 *
+	 * @param string the string
+	 * @param entry the entry
+	 * @param mode the encoding mode
+	 * @param savedBytes receives the bytes saved by the entry compared to the greedy encoding
+	 * @return the byte[]
+	 */
+	public byte[] toHex(String string, OffsetEntry entry, EncodingMode mode, IntConsumer savedBytes) {
 		int offset = 0;
 		int offsetStart = 0;
-		byte[] hex = new byte[string.length() * 16];
+		byte[] hex = new byte[string.length() + 16];
+		// Table active at the end of the bytes, the hex bytes from rawStart on can switch it
+		HexTable state = this;
+		int rawStart = -1;
+		ValueTrie values = valueTrie();
+		long[] plan = null;
+		int planStart = 0;
+		int planEnd = 0;
+		int saved = 0;
 		int maxsize = 0;
 		boolean end = false;
 		char next;
 		boolean incomment = false;
-		byte hexSpace;
-		if(reversedSingle.containsKey(Constants.SPACE_STR)) {
-			hexSpace = reversedSingle.get(Constants.SPACE_STR);
-		}
-		else {
-			hexSpace = 0;
-		}
+		byte hexSpace = hexSpace();
 		int stringStart = 0;
 		int i = 0;
 		while(i <string.length() && !end) {
-			next = string.substring(i, i+1).charAt(0);
+			next = string.charAt(i);
 			if(incomment) {
 				if(Constants.NEWLINE == next) {
 					incomment = false;
 				}
 			}
 			else {
+				if(rawStart >= 0 && next != Constants.HEX_CHAR && next != Constants.NEWLINE) {
+					// The text after the hex bytes is encoded with the table they switch to
+					state = state.tableAfter(hex, Math.min(rawStart, offset), offset);
+					rawStart = -1;
+					values = state.valueTrie();
+					hexSpace = state.hexSpace();
+					planEnd = 0;
+				}
 				switch(next) {
 				case Constants.COMMENT_LINE:
 					incomment = true;
@@ -490,9 +1453,12 @@ public class HexTable implements Serializable {
 					end = true;
 					break;
 				case Constants.HEX_CHAR:
+					if(rawStart < 0) {
+						rawStart = offset;
+					}
 					String hexchar = string.substring(i+1, i+3);
 					i+=3;
-					if(Constants.HEX_CHAR!= string.substring(i, i+1).charAt(0)) {
+					if(Constants.HEX_CHAR!= string.charAt(i)) {
 						int j = i - 100;
 						if(j < 0) {
 							j = 0;
@@ -500,14 +1466,14 @@ public class HexTable implements Serializable {
 						Utils.log("ERROR! HEX CHAR NOT CLOSED AT: " + i + " -> " + string.substring(j, i+1));
 					}
 					if(entry.getEndChars().contains(hexchar)) {
-						char nextchar = string.substring(i+1, i+2).charAt(0);
+						char nextchar = string.charAt(i+1);
 						while(Constants.ADDR_CHAR == nextchar) {
 							i++;
 							String hexTo = string.substring(i+1, i+1+8);
 							Utils.log(Utils.getMessage("consoleInsertingOffset", 
 									Utils.fillLeft(Integer.toHexString(offsetStart), Constants.HEX_ADDR_SIZE) + " TO " + hexTo));
 							i+=8;
-							nextchar = string.substring(i+1, i+2).charAt(0);
+							nextchar = string.charAt(i+1);
 						}
 						//Check size
 						if(Constants.STR_NUM_CHARS == nextchar) {
@@ -517,7 +1483,7 @@ public class HexTable implements Serializable {
 							char testEnd = nextchar;
 							while(testEnd != Constants.NEWLINE) {
 								j++;
-								testEnd = string.substring(j, j+1).charAt(0);
+								testEnd = string.charAt(j);
 							}
 							int length = Integer.parseInt(string.substring(i+1, j));
 							if(offset - offsetStart > length-1) {
@@ -539,6 +1505,7 @@ public class HexTable implements Serializable {
 											Utils.fillLeft(String.valueOf(offset - offsetStart+1), 4) + " - " +
 											Utils.fillLeft(String.valueOf(length), 4) + ")!!!");
 									Utils.log(string.substring(stringStart, i));
+									hex = ensureCapacity(hex, offsetStart + length);
 									while(offset - offsetStart < length-1) {
 										hex[offset++] = hexSpace;
 									}
@@ -549,9 +1516,11 @@ public class HexTable implements Serializable {
 							offsetStart = offset;
 							stringStart = i + 2;
 						}
+						hex = ensureCapacity(hex, offset + 1);
 						hex[offset++] = Utils.hexStringCharToByte(hexchar);
 					}
 					else {
+						hex = ensureCapacity(hex, offset + 1);
 						hex[offset++] = Utils.hexStringCharToByte(hexchar);
 					}
 					break;
@@ -561,7 +1530,7 @@ public class HexTable implements Serializable {
 					char testEnd = next;
 					while(testEnd != Constants.NEWLINE) {
 						j++;
-						testEnd = string.substring(j, j+1).charAt(0);
+						testEnd = string.charAt(j);
 					}
 					int length = Integer.parseInt(string.substring(i+1, j));
 					if(offset - offsetStart - 1 > length-1) {
@@ -578,6 +1547,7 @@ public class HexTable implements Serializable {
 					}
 					else {
 						if(offset - offsetStart - 1 < length-1) {
+							hex = ensureCapacity(hex, offsetStart + length + 1);
 							while(offset - offsetStart - 1 < length-1) {
 								hex[offset++] = hexSpace;
 							}
@@ -596,48 +1566,68 @@ public class HexTable implements Serializable {
 					boolean foundCodeWord = false;
 					while(!foundCodeWord && k < string.length() - 2) {
 						k++;
-						foundCodeWord = Constants.S_CODEWORD_END.equals(string.substring(k, k+1));
+						foundCodeWord = Constants.CODEWORD_END == string.charAt(k);
 					}
 					byte[] codeWordValue = new byte[]{hexSpace};
 					if(foundCodeWord) {
 						//Get Key/value - try with braces first (for special functions like {space}, {line})
 						//then without braces (for normal multibyte values like {ab})
+						//and finally as a control code with parameters (like {wait 3C})
 						String keyWithBraces = string.substring(i, k + 1);
 						String keyWithoutBraces = string.substring(i + 1, k);
-						if(reversedMulti.containsKey(keyWithBraces)) {
-							codeWordValue = reversedMulti.get(keyWithBraces);
+						byte[] controlCode;
+						if(state.reversedMulti.containsKey(keyWithBraces)) {
+							codeWordValue = state.reversedMulti.get(keyWithBraces);
+						}
+						else if(state.reversedMulti.containsKey(keyWithoutBraces)) {
+							codeWordValue = state.reversedMulti.get(keyWithoutBraces);
 						}
-						else if(reversedMulti.containsKey(keyWithoutBraces)) {
-							codeWordValue = reversedMulti.get(keyWithoutBraces);
+						else if((controlCode = state.encodeControlCode(keyWithoutBraces)) != null) {
+							codeWordValue = controlCode;
 						}
 						else {
 							Utils.log("WARNING!!! CODE WORD NOT IN TABLE: '" + keyWithBraces + "'");
 						}
 						i = k;
 					}
+					hex = ensureCapacity(hex, offset + codeWordValue.length);
 					for(byte bval : codeWordValue) {
 						hex[offset++] = bval;
 					}
 					break;
 				default:
-					String nextString = String.valueOf(next);
-					
-					// First try to find in reversedMulti (prioritizes longer mappings like 2-byte codes)
-					if(reversedMulti.containsKey(nextString)) {
-						byte[] multiValue = reversedMulti.get(nextString);
-						for(byte bval : multiValue) {
-							hex[offset++] = bval;
+					long m;
+					if(mode == EncodingMode.OPTIMAL) {
+						if(i >= planEnd) {
+							planStart = i;
+							planEnd = plainTextEnd(string, i);
+							if(plan == null || plan.length < planEnd - planStart) {
+								plan = new long[Math.max(planEnd - planStart, string.length() / 4)];
+							}
+							saved += optimalParse(values, string, planStart, planEnd, plan);
 						}
+						m = plan[i - planStart];
+					}
+					else {
+						// Greedy longest match over the table values
+						m = values.longestMatch(string, i, string.length());
 					}
-					// If not found, try reversedSingle
-					else if(reversedSingle.containsKey(nextString)) {
-						hex[offset++] = reversedSingle.get(nextString);
+					int mLength = ByteTrie.length(m);
+					if(mLength > 0) {
+						byte[] key = values.key(ByteTrie.valueId(m));
+						hex = ensureCapacity(hex, offset + key.length);
+						System.arraycopy(key, 0, hex, offset, key.length);
+						offset += key.length;
+						i += mLength - 1;
 					}
-					// Not found in either map
+					// Not found in the table
 					else {
-						Utils.log("WARNING!!! CHARACTER NOT IN TABLE: '" + nextString + "'");
+						int codePoint = string.codePointAt(i);
+						Utils.log("WARNING!!! CHARACTER NOT IN TABLE: '" + new String(Character.toChars(codePoint)) + "'");
 						Utils.log(string.substring(stringStart, i));
+						hex = ensureCapacity(hex, offset + 1);
 						hex[offset++] = hexSpace;
+						i += Character.charCount(codePoint) - 1;
 					}
 					break;
 				}
@@ -652,6 +1642,7 @@ public class HexTable implements Serializable {
 			// (final traces removed)
 			Utils.log(Utils.getMessage("consoleWarningStringTooSmall"));
 			Utils.log(string.substring(stringStart));
+			hex = ensureCapacity(hex, maxsize);
 			for(int j = offset; j < maxsize; j++) {
 				hex[j] = Constants.PAD_CHAR;
 			}
@@ -662,19 +1653,111 @@ public class HexTable implements Serializable {
 		if(Utils.isDebug()) {
 			Utils.logNoNL("BYTES TO HEX: " + Utils.fillLeft(String.valueOf(offset), 5) + " / " +  Utils.fillLeft(String.valueOf(maxsize), 5));
 		}
+		savedBytes.accept(saved);
 		return Arrays.copyOf(hex, maxsize);
 	}
 
 	/**
-	 * The Enum ENTRIES_STATUS.
+	 * Byte of the space, used for the chars not in the table and the padding, 0 if there is none.
+	 *
+	 * @return the byte
+	 */
+	private byte hexSpace() {
+		Byte res = reversedSingle.get(Constants.SPACE_STR);
+		return res != null ? res : 0;
+	}
+
+	/**
+	 * Table active after decoding the bytes with this table, following their table switch codes
+	 * as the extraction does.
+	 *
+	 * @param data the data
+	 * @param from the start position
+	 * @param to the end position (exclusive)
+	 * @return the table
+	 */
+	private HexTable tableAfter(byte[] data, int from, int to) {
+		HexTable state = this;
+		int i = from;
+		while(i < to) {
+			long m = state.match(data, i, to);
+			if(ByteTrie.length(m) == 0) {
+				i++;
+			}
+			else {
+				state = state.nextTable(m);
+				i += ByteTrie.length(m);
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * End of the plain text that starts at pos, the first encoder control char or the end of the string.
+	 *
+	 * @param string the string
+	 * @param pos the start position
+	 * @return the end position (exclusive)
+	 */
+	private static int plainTextEnd(String string, int pos) {
+		int i = pos;
+		while(i < string.length() && ENCODER_CONTROL_CHARS.indexOf(string.charAt(i)) < 0) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Finds the table values that encode the text from start to end in the fewest bytes.
+	 * cost[j] is the minimum number of bytes for the text from j to end, computed backwards
+	 * from every value that matches at j. Chars without any value use one byte.
+	 *
+	 * @param values the value trie
+	 * @param text the text
+	 * @param start the start position
+	 * @param end the end position (exclusive)
+	 * @param plan receives the chosen match for every position, only the positions in the path are meaningful
+	 * @return the bytes saved compared to the greedy encoding
 	 */
-	enum ENTRIES_STATUS {
-		/** The searching start of string. */
-		SEARCHING_START_OF_STRING,
-		/** The searching end of string. */
-		SEARCHING_END_OF_STRING,
-		/** The skipping chars. */
-		SKIPPING_CHARS,
+	private static int optimalParse(ValueTrie values, String text, int start, int end, long[] plan) {
+		int length = end - start;
+		int[] cost = new int[length + 1];
+		long[] matches = new long[Math.max(1, values.maxLength())];
+		for(int j = length - 1; j >= 0; j--) {
+			int count = values.matches(text, start + j, end, matches);
+			if(count == 0) {
+				int charCount = Character.isHighSurrogate(text.charAt(start + j)) && j + 1 < length
+						&& Character.isLowSurrogate(text.charAt(start + j + 1)) ? 2 : 1;
+				cost[j] = 1 + cost[j + charCount];
+				plan[j] = ByteTrie.NO_MATCH;
+				continue;
+			}
+			int best = Integer.MAX_VALUE;
+			for(int k = 0; k < count; k++) {
+				int mLength = ByteTrie.length(matches[k]);
+				int candidate = values.key(ByteTrie.valueId(matches[k])).length + cost[j + mLength];
+				// On ties keep the longest value, the closest to the greedy encoding
+				if(candidate <= best) {
+					best = candidate;
+					plan[j] = matches[k];
+				}
+			}
+			cost[j] = best;
+		}
+		int greedy = 0;
+		int i = start;
+		while(i < end) {
+			long m = values.longestMatch(text, i, end);
+			if(ByteTrie.length(m) > 0) {
+				greedy += values.key(ByteTrie.valueId(m)).length;
+				i += ByteTrie.length(m);
+			}
+			else {
+				greedy++;
+				i += Character.charCount(text.codePointAt(i));
+			}
+		}
+		return greedy - cost[0];
 	}
 
 	/**
@@ -695,121 +1778,112 @@ public class HexTable implements Serializable {
 	    
 	    public String getAllEntries(byte[] secondFileBytes, int numMinChars, int numIgnoredChars,
 		    List<String> endCharsList, String dictFile, boolean useMultibyte) throws IOException {
-		searchPercent = 0;
-		// Remove carriage returns to standardize line endings (CRLF -> LF) - but only for multibyte
-		if(useMultibyte) {
-			byte[] cleanedBytes = new byte[secondFileBytes.length];
-			int cbIndex = 0;
-			for(byte b : secondFileBytes) {
-				if(b != 0x0D) { // ignore CR
-					cleanedBytes[cbIndex++] = b;
-				}
-			}
-			secondFileBytes = Arrays.copyOf(cleanedBytes, cbIndex);
-		}
-		List<OffsetEntry> offsetEntryList = new ArrayList<>();
-		HashSet<String> dict = new HashSet<>(Arrays.asList(FileUtils.getAsciiFile(dictFile).split(Constants.S_NEWLINE)));
-		int entryStart = 0;
-		boolean validString = false;
-		StringBuilder word = new StringBuilder();
-		StringBuilder sentence = new StringBuilder();
-		String dataChar;
-		List<String> skippedChars = new ArrayList<>();
-		ENTRIES_STATUS status = ENTRIES_STATUS.SEARCHING_START_OF_STRING;
-		long lastTime = System.currentTimeMillis();
-		for(int i = 0; i < secondFileBytes.length - numMinChars && !Thread.currentThread().isInterrupted(); i++) {
-			searchPercent = i * 100f / secondFileBytes.length;
-			if(System.currentTimeMillis() - lastTime > 1000) {
-				lastTime = System.currentTimeMillis();
-				Utils.log(searchPercent + "% completed.");
-			}
-			String dataCharHex = String.format(Constants.HEX_16_FORMAT, secondFileBytes[i]);
-			Match m = useMultibyte ? findLongestMatch(secondFileBytes, i) : null;
-			dataChar = m != null ? m.value : table.getOrDefault(secondFileBytes[i], null);
-			switch(status) {
-			case SEARCHING_START_OF_STRING:
-				if(dataChar != null) {
-					entryStart = i;
-					word.setLength(0);
-					sentence.setLength(0);
-					sentence.append(dataChar);
-					word.append(dataChar);
-					validString = false;
-					status = ENTRIES_STATUS.SEARCHING_END_OF_STRING;
-					if(m != null && m.length > 1) {
-						i += (m.length - 1);
-					}
-				}
-				break;
-			case SEARCHING_END_OF_STRING:
-				if(dataChar != null) {
-					sentence.append(dataChar);
-					word.append(dataChar);
-					if(m != null && m.length > 1) {
-						i += (m.length - 1);
-					}
-				}
-				else {
-					if(Utils.getCleanedString(word.toString()).length() > 1) {
-						if(!validString) {
-							validString = Utils.stringHasWords(dict, word.toString());
-						}
-						sentence.append(Constants.SPACE_STR);
-						word.append(Constants.SPACE_STR);
-						skippedChars.clear();
-						skippedChars.add(dataCharHex);
-						status = ENTRIES_STATUS.SKIPPING_CHARS;
-					}
-					else {
-						if(validString) {
-							offsetEntryList.add(new OffsetEntry(entryStart, i, endCharsList));
-						}
-						entryStart = 0;
-						status = ENTRIES_STATUS.SEARCHING_START_OF_STRING;
-					}
-				}
-				break;
-			case SKIPPING_CHARS:
-				if(dataChar != null) {
-					word.setLength(0);
-					sentence.append(dataChar);
-					word.append(dataChar);
-					status = ENTRIES_STATUS.SEARCHING_END_OF_STRING;
-					if(m != null && m.length > 1) {
-						i += (m.length - 1);
-					}
-				}
-				else {
-					skippedChars.add(dataCharHex);
-					boolean skippedAreEndings = endCharsList.stream().anyMatch(skippedChars::contains);
-					if(skippedChars.size() > numIgnoredChars) {
-						if(sentence.length() > numMinChars) {
-							if(Utils.stringHasWords(dict, word.toString()) || validString && skippedAreEndings) {
-								offsetEntryList.add(new OffsetEntry(entryStart, i, endCharsList));
-							}
-							else {
-								if(validString) {
-									offsetEntryList.add(new OffsetEntry(entryStart, i, endCharsList));
-								}
-							}
-						}
-						entryStart = 0;
-						status = ENTRIES_STATUS.SEARCHING_START_OF_STRING;
-					}
-				}
-				break;
-			default:
-				break;
-			}
-		}
-		if(entryStart > 0) {
-			offsetEntryList.add(new OffsetEntry(entryStart, secondFileBytes.length - 1, endCharsList));
-		}
-		word.setLength(0);
-		for(OffsetEntry oe : offsetEntryList) {
-			word.append(oe.toEntryString()).append(Constants.OFFSET_STR_SEPARATOR);
-		}
-		return word.toString();
+		return getAllEntries(secondFileBytes, numMinChars, numIgnoredChars, endCharsList, dictFile, useMultibyte,
+				percent -> searchPercent = (float) percent);
+	}
+
+	/**
+	 * Get all entries from the file, reporting the completion percent to the progress consumer
+	 * instead of the table, so several searches can share the table.
+	 *
+	 * @param secondFileBytes the second file bytes
+	 * @param numMinChars the num min chars
+	 * @param numIgnoredChars the num ignored chars
+	 * @param endCharsList the end chars list
+	 * @param dictFile the dict file
+	 * @param useMultibyte true to decode multi-byte mappings
+	 * @param progress receives the completion percent
+	 * @return the all entries
+	 * @throws IOException the exception
+	 */
+	public String getAllEntries(byte[] secondFileBytes, int numMinChars, int numIgnoredChars,
+			List<String> endCharsList, String dictFile, boolean useMultibyte, DoubleConsumer progress) throws IOException {
+		return getAllEntries(secondFileBytes, numMinChars, numIgnoredChars, endCharsList,
+				DictionaryIndex.load(FileUtils.resolveFile(dictFile)), useMultibyte, progress);
+	}
+
+	/**
+	 * Get all entries from the file with a dictionary index already loaded, the completion percent
+	 * goes to the table.
+	 *
+	 * @param secondFileBytes the second file bytes
+	 * @param numMinChars the num min chars
+	 * @param numIgnoredChars the num ignored chars
+	 * @param endCharsList the end chars list
+	 * @param dict the dictionary index
+	 * @param useMultibyte true to decode multi-byte mappings
+	 * @return the all entries
+	 */
+	public String getAllEntries(byte[] secondFileBytes, int numMinChars, int numIgnoredChars,
+			List<String> endCharsList, DictionaryIndex dict, boolean useMultibyte) {
+		return getAllEntries(secondFileBytes, numMinChars, numIgnoredChars, endCharsList, dict, useMultibyte,
+				percent -> searchPercent = (float) percent);
+	}
+
+	/**
+	 * Get all entries from the file with a dictionary index already loaded.
+	 *
+	 * @param secondFileBytes the second file bytes
+	 * @param numMinChars the num min chars
+	 * @param numIgnoredChars the num ignored chars
+	 * @param endCharsList the end chars list
+	 * @param dict the dictionary index
+	 * @param useMultibyte true to decode multi-byte mappings
+	 * @param progress receives the completion percent
+	 * @return the all entries
+	 */
+	public String getAllEntries(byte[] secondFileBytes, int numMinChars, int numIgnoredChars,
+			List<String> endCharsList, DictionaryIndex dict, boolean useMultibyte, DoubleConsumer progress) {
+		StringBuilder sb = new StringBuilder();
+		searchAllEntries(secondFileBytes, numMinChars, numIgnoredChars, endCharsList, dict, dict.model(), 0,
+				useMultibyte, progress, oe -> sb.append(oe.toEntryString()).append(Constants.OFFSET_STR_SEPARATOR));
+		return sb.toString();
+	}
+
+	/**
+	 * Searches all the entries of the file, every one with the confidence of the text model that it is text.
+	 *
+	 * @param fileBytes the file bytes
+	 * @param numMinChars the num min chars
+	 * @param numIgnoredChars the num ignored chars
+	 * @param endCharsList the end chars list
+	 * @param dict the dictionary index
+	 * @param model the text model, see {@link DictionaryIndex#model()}
+	 * @param minConfidence entries with less confidence are dropped, 0 keeps all
+	 * @param useMultibyte true to decode multi-byte mappings
+	 * @param progress receives the completion percent
+	 * @return the entries, ordered
+	 */
+	public List<OffsetEntry> searchAllEntries(byte[] fileBytes, int numMinChars, int numIgnoredChars,
+			List<String> endCharsList, DictionaryIndex dict, NgramModel model, float minConfidence,
+			boolean useMultibyte, DoubleConsumer progress) {
+		List<OffsetEntry> res = new ArrayList<>();
+		searchAllEntries(fileBytes, numMinChars, numIgnoredChars, endCharsList, dict, model, minConfidence,
+				useMultibyte, progress, res::add);
+		return res;
+	}
+
+	/**
+	 * Searches all the entries of the file, passing every entry on as soon as it ends and the entries
+	 * before it are known, instead of collecting them.
+	 *
+	 * @param fileBytes the file bytes
+	 * @param numMinChars the num min chars
+	 * @param numIgnoredChars the num ignored chars
+	 * @param endCharsList the end chars list
+	 * @param dict the dictionary index
+	 * @param model the text model, see {@link DictionaryIndex#model()}
+	 * @param minConfidence entries with less confidence are dropped, 0 keeps all
+	 * @param useMultibyte true to decode multi-byte mappings
+	 * @param progress receives the completion percent
+	 * @param entries receives the entries in order, on the calling thread
+	 */
+	public void searchAllEntries(byte[] fileBytes, int numMinChars, int numIgnoredChars,
+			List<String> endCharsList, DictionaryIndex dict, NgramModel model, float minConfidence,
+			boolean useMultibyte, DoubleConsumer progress, Consumer<OffsetEntry> entries) {
+		progress.accept(0);
+		new EntryScanner(this, fileBytes, numMinChars, numIgnoredChars, endCharsList, dict, model,
+				minConfidence, useMultibyte).scan(progress, entries);
 	}
 
 	/**
@@ -828,39 +1902,33 @@ public class HexTable implements Serializable {
 			sb.append(String.format(Constants.HEX_16_FORMAT, key)).append(Constants.TABLE_SEPARATOR).append(value);
 			sb.append(Constants.S_NEWLINE);
 		});
-		// Append multi-byte entries that are not single-byte
 		// Append multi-byte entries by traversing the trie so we list every key->value
 		// even when multiple keys map to the same value string.
-		List<Map.Entry<byte[], String>> multiList = new ArrayList<>();
-		collectTrieMappings(trieRoot, new ArrayList<>(), multiList);
-		for (Map.Entry<byte[], String> me : multiList) {
-			byte[] key = me.getKey();
-			if (key.length > 1) {
-				StringBuilder khex = new StringBuilder();
+		trie.forEach((key, value, params) -> {
+			if (params == ByteTrie.TABLE_SWITCH) {
+				sb.append(Constants.TABLE_SWITCH_CHAR);
 				for (byte b : key) {
-					khex.append(String.format(Constants.HEX_16_FORMAT, b));
+					sb.append(String.format(Constants.HEX_16_FORMAT, b));
 				}
-				sb.append(khex).append(Constants.TABLE_SEPARATOR).append(me.getValue()).append(Constants.S_NEWLINE);
+				sb.append(Constants.TABLE_SEPARATOR).append(value).append(Constants.S_NEWLINE);
 			}
-		}
+			else if (params != ByteTrie.NO_PARAMS) {
+				sb.append(Constants.CONTROL_CODE_CHAR);
+				for (byte b : key) {
+					sb.append(String.format(Constants.HEX_16_FORMAT, b));
+				}
+				sb.append(Constants.TABLE_SEPARATOR).append(value).append(Constants.S_NEWLINE);
+			}
+			else if (key.length > 1) {
+				for (byte b : key) {
+					sb.append(String.format(Constants.HEX_16_FORMAT, b));
+				}
+				sb.append(Constants.TABLE_SEPARATOR).append(value).append(Constants.S_NEWLINE);
+			}
+		});
 		return sb.toString();
 	}
 
-	/** Collect all mappings from trie into list of (keyBytes, value). */
-	private void collectTrieMappings(TrieNode node, List<Byte> path, List<Map.Entry<byte[], String>> out) {
-		if (node == null) return;
-		if (node.value != null) {
-			byte[] key = new byte[path.size()];
-			for (int i = 0; i < path.size(); i++) key[i] = path.get(i);
-			out.add(new AbstractMap.SimpleEntry<>(key, node.value));
-		}
-		for (Map.Entry<Byte, TrieNode> e : node.children.entrySet()) {
-			path.add(e.getKey());
-			collectTrieMappings(e.getValue(), path, out);
-			path.remove(path.size() - 1);
-		}
-	}
-
 	/* (non-Javadoc)
 	 * @see java.lang.Object#hashCode()
 	 */
@@ -895,60 +1963,166 @@ public class HexTable implements Serializable {
 		return searchPercent;
 	}
 
-	/** Trie node for multi-byte decoding. */
-	private static class TrieNode {
-		Map<Byte, TrieNode> children = new HashMap<>();
-		String value; // non-null means a mapping ends here
-		void clear() {
-			children.clear();
-			value = null;
+	/**
+	 * Finds the longest mapping that starts at pos and ends before end.
+	 * The result packs the match length and the value id, read them with
+	 * {@link #matchLength(long)} and {@link #matchValueId(long)}.
+	 *
+	 * @param data the data
+	 * @param pos the start position
+	 * @param end the end position (exclusive)
+	 * @return the packed match, {@link #NO_MATCH} if no mapping starts at pos
+	 */
+	public long matchAt(byte[] data, int pos, int end) {
+		return match(data, pos, Math.min(end, data.length));
+	}
+
+	/**
+	 * Length in bytes of a match returned by {@link #matchAt(byte[], int, int)}, 0 if no match.
+	 *
+	 * @param match the packed match
+	 * @return the length
+	 */
+	public static int matchLength(long match) {
+		return ByteTrie.length(match);
+	}
+
+	/**
+	 * Value id of a match returned by {@link #matchAt(byte[], int, int)}.
+	 *
+	 * @param match the packed match
+	 * @return the value id
+	 */
+	public static int matchValueId(long match) {
+		return ByteTrie.valueId(match);
+	}
+
+	/** Edge of the search prefixes, a key and the text position after its value. */
+	private record PrefixEdge(byte[] key, int next) {
+	}
+
+	/**
+	 * Byte sequences whose decoding, as toAscii with expand, starts with the text. The sequences are built
+	 * from the table mappings whose value matches the text at every position and, for the unknown char,
+	 * the bytes decoded as unknown. Every sequence stops at the first mapping that reaches the end of
+	 * the text, so the bytes of any decoded text that starts with the text begin with one of them.
+	 *
+	 * @param text the text, in upper case if ignoreCase
+	 * @param ignoreCase compares the values in upper case
+	 * @param maxBytes the longest sequence
+	 * @param maxSequences the most sequences returned
+	 * @return the byte sequences, null if there are more than maxSequences or the text can come from control codes
+	 */
+	public List<byte[]> toHexPrefixes(String text, boolean ignoreCase, int maxBytes, int maxSequences) {
+		List<List<PrefixEdge>> edges = new ArrayList<>(text.length());
+		for(int j = 0; j < text.length(); j++) {
+			edges.add(new ArrayList<>());
 		}
-		
-		/** Debug: count total entries in trie subtree */
-		@SuppressWarnings("unused")
-		int countEntries() {
-			int count = value != null ? 1 : 0;
-			for(TrieNode child : children.values()) {
-				count += child.countEntries();
+		boolean[] codes = {!reversedControl.isEmpty()};
+		trie.forEach((key, value, params) -> {
+			if(params != ByteTrie.NO_PARAMS) {
+				codes[0] = true;
+				return;
+			}
+			if(key.length > maxBytes) {
+				return;
+			}
+			String decoded = ignoreCase ? value.toUpperCase() : value;
+			for(int j = 0; j < text.length(); j++) {
+				if(text.regionMatches(j, decoded, 0, Math.min(decoded.length(), text.length() - j))) {
+					edges.get(j).add(new PrefixEdge(key, j + decoded.length()));
+				}
+			}
+		});
+		for(int j = 0; j < text.length(); j++) {
+			char c = text.charAt(j);
+			if(codes[0] && (c == Constants.CODEWORD_START || c == Constants.HEX_CHAR)) {
+				return null;
+			}
+			if(Constants.HEX_VIEWER_UNKNOWN_CHAR.charAt(0) == c) {
+				for(int b = 0; b < 256; b++) {
+					int valueId = trie.singleByteValueId((byte) b);
+					// Control codes without their parameters are unknown bytes too
+					if(valueId == ByteTrie.NO_VALUE || trie.params(valueId) > 0) {
+						edges.get(j).add(new PrefixEdge(new byte[]{(byte) b}, j + 1));
+					}
+				}
 			}
-			return count;
 		}
+		List<byte[]> res = new ArrayList<>();
+		return collectPrefixes(edges, 0, new byte[maxBytes], 0, maxSequences, res) ? res : null;
 	}
 
-	   /** Represents a matched entry at a position. */
-	   public static class Match {
-		   public final int length;
-		   public final String value;
-		   public Match(int length, String value) { this.length = length; this.value = value; }
-	   }
-
 	/**
-	 * Find the longest mapping starting at position 'pos'. Returns null if none.
+	 * Adds every byte sequence from the text position to the end of the text.
+	 *
+	 * @return false if there are more than maxSequences
 	 */
-	private Match findLongestMatch(byte[] data, int pos) {
-		TrieNode node = trieRoot;
-		String lastVal = null;
-		int lastLen = 0;
-		int i = pos;
-		
-		while(i < data.length && node != null) {
-			node = node.children.get(data[i]);
-			if(node == null) {
-				break;
+	private static boolean collectPrefixes(List<List<PrefixEdge>> edges, int pos, byte[] path, int length,
+			int maxSequences, List<byte[]> res) {
+		if(pos >= edges.size()) {
+			if(res.size() == maxSequences) {
+				return false;
 			}
-			if(node.value != null) {
-				lastVal = node.value;
-				lastLen = i - pos + 1;
+			res.add(Arrays.copyOf(path, length));
+			return true;
+		}
+		for(PrefixEdge edge : edges.get(pos)) {
+			byte[] key = edge.key();
+			if(length + key.length <= path.length) {
+				System.arraycopy(key, 0, path, length, key.length);
+				if(!collectPrefixes(edges, edge.next(), path, length + key.length, maxSequences, res)) {
+					return false;
+				}
 			}
-			i++;
 		}
-		
-		if(lastLen > 0) {
-			return new Match(lastLen, lastVal);
+		return true;
+	}
+
+	/**
+	 * Gets the table value of a value id.
+	 *
+	 * @param valueId the value id
+	 * @return the value
+	 */
+	public String getValue(int valueId) {
+		return trie.value(valueId);
+	}
+
+	/**
+	 * Decodes the bytes from start to end (exclusive) into the caller buffers, one token per
+	 * mapping or unknown byte. Unknown bytes are stored with length 1 and {@link #UNKNOWN_VALUE_ID}.
+	 * Stops when the buffers are full, the next call can continue from start plus the decoded lengths.
+	 * The value ids belong to this table, table switch codes are decoded as tokens but not followed.
+	 *
+	 * @param data the data
+	 * @param start the start position
+	 * @param end the end position (exclusive)
+	 * @param lengths receives the length of every token
+	 * @param valueIds receives the value id of every token
+	 * @return the number of tokens decoded
+	 */
+	public int decodeRange(byte[] data, int start, int end, int[] lengths, int[] valueIds) {
+		int limit = Math.min(end, data.length);
+		int maxTokens = Math.min(lengths.length, valueIds.length);
+		int tokens = 0;
+		int i = start;
+		while(i < limit && tokens < maxTokens) {
+			long m = match(data, i, limit);
+			int mLength = ByteTrie.length(m);
+			if(mLength > 0) {
+				lengths[tokens] = mLength;
+				valueIds[tokens] = ByteTrie.valueId(m);
+			}
+			else {
+				mLength = 1;
+				lengths[tokens] = 1;
+				valueIds[tokens] = UNKNOWN_VALUE_ID;
+			}
+			tokens++;
+			i += mLength;
 		}
-		
-		// No match found in trie
-		return null;
+		return tokens;
 	}
 
 }
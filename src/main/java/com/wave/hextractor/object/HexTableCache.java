@@ -0,0 +1,268 @@
+package com.wave.hextractor.object;
+
+import com.wave.hextractor.util.Constants;
+import com.wave.hextractor.util.Utils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Compiled binary cache of the table files.
+ * <p>
+ * The parsed table is stored in a sidecar file (table name plus {@link Constants#TBL_CACHE_EXTENSION})
+ * whose header keeps the size, modification time and CRC32 of the source table. When the header
+ * matches, the cache is loaded straight into the trie and lookup tables instead of parsing the
+ * table again. Set the system property {@link Constants#TBL_CACHE_PROPERTY} to false to disable it.
+ * <p>
+ * The sidecar file helpers are shared with the other sidecar files, the rom and dictionary indexes.
+ * @author slcantero
+ */
+final class HexTableCache {
+
+	/** The Constant MAGIC, "HXTC". */
+	private static final int MAGIC = 0x48585443;
+
+	/** Size of the buffer used to compute the CRC32 of a file. */
+	private static final int CRC_BUFFER_SIZE = 64 * 1024;
+
+	/** Cache format version, change it when the stored structures change. */
+	static final int VERSION = 3;
+
+	/**
+	 * Reads a sidecar file.
+	 *
+	 * @param <T> the type of the contents
+	 */
+	@FunctionalInterface
+	interface SidecarReader<T> {
+
+		/**
+		 * Reads the contents of the sidecar file.
+		 *
+		 * @param channel the file channel, at the start of the file
+		 * @return the contents, null if they do not match the source
+		 * @throws IOException the exception
+		 */
+		T read(FileChannel channel) throws IOException;
+	}
+
+	/**
+	 * Writes a sidecar file.
+	 */
+	@FunctionalInterface
+	interface SidecarWriter {
+
+		/**
+		 * Writes the contents of the sidecar file.
+		 *
+		 * @param out the buffered output
+		 * @throws IOException the exception
+		 */
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	/**
+	 * Instantiates a new hex table cache.
+	 */
+	private HexTableCache() {
+	}
+
+	/**
+	 * Loads the table file into the table, from the cache if it is up to date, parsing the
+	 * table and rewriting the cache otherwise.
+	 *
+	 * @param tableFile the table file
+	 * @param table the table to load
+	 * @throws IOException the exception
+	 */
+	static void load(Path tableFile, HexTable table) throws IOException {
+		if(!isEnabled()) {
+			parse(tableFile, table);
+			return;
+		}
+		long size = Files.size(tableFile);
+		long modified = Files.getLastModifiedTime(tableFile).toMillis();
+		long crc = crc(tableFile, size);
+		Path cacheFile = cacheFile(tableFile);
+		if(read(cacheFile, size, modified, crc, table)) {
+			return;
+		}
+		parse(tableFile, table);
+		write(cacheFile, size, modified, crc, table);
+	}
+
+	/**
+	 * Returns true if the cache is enabled.
+	 *
+	 * @return true, if enabled
+	 */
+	static boolean isEnabled() {
+		return !Boolean.FALSE.toString().equalsIgnoreCase(System.getProperty(Constants.TBL_CACHE_PROPERTY));
+	}
+
+	/**
+	 * Sidecar cache file of the table.
+	 *
+	 * @param tableFile the table file
+	 * @return the cache file
+	 */
+	static Path cacheFile(Path tableFile) {
+		return tableFile.resolveSibling(tableFile.getFileName() + Constants.TBL_CACHE_EXTENSION);
+	}
+
+	/**
+	 * Parses the table file.
+	 */
+	private static void parse(Path tableFile, HexTable table) throws IOException {
+		try(BufferedReader reader = Files.newBufferedReader(tableFile, StandardCharsets.UTF_8)) {
+			table.loadLines(reader);
+		}
+	}
+
+	/**
+	 * CRC32 of the file.
+	 *
+	 * @param file the file
+	 * @param size the file size
+	 * @return the CRC32
+	 * @throws IOException the exception
+	 */
+	static long crc(Path file, long size) throws IOException {
+		CRC32 crc = new CRC32();
+		if(size > 0) {
+			try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, CRC_BUFFER_SIZE));
+				while(channel.read(buffer) > 0) {
+					buffer.flip();
+					crc.update(buffer);
+					buffer.clear();
+				}
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Reads a sidecar file through heap buffers. The sidecar files are never memory mapped, a mapping
+	 * keeps the file locked on Windows until it is collected, so the file could not be replaced.
+	 * Failures are only logged as the sidecar files are optional.
+	 *
+	 * @param <T> the type of the contents
+	 * @param file the sidecar file
+	 * @param name the name of the file in the log, like "Table cache"
+	 * @param fallback what is done instead in the log, like "the table will be parsed"
+	 * @param reader reads the contents
+	 * @return the contents, null if the file is missing, not valid or does not match the source
+	 */
+	static <T> T readSidecar(Path file, String name, String fallback, SidecarReader<T> reader) {
+		if(!Files.isRegularFile(file)) {
+			return null;
+		}
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return reader.read(channel);
+		}
+		catch(IOException | RuntimeException e) {
+			Utils.log("WARNING - " + name + " " + file + " not valid, " + fallback + ".");
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the rest of the channel into a heap buffer.
+	 *
+	 * @param channel the channel
+	 * @return the buffer, ready to be read
+	 * @throws IOException the exception
+	 */
+	static ByteBuffer readAll(FileChannel channel) throws IOException {
+		ByteBuffer in = ByteBuffer.allocate(Math.toIntExact(channel.size() - channel.position()));
+		fill(channel, in);
+		return in;
+	}
+
+	/**
+	 * Fills the buffer up to its limit from the channel and flips it.
+	 *
+	 * @param channel the channel
+	 * @param in the buffer
+	 * @throws IOException the exception, an EOFException if the channel ends before
+	 */
+	static void fill(FileChannel channel, ByteBuffer in) throws IOException {
+		while(in.hasRemaining()) {
+			if(channel.read(in) < 0) {
+				throw new EOFException();
+			}
+		}
+		in.flip();
+	}
+
+	/**
+	 * Writes a sidecar file to a temporary file that then replaces it, so a sidecar file is never
+	 * left half written. Failures are only logged as the sidecar files are optional.
+	 *
+	 * @param file the sidecar file
+	 * @param name the name of the file in the log, like "Table cache"
+	 * @param writer writes the contents
+	 */
+	static void writeSidecar(Path file, String name, SidecarWriter writer) {
+		Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+				writer.write(out);
+			}
+			Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch(IOException e) {
+			Utils.log("WARNING - " + name + " " + file + " could not be written: " + e.getMessage());
+			try {
+				Files.deleteIfExists(tmpFile);
+			}
+			catch(IOException e2) {
+				// ignore - best-effort
+			}
+		}
+	}
+
+	/**
+	 * Loads the cache file into the table if it matches the source table.
+	 *
+	 * @return true, if loaded
+	 */
+	private static boolean read(Path cacheFile, long size, long modified, long crc, HexTable table) {
+		return readSidecar(cacheFile, "Table cache", "the table will be parsed", channel -> {
+			ByteBuffer in = readAll(channel);
+			if(in.getInt() != MAGIC || in.getInt() != VERSION || in.getLong() != size
+					|| in.getLong() != modified || in.getLong() != crc) {
+				return null;
+			}
+			table.readCache(in);
+			return table;
+		}) != null;
+	}
+
+	/**
+	 * Writes the cache file.
+	 */
+	private static void write(Path cacheFile, long size, long modified, long crc, HexTable table) {
+		writeSidecar(cacheFile, "Table cache", out -> {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(size);
+			out.writeLong(modified);
+			out.writeLong(crc);
+			table.writeCache(out);
+		});
+	}
+
+}
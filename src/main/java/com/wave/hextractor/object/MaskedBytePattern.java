@@ -0,0 +1,167 @@
+package com.wave.hextractor.object;
+
+import com.wave.hextractor.util.Constants;
+import com.wave.hextractor.util.ScanUtils;
+
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Hex pattern where every nibble can be a wildcard, like "A9 ?? 8D ?0 21".
+ * <p>
+ * The pattern is matched with Shift-And: every byte value has a bit mask of the pattern positions
+ * it matches, and one long keeps which prefixes of the pattern end at the current byte, so every
+ * byte of the data costs a shift, an or and an and. Patterns longer than 64 bytes match their first
+ * 64 bytes that way and check the rest where they are found.
+ * @author slcantero
+ */
+public final class MaskedBytePattern {
+
+	/** Wildcard nibble. */
+	public static final char WILDCARD = '?';
+
+	/** Longest prefix matched in parallel, the bits of a long. */
+	private static final int MAX_PARALLEL = Long.SIZE;
+
+	/** Value of every byte, wildcard nibbles are 0. */
+	private final byte[] values;
+
+	/** Mask of every byte, wildcard nibbles are 0. */
+	private final byte[] masks;
+
+	/** Pattern positions matched by every byte value, bit i for position i. */
+	private final long[] positions = new long[256];
+
+	/** Bytes matched in parallel. */
+	private final int parallelLength;
+
+	/**
+	 * Parses the pattern, the whitespace is ignored.
+	 *
+	 * @param hexPattern the hex pattern, ? for any nibble
+	 * @throws IllegalArgumentException if the pattern is empty, has an odd number of nibbles or other chars
+	 */
+	public MaskedBytePattern(String hexPattern) {
+		String clean = hexPattern.replaceAll("\\s+", Constants.EMPTY);
+		if(clean.isEmpty() || clean.length() % 2 != 0) {
+			throw new IllegalArgumentException("Hex pattern must have an even number of nibbles: " + hexPattern);
+		}
+		values = new byte[clean.length() / 2];
+		masks = new byte[values.length];
+		for(int i = 0; i < clean.length(); i++) {
+			char c = clean.charAt(i);
+			int shift = i % 2 == 0 ? 4 : 0;
+			if(c != WILDCARD) {
+				int nibble = Character.digit(c, Constants.HEX_RADIX);
+				if(nibble < 0) {
+					throw new IllegalArgumentException("Invalid hex pattern char '" + c + "': " + hexPattern);
+				}
+				values[i / 2] |= (byte) (nibble << shift);
+				masks[i / 2] |= (byte) (0xF << shift);
+			}
+		}
+		parallelLength = Math.min(values.length, MAX_PARALLEL);
+		for(int b = 0; b < positions.length; b++) {
+			for(int i = 0; i < parallelLength; i++) {
+				if(matches(b, i)) {
+					positions[b] |= 1L << i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pattern length in bytes.
+	 *
+	 * @return the length
+	 */
+	public int length() {
+		return values.length;
+	}
+
+	/**
+	 * Returns true if the pattern has no wildcards.
+	 *
+	 * @return true, if exact
+	 */
+	public boolean isExact() {
+		for(byte mask : masks) {
+			if(mask != (byte) Constants.MASK_8BIT) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Bytes of the pattern, the wildcard nibbles are 0.
+	 *
+	 * @return the bytes
+	 */
+	public byte[] toBytes() {
+		return values.clone();
+	}
+
+	/**
+	 * Finds every occurrence of the pattern that lies between from and to (exclusive), in parallel chunks.
+	 *
+	 * @param data the data
+	 * @param from the start offset
+	 * @param to the end offset (exclusive)
+	 * @return the start offsets of the occurrences, ordered
+	 */
+	public List<Integer> findAll(byte[] data, int from, int to) {
+		int start = Math.max(from, 0);
+		int end = Math.min(to, data.length);
+		if(end - start < values.length) {
+			return List.of();
+		}
+		return ScanUtils.findStarts(start, end, values.length, (chunkFrom, chunkTo, chunkEnd, results) ->
+				forEachMatch(data, chunkFrom, chunkTo, chunkEnd, results::accept));
+	}
+
+	/**
+	 * Reports the occurrences that start between from and to (exclusive) and end before end.
+	 *
+	 * @param data the data
+	 * @param from the first start
+	 * @param to the end of the starts (exclusive)
+	 * @param end the end of the bytes that can be read (exclusive)
+	 * @param starts receives the start offsets, ordered
+	 */
+	public void forEachMatch(byte[] data, int from, int to, int end, IntConsumer starts) {
+		long found = 1L << parallelLength - 1;
+		int last = Math.min(end, data.length);
+		int lastStart = Math.min(to, last - values.length + 1);
+		long state = 0;
+		for(int i = from; i < last && i - parallelLength + 1 < lastStart; i++) {
+			state = (state << 1 | 1L) & positions[data[i] & Constants.MASK_8BIT];
+			if((state & found) != 0) {
+				int start = i - parallelLength + 1;
+				if(start < lastStart && matchesRest(data, start)) {
+					starts.accept(start);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks the bytes after the ones matched in parallel.
+	 */
+	private boolean matchesRest(byte[] data, int start) {
+		for(int i = parallelLength; i < values.length; i++) {
+			if(!matches(data[start + i] & Constants.MASK_8BIT, i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the byte value matches the pattern position.
+	 */
+	private boolean matches(int value, int position) {
+		return (value & masks[position]) == (values[position] & Constants.MASK_8BIT);
+	}
+
+}
@@ -0,0 +1,167 @@
+package com.wave.hextractor.object;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * Character trigram model of a language, scores how much a decoded text looks like it.
+ * <p>
+ * The chars are reduced to 28 symbols, the word separator, the 26 letters without case and any other
+ * char. The last three symbols are kept as a rolling base 28 number that indexes an array with the
+ * log-probability of the last symbol after the two before it, add one smoothed, so every char is scored
+ * with a multiplication, an addition and one array read. The model is trained with the words of a
+ * dictionary or the lines of a sample script, every one starting after a word separator.
+ * @author slcantero
+ */
+public final class NgramModel {
+
+	/** Number of symbols. */
+	private static final int SYMBOLS = 28;
+
+	/** Symbol of the word separators. */
+	private static final int SEPARATOR = 0;
+
+	/** Symbol of the chars that are not letters nor separators. */
+	private static final int OTHER = SYMBOLS - 1;
+
+	/** Number of bigrams, the contexts of the trigrams. */
+	private static final int BIGRAMS = SYMBOLS * SYMBOLS;
+
+	/** Number of trigrams, the length of the score array. */
+	private static final int TRIGRAMS = BIGRAMS * SYMBOLS;
+
+	/** Trigram of three separators, the state before the first char. */
+	public static final int START = SEPARATOR;
+
+	/** Log-probability of the last symbol of every trigram after the first two. */
+	private final float[] logProbs;
+
+	/**
+	 * Instantiates a new n-gram model.
+	 */
+	private NgramModel(float[] logProbs) {
+		this.logProbs = logProbs;
+	}
+
+	/**
+	 * Trains a model with the lines.
+	 *
+	 * @param lines the dictionary words or sample lines
+	 * @return the model
+	 */
+	public static NgramModel of(Collection<String> lines) {
+		int[] counts = new int[TRIGRAMS];
+		for(String line : lines) {
+			int trigram = START;
+			for(int i = 0; i < line.length(); i++) {
+				trigram = next(trigram, line.charAt(i));
+				counts[trigram]++;
+			}
+			counts[next(trigram, ' ')]++;
+		}
+		float[] logProbs = new float[TRIGRAMS];
+		for(int bigram = 0; bigram < BIGRAMS; bigram++) {
+			int total = 0;
+			for(int s = 0; s < SYMBOLS; s++) {
+				total += counts[bigram * SYMBOLS + s];
+			}
+			for(int s = 0; s < SYMBOLS; s++) {
+				logProbs[bigram * SYMBOLS + s] = (float) Math.log((counts[bigram * SYMBOLS + s] + 1d)
+						/ (total + SYMBOLS));
+			}
+		}
+		return new NgramModel(logProbs);
+	}
+
+	/**
+	 * Trains a model with the lines of the sample file.
+	 *
+	 * @param sampleFile the sample file, a dictionary or a script
+	 * @return the model
+	 * @throws IOException the exception
+	 */
+	public static NgramModel load(Path sampleFile) throws IOException {
+		return of(Files.readAllLines(sampleFile, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Symbol of the char.
+	 */
+	private static int symbol(char c) {
+		if(c >= 'a' && c <= 'z') {
+			return c - 'a' + 1;
+		}
+		if(c >= 'A' && c <= 'Z') {
+			return c - 'A' + 1;
+		}
+		return Character.isWhitespace(c) ? SEPARATOR : OTHER;
+	}
+
+	/**
+	 * Trigram after the char, rolling the char into the last trigram.
+	 *
+	 * @param trigram the last trigram, {@link #START} before the first char
+	 * @param c the char
+	 * @return the trigram
+	 */
+	public static int next(int trigram, char c) {
+		return trigram % BIGRAMS * SYMBOLS + symbol(c);
+	}
+
+	/**
+	 * Log-probability of the last char of the trigram after the two chars before it.
+	 *
+	 * @param trigram the trigram
+	 * @return the natural log of the probability
+	 */
+	public float logProbability(int trigram) {
+		return logProbs[trigram];
+	}
+
+	/**
+	 * Confidence of a text with the sum of the log-probabilities of its chars, 0 for a text as
+	 * likely as random symbols or less, 1 for a text the model predicts perfectly.
+	 *
+	 * @param logProbSum the sum of the log-probabilities
+	 * @param chars the number of chars
+	 * @return the confidence, from 0 to 1
+	 */
+	public static float confidence(double logProbSum, int chars) {
+		if(chars == 0) {
+			return 0;
+		}
+		double perChar = 1 + logProbSum / chars / Math.log(SYMBOLS);
+		return (float) Math.max(0, Math.min(1, perChar));
+	}
+
+	/**
+	 * Writes the model for the dictionary index file.
+	 *
+	 * @param out the output
+	 * @throws IOException the exception
+	 */
+	void write(DataOutputStream out) throws IOException {
+		for(float logProb : logProbs) {
+			out.writeFloat(logProb);
+		}
+	}
+
+	/**
+	 * Reads a model stored by write.
+	 *
+	 * @param in the input
+	 * @return the model
+	 */
+	static NgramModel read(ByteBuffer in) {
+		float[] logProbs = new float[TRIGRAMS];
+		in.asFloatBuffer().get(logProbs);
+		in.position(in.position() + TRIGRAMS * Float.BYTES);
+		return new NgramModel(logProbs);
+	}
+
+}
@@ -0,0 +1,146 @@
+package com.wave.hextractor.object;
+
+import com.wave.hextractor.pojo.OffsetEntry;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Regular expression search over the text decoded with a table.
+ * <p>
+ * The data is decoded into a {@link DecodedText} the first time a table is used and the view is kept
+ * for the next searches with the same table until its mappings change, the matches are mapped back to
+ * the bytes they were decoded from. Ranges of the data can be searched too, every range is decoded on its own and not kept.
+ * @author slcantero
+ */
+public final class RegexSearch {
+
+	/**
+	 * A match.
+	 *
+	 * @param start the offset of the first byte
+	 * @param end the offset after the last byte (exclusive)
+	 * @param text the matched text
+	 */
+	public record Match(int start, int end, String text) {
+
+		/**
+		 * Offset entry of the bytes of the match.
+		 *
+		 * @return the entry, with the end inclusive
+		 */
+		public OffsetEntry toOffsetEntry() {
+			return new OffsetEntry(start, end - 1, new ArrayList<>());
+		}
+	}
+
+	/**
+	 * Decoded view of the whole data.
+	 *
+	 * @param version the version of the table mappings it was decoded with
+	 * @param text the decoded text
+	 */
+	private record View(long version, DecodedText text) {
+	}
+
+	/** Views kept, the oldest one is dropped after them. */
+	private static final int MAX_VIEWS = 4;
+
+	/** The data. */
+	private final byte[] data;
+
+	/** Decoded view of the whole data for every table used. */
+	private final Map<HexTable, View> views = new IdentityHashMap<>();
+
+	/** Tables of the views, the oldest first. */
+	private final List<HexTable> viewTables = new ArrayList<>();
+
+	/**
+	 * Instantiates a new regex search over the data.
+	 *
+	 * @param data the data, not modified while the search is used
+	 */
+	public RegexSearch(byte[] data) {
+		this.data = data;
+	}
+
+	/**
+	 * Returns true if the search is over the data, the same array.
+	 *
+	 * @param data the data
+	 * @return true, if it is the data searched
+	 */
+	public boolean isFor(byte[] data) {
+		return this.data == data;
+	}
+
+	/**
+	 * Decoded view of the whole data with the table, decoded on the first call and again when the
+	 * table changes.
+	 *
+	 * @param hexTable the table
+	 * @return the view
+	 */
+	public synchronized DecodedText view(HexTable hexTable) {
+		long version = hexTable.version();
+		View view = views.get(hexTable);
+		if(view == null || view.version() != version) {
+			if(view != null) {
+				viewTables.removeIf(table -> table == hexTable);
+			}
+			else if(viewTables.size() == MAX_VIEWS) {
+				views.remove(viewTables.remove(0));
+			}
+			view = new View(version, DecodedText.decode(data, hexTable, 0, data.length));
+			views.put(hexTable, view);
+			viewTables.add(hexTable);
+		}
+		return view.text();
+	}
+
+	/**
+	 * Finds the matches of the pattern in the whole data.
+	 *
+	 * @param hexTable the table
+	 * @param pattern the pattern
+	 * @return the matches, ordered by offset
+	 */
+	public List<Match> find(HexTable hexTable, Pattern pattern) {
+		List<Match> res = new ArrayList<>();
+		find(view(hexTable), pattern, res);
+		return res;
+	}
+
+	/**
+	 * Finds the matches of the pattern in the ranges, a match does not span two ranges.
+	 *
+	 * @param hexTable the table
+	 * @param pattern the pattern
+	 * @param ranges the ranges, with the end inclusive
+	 * @return the matches, in the order of the ranges
+	 */
+	public List<Match> find(HexTable hexTable, Pattern pattern, List<OffsetEntry> ranges) {
+		List<Match> res = new ArrayList<>();
+		for(OffsetEntry range : ranges) {
+			find(DecodedText.decode(data, hexTable, range.getStart(), range.getEnd() + 1), pattern, res);
+		}
+		return res;
+	}
+
+	/**
+	 * Adds the matches with text of the pattern in the view.
+	 */
+	private static void find(DecodedText text, Pattern pattern, List<Match> res) {
+		Matcher matcher = pattern.matcher(text);
+		while(matcher.find()) {
+			if(matcher.end() > matcher.start()) {
+				res.add(new Match(text.offset(matcher.start()), text.endOffset(matcher.end()), matcher.group()));
+			}
+		}
+	}
+
+}
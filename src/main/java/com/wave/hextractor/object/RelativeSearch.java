@@ -0,0 +1,308 @@
+package com.wave.hextractor.object;
+
+import com.wave.hextractor.pojo.SearchHit;
+import com.wave.hextractor.util.Constants;
+import com.wave.hextractor.util.ScanUtils;
+import com.wave.hextractor.util.Utils;
+
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Relative search of a word, finds the offsets where the code units keep the same differences
+ * as the chars of the word, whatever the table displacement. The code units are bytes or 16 bit
+ * values in either byte order, the differences wrap around the unit size.
+ * <p>
+ * Every wildcard of the word matches from 1 to expansion chars, the same number for all of them.
+ * The longest run of the word without wildcards is compiled into its difference signature, the
+ * difference between every char and the previous one, and searched with KMP over the difference
+ * stream of the data. The run is the same for every gap length, so a single linear pass finds
+ * the candidates of all of them and only the rest of the chars are checked for every gap length.
+ * The pass is split in chunks that run in parallel, see {@link ScanUtils}.
+ * @author slcantero
+ */
+public final class RelativeSearch {
+
+	/** The word bytes for every gap length, index 0 for gap length 1 or the word without wildcards. */
+	private final byte[][] words;
+
+	/** First char that is not a wildcard for every gap length, the displacement is taken from it. */
+	private final int[] anchors;
+
+	/** Start of the longest run without wildcards for every gap length. */
+	private final int[] runStarts;
+
+	/** Difference signature of the run, empty if the run is shorter than two chars. */
+	private final char[] signature;
+
+	/** KMP failure function of the signature. */
+	private final int[] failure;
+
+	/** True if the word has wildcards. */
+	private final boolean wildcards;
+
+	/** Bytes of every code unit, 1 or 2. */
+	private final int unitSize;
+
+	/** True if the 16 bit code units are big endian. */
+	private final boolean bigEndian;
+
+	/** Mask of the code unit values. */
+	private final int mask;
+
+	/**
+	 * Compiles the word without expanding the wildcards, every wildcard matches one char.
+	 *
+	 * @param searchString the word, * matches any char
+	 * @throws IllegalArgumentException if the word is shorter than {@link Constants#MIN_SEARCH_WORD_LENGTH}
+	 */
+	public RelativeSearch(String searchString) {
+		this(searchString, 1);
+	}
+
+	/**
+	 * Compiles the word for every gap length.
+	 *
+	 * @param searchString the word, * matches from 1 to expansion chars
+	 * @param expansion the longest gap length
+	 * @throws IllegalArgumentException if the word is shorter than {@link Constants#MIN_SEARCH_WORD_LENGTH}
+	 */
+	public RelativeSearch(String searchString, int expansion) {
+		this(searchString, expansion, 1, ByteOrder.BIG_ENDIAN);
+	}
+
+	/**
+	 * Compiles the word for every gap length, over 16 bit code units.
+	 *
+	 * @param searchString the word, * matches from 1 to expansion chars
+	 * @param expansion the longest gap length
+	 * @param byteOrder the byte order of the code units
+	 * @throws IllegalArgumentException if the word is shorter than {@link Constants#MIN_SEARCH_WORD_LENGTH}
+	 */
+	public RelativeSearch(String searchString, int expansion, ByteOrder byteOrder) {
+		this(searchString, expansion, 2, byteOrder);
+	}
+
+	/**
+	 * Compiles the word for every gap length.
+	 */
+	private RelativeSearch(String searchString, int expansion, int unitSize, ByteOrder byteOrder) {
+		this.unitSize = unitSize;
+		bigEndian = byteOrder == ByteOrder.BIG_ENDIAN;
+		mask = unitSize == 1 ? Constants.MASK_8BIT : Constants.MASK_16BIT;
+		if(searchString.length() < Constants.MIN_SEARCH_WORD_LENGTH) {
+			throw new IllegalArgumentException(
+					"Minimal word length / Longitud minima de palabra : " + Constants.MIN_SEARCH_WORD_LENGTH);
+		}
+		wildcards = searchString.indexOf(Constants.CHR_ASTER) >= 0;
+		int gaps = wildcards ? Math.max(expansion, 0) : 1;
+		byte[] word = searchString.getBytes(StandardCharsets.US_ASCII);
+		int bestStart = 0;
+		int bestLength = 0;
+		int start = 0;
+		for(int i = 0; i <= word.length; i++) {
+			if(i == word.length || word[i] == Constants.BYTE_ASTER) {
+				if(i - start > bestLength) {
+					bestStart = start;
+					bestLength = i - start;
+				}
+				start = i + 1;
+			}
+		}
+		int first = 0;
+		while(first < word.length && word[first] == Constants.BYTE_ASTER) {
+			first++;
+		}
+		int starsBeforeRun = 0;
+		for(int i = 0; i < bestStart; i++) {
+			if(word[i] == Constants.BYTE_ASTER) {
+				starsBeforeRun++;
+			}
+		}
+		words = new byte[gaps][];
+		anchors = new int[gaps];
+		runStarts = new int[gaps];
+		for(int gap = 1; gap <= gaps; gap++) {
+			words[gap - 1] = Utils.expandWildcards(searchString, gap).getBytes(StandardCharsets.US_ASCII);
+			anchors[gap - 1] = first == word.length ? 0 : first * gap;
+			runStarts[gap - 1] = bestStart + starsBeforeRun * (gap - 1);
+		}
+		signature = new char[Math.max(bestLength - 1, 0)];
+		for(int i = 0; i < signature.length; i++) {
+			signature[i] = (char) (word[bestStart + i + 1] - word[bestStart + i] & mask);
+		}
+		failure = failure(signature);
+	}
+
+	/**
+	 * Number of code units of the data from the alignment.
+	 *
+	 * @param data the data
+	 * @param alignment offset of the first code unit
+	 * @return the number of code units
+	 */
+	public int unitCount(byte[] data, int alignment) {
+		return Math.max(data.length - alignment, 0) / unitSize;
+	}
+
+	/**
+	 * Code unit at the offset.
+	 *
+	 * @param data the data
+	 * @param offset the offset
+	 * @return the unsigned value
+	 */
+	public int unit(byte[] data, int offset) {
+		if(unitSize == 1) {
+			return data[offset] & Constants.MASK_8BIT;
+		}
+		int first = data[offset] & Constants.MASK_8BIT;
+		int second = data[offset + 1] & Constants.MASK_8BIT;
+		return bigEndian ? first << 8 | second : second << 8 | first;
+	}
+
+	/**
+	 * Difference stream of the code units of the data from the alignment, the difference between every
+	 * code unit and the previous one. It can be shared by every search with the same code units.
+	 *
+	 * @param data the data
+	 * @param alignment offset of the first code unit
+	 * @return the differences, one less than the code units
+	 */
+	public char[] differences(byte[] data, int alignment) {
+		char[] res = new char[Math.max(unitCount(data, alignment) - 1, 0)];
+		int previous = res.length > 0 ? unit(data, alignment) : 0;
+		for(int i = 0; i < res.length; i++) {
+			int current = unit(data, alignment + (i + 1) * unitSize);
+			res[i] = (char) (current - previous & mask);
+			previous = current;
+		}
+		return res;
+	}
+
+	/**
+	 * KMP failure function.
+	 *
+	 * @param pattern the pattern
+	 * @return the length of the longest proper border of every prefix
+	 */
+	private static int[] failure(char[] pattern) {
+		int[] res = new int[pattern.length];
+		int k = 0;
+		for(int i = 1; i < pattern.length; i++) {
+			while(k > 0 && pattern[i] != pattern[k]) {
+				k = res[k - 1];
+			}
+			if(pattern[i] == pattern[k]) {
+				k++;
+			}
+			res[i] = k;
+		}
+		return res;
+	}
+
+	/**
+	 * Finds the word for every gap length. For every gap length the offsets do not overlap; the 8 bit search
+	 * checks up to the data length minus the expanded word length minus one, as it always did.
+	 * The difference stream is scanned in parallel chunks.
+	 *
+	 * @param data the data
+	 * @param alignment offset of the first code unit
+	 * @param differences the difference stream of the code units
+	 * @return the hits ordered by offset and gap length
+	 */
+	public List<SearchHit> find(byte[] data, int alignment, char[] differences) {
+		List<SearchHit> hits;
+		if(signature.length == 0) {
+			hits = ScanUtils.scan(unitCount(data, alignment), 0, SearchHit.ORDER, (from, to, end, results) -> {
+				for(int i = from; i < to; i++) {
+					for(int g = 0; g < words.length; g++) {
+						check(data, alignment, i, g, results);
+					}
+				}
+			});
+		}
+		else {
+			hits = ScanUtils.scan(differences.length, signature.length - 1, SearchHit.ORDER,
+					(from, to, end, results) -> scanRuns(data, alignment, differences, from, end, results));
+		}
+		List<SearchHit> res = new ArrayList<>();
+		int[] next = new int[words.length];
+		for(SearchHit hit : hits) {
+			int g = Math.max(hit.gapLength(), 1) - 1;
+			if(hit.offset() >= next[g]) {
+				res.add(hit);
+				next[g] = hit.offset() + words[g].length * unitSize;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * KMP search of the signature between from and end (exclusive) of the difference stream, checks the
+	 * word for every gap length where the run is found. The runs found start before end minus the
+	 * signature length plus one.
+	 */
+	private void scanRuns(byte[] data, int alignment, char[] differences, int from, int end,
+			Consumer<SearchHit> results) {
+		int k = 0;
+		for(int t = from; t < end; t++) {
+			while(k > 0 && differences[t] != signature[k]) {
+				k = failure[k - 1];
+			}
+			if(differences[t] == signature[k]) {
+				k++;
+			}
+			if(k == signature.length) {
+				int run = t - signature.length + 1;
+				for(int g = 0; g < words.length; g++) {
+					check(data, alignment, run - runStarts[g], g, results);
+				}
+				k = failure[k - 1];
+			}
+		}
+	}
+
+	/**
+	 * Reports the hit if the word of the gap length is found at the code unit.
+	 */
+	private void check(byte[] data, int alignment, int unitIndex, int g, Consumer<SearchHit> results) {
+		int offset = alignment + unitIndex * unitSize;
+		int end = offset + words[g].length * unitSize;
+		if(unitIndex >= 0 && (unitSize == 1 ? end < data.length : end <= data.length) && matches(data, offset, g)) {
+			results.accept(new SearchHit(offset, wildcards ? g + 1 : 0));
+		}
+	}
+
+	/**
+	 * Returns true if every char of the word keeps its difference with the anchor char at the offset.
+	 */
+	private boolean matches(byte[] data, int offset, int g) {
+		byte[] word = words[g];
+		int anchor = anchors[g];
+		int anchorUnit = unit(data, offset + anchor * unitSize);
+		for(int i = 0; i < word.length; i++) {
+			if(word[i] != Constants.BYTE_ASTER
+					&& (unit(data, offset + i * unitSize) - anchorUnit & mask) != (word[i] - word[anchor] & mask)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Table displacement of a hit, the value to add to the data bytes to get the chars.
+	 *
+	 * @param data the data
+	 * @param hit the hit
+	 * @return the displacement
+	 */
+	public int displacement(byte[] data, SearchHit hit) {
+		int g = Math.max(hit.gapLength(), 1) - 1;
+		return words[g][anchors[g]] - unit(data, hit.offset() + anchors[g] * unitSize) & mask;
+	}
+
+}
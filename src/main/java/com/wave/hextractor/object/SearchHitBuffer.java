@@ -0,0 +1,162 @@
+package com.wave.hextractor.object;
+
+import com.wave.hextractor.pojo.SearchHit;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Search hits kept in primitive arrays, without a limit on their number.
+ * <p>
+ * A search streams its hits into the buffer, which keeps only the offset and gap length of each of them,
+ * so broad searches cost two ints per hit. The hits are read back by index, by page or as a list view that
+ * builds every {@link SearchHit} when it is read.
+ * @author slcantero
+ */
+public final class SearchHitBuffer implements Consumer<SearchHit> {
+
+	/** Initial capacity. */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** Offset of every hit. */
+	private int[] offsets = new int[INITIAL_CAPACITY];
+
+	/** Gap length of every hit. */
+	private int[] gapLengths = new int[INITIAL_CAPACITY];
+
+	/** Number of hits. */
+	private int size;
+
+	/**
+	 * Adds a hit.
+	 *
+	 * @param offset the offset
+	 * @param gapLength the gap length
+	 */
+	public void add(int offset, int gapLength) {
+		if(size == offsets.length) {
+			offsets = Arrays.copyOf(offsets, size * 2);
+			gapLengths = Arrays.copyOf(gapLengths, size * 2);
+		}
+		offsets[size] = offset;
+		gapLengths[size++] = gapLength;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.function.Consumer#accept(java.lang.Object)
+	 */
+	@Override
+	public void accept(SearchHit hit) {
+		add(hit.offset(), hit.gapLength());
+	}
+
+	/**
+	 * Total number of hits.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns true if there are no hits.
+	 *
+	 * @return true, if empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Offset of the hit.
+	 *
+	 * @param index the hit index
+	 * @return the offset
+	 */
+	public int offset(int index) {
+		return offsets[checkIndex(index)];
+	}
+
+	/**
+	 * Gap length of the hit.
+	 *
+	 * @param index the hit index
+	 * @return the gap length
+	 */
+	public int gapLength(int index) {
+		return gapLengths[checkIndex(index)];
+	}
+
+	/**
+	 * The hit.
+	 *
+	 * @param index the hit index
+	 * @return the hit
+	 */
+	public SearchHit get(int index) {
+		return new SearchHit(offset(index), gapLength(index));
+	}
+
+	/**
+	 * Number of pages.
+	 *
+	 * @param pageSize hits per page
+	 * @return the page count
+	 */
+	public int pageCount(int pageSize) {
+		return (size + pageSize - 1) / pageSize;
+	}
+
+	/**
+	 * Hits of a page, the last one can be shorter.
+	 *
+	 * @param page the page, from 0
+	 * @param pageSize hits per page
+	 * @return the hits, empty after the last page
+	 */
+	public List<SearchHit> page(int page, int pageSize) {
+		int from = (int) Math.min((long) page * pageSize, size);
+		return asList().subList(from, (int) Math.min((long) from + pageSize, size));
+	}
+
+	/**
+	 * Offsets of the hits, in the order they were added.
+	 *
+	 * @return the offsets
+	 */
+	public IntStream offsets() {
+		return Arrays.stream(offsets, 0, size);
+	}
+
+	/**
+	 * List view of the hits, every hit is built when it is read.
+	 *
+	 * @return the hits
+	 */
+	public List<SearchHit> asList() {
+		return new AbstractList<>() {
+			@Override
+			public SearchHit get(int index) {
+				return SearchHitBuffer.this.get(index);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * Checks the hit index.
+	 */
+	private int checkIndex(int index) {
+		return Objects.checkIndex(index, size);
+	}
+
+}
@@ -0,0 +1,382 @@
+package com.wave.hextractor.object;
+
+import com.wave.hextractor.util.Constants;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Suffix array of a rom, answers the exact byte pattern queries without scanning the rom.
+ * <p>
+ * The suffix array is built with SA-IS in linear time. A query is a binary search of the suffixes that
+ * start with the pattern; the bytes already known to be shared with both bounds are not compared again,
+ * so in practice a query costs the pattern length plus the logarithm of the rom size, plus the offsets found.
+ * The index can be stored in a sidecar file (rom name plus {@link Constants#ROM_INDEX_EXTENSION}) whose
+ * header keeps the size and CRC32 of the rom it was built for. Set the system property
+ * {@link Constants#ROM_INDEX_PROPERTY} to false to disable it.
+ * @author slcantero
+ */
+public final class SuffixArrayIndex {
+
+	/** The Constant MAGIC, "HXSA". */
+	private static final int MAGIC = 0x48585341;
+
+	/** Index format version, change it when the stored structures change. */
+	private static final int VERSION = 1;
+
+	/** Header size, magic, version, size and crc. */
+	private static final int HEADER_SIZE = 24;
+
+	/** Ints read from or written to the sidecar file at once. */
+	private static final int IO_BLOCK = 1 << 16;
+
+	/** The indexed data. */
+	private final byte[] data;
+
+	/** Suffix array, position 0 holds the empty suffix at the end of the data. */
+	private final int[] suffixes;
+
+	/**
+	 * Instantiates a new suffix array index.
+	 */
+	private SuffixArrayIndex(byte[] data, int[] suffixes) {
+		this.data = data;
+		this.suffixes = suffixes;
+	}
+
+	/**
+	 * Builds the index of the data.
+	 *
+	 * @param data the data, it must not change while the index is used
+	 * @return the index
+	 */
+	public static SuffixArrayIndex build(byte[] data) {
+		int n = data.length + 1;
+		int[] text = new int[n];
+		for(int i = 0; i < data.length; i++) {
+			text[i] = (data[i] & Constants.MASK_8BIT) + 1;
+		}
+		int[] suffixes = new int[n];
+		sais(text, suffixes, n, 257);
+		return new SuffixArrayIndex(data, suffixes);
+	}
+
+	/**
+	 * Loads the index of the rom from its sidecar file if it matches the data, builds and stores it otherwise.
+	 * The index is not stored if the rom is not a file.
+	 *
+	 * @param romFile the rom file
+	 * @param data the rom data
+	 * @return the index
+	 */
+	public static SuffixArrayIndex load(Path romFile, byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		Path indexFile = romFile.resolveSibling(romFile.getFileName() + Constants.ROM_INDEX_EXTENSION);
+		SuffixArrayIndex index = read(indexFile, data, crc.getValue());
+		if(index == null) {
+			index = build(data);
+			if(Files.isRegularFile(romFile)) {
+				index.write(indexFile, crc.getValue());
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Returns true if the index is enabled.
+	 *
+	 * @return true, if enabled
+	 */
+	public static boolean isEnabled() {
+		return !Boolean.FALSE.toString().equalsIgnoreCase(System.getProperty(Constants.ROM_INDEX_PROPERTY));
+	}
+
+	/**
+	 * Returns true if this is the index of the data array.
+	 *
+	 * @param other the data
+	 * @return true, if it is the same array
+	 */
+	public boolean isFor(byte[] other) {
+		return data == other;
+	}
+
+	/**
+	 * Number of occurrences of the pattern.
+	 *
+	 * @param pattern the pattern
+	 * @return the count
+	 */
+	public int count(byte[] pattern) {
+		int[] range = range(pattern);
+		return range[1] - range[0];
+	}
+
+	/**
+	 * Finds every occurrence of the pattern that lies between from and to (exclusive).
+	 *
+	 * @param pattern the pattern
+	 * @param from the start offset
+	 * @param to the end offset (exclusive)
+	 * @return the start offsets of the occurrences, ordered
+	 */
+	public List<Integer> locate(byte[] pattern, int from, int to) {
+		List<Integer> res = new ArrayList<>();
+		if(pattern.length == 0) {
+			return res;
+		}
+		int[] range = range(pattern);
+		int[] offsets = new int[range[1] - range[0]];
+		int found = 0;
+		long last = (long) to - pattern.length;
+		for(int i = range[0]; i < range[1]; i++) {
+			if(suffixes[i] >= from && suffixes[i] <= last) {
+				offsets[found++] = suffixes[i];
+			}
+		}
+		Arrays.sort(offsets, 0, found);
+		for(int i = 0; i < found; i++) {
+			res.add(offsets[i]);
+		}
+		return res;
+	}
+
+	/**
+	 * Range of the suffix array whose suffixes start with the pattern.
+	 *
+	 * @return the start and end (exclusive) of the range
+	 */
+	private int[] range(byte[] pattern) {
+		return new int[]{bound(pattern, false), bound(pattern, true)};
+	}
+
+	/**
+	 * First suffix that is not lower than the pattern, or greater than it if upper, comparing
+	 * the suffixes cut to the pattern length.
+	 */
+	private int bound(byte[] pattern, boolean upper) {
+		int low = 0;
+		int high = suffixes.length;
+		int lowLcp = 0;
+		int highLcp = 0;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			int start = suffixes[mid];
+			int lcp = Math.min(lowLcp, highLcp);
+			int cmp = 0;
+			while(lcp < pattern.length) {
+				if(start + lcp >= data.length) {
+					cmp = -1;
+					break;
+				}
+				cmp = (data[start + lcp] & Constants.MASK_8BIT) - (pattern[lcp] & Constants.MASK_8BIT);
+				if(cmp != 0) {
+					break;
+				}
+				lcp++;
+			}
+			if(cmp < 0 || upper && cmp == 0) {
+				low = mid + 1;
+				lowLcp = lcp;
+			}
+			else {
+				high = mid;
+				highLcp = lcp;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * SA-IS suffix array construction, the last char of the text must be a unique 0.
+	 *
+	 * @param text the text
+	 * @param sa the suffix array
+	 * @param n the text length
+	 * @param k the alphabet size
+	 */
+	private static void sais(int[] text, int[] sa, int n, int k) {
+		if(n == 1) {
+			sa[0] = 0;
+			return;
+		}
+		boolean[] sType = new boolean[n];
+		sType[n - 1] = true;
+		for(int i = n - 2; i >= 0; i--) {
+			sType[i] = text[i] < text[i + 1] || text[i] == text[i + 1] && sType[i + 1];
+		}
+		int[] buckets = new int[k];
+		// Sort the LMS substrings
+		bucketEnds(text, buckets, n, k);
+		Arrays.fill(sa, 0, n, -1);
+		for(int i = 1; i < n; i++) {
+			if(isLms(sType, i)) {
+				sa[--buckets[text[i]]] = i;
+			}
+		}
+		induce(text, sa, sType, buckets, n, k);
+		// Name them, the names of the LMS substrings in text order are the reduced text
+		int n1 = 0;
+		for(int i = 0; i < n; i++) {
+			if(isLms(sType, sa[i])) {
+				sa[n1++] = sa[i];
+			}
+		}
+		Arrays.fill(sa, n1, n, -1);
+		int name = 0;
+		int prev = -1;
+		for(int i = 0; i < n1; i++) {
+			int pos = sa[i];
+			boolean diff = false;
+			for(int d = 0; d < n; d++) {
+				if(prev == -1 || text[pos + d] != text[prev + d] || sType[pos + d] != sType[prev + d]) {
+					diff = true;
+					break;
+				}
+				if(d > 0 && (isLms(sType, pos + d) || isLms(sType, prev + d))) {
+					break;
+				}
+			}
+			if(diff) {
+				name++;
+				prev = pos;
+			}
+			sa[n1 + pos / 2] = name - 1;
+		}
+		for(int i = n - 1, j = n - 1; i >= n1; i--) {
+			if(sa[i] >= 0) {
+				sa[j--] = sa[i];
+			}
+		}
+		// Sort the reduced text, recursively if the names are not unique
+		int[] reduced = Arrays.copyOfRange(sa, n - n1, n);
+		int[] reducedSa = new int[n1];
+		if(name < n1) {
+			sais(reduced, reducedSa, n1, name);
+		}
+		else {
+			for(int i = 0; i < n1; i++) {
+				reducedSa[reduced[i]] = i;
+			}
+		}
+		// Induce the suffix array from the sorted LMS suffixes
+		for(int i = 1, j = 0; i < n; i++) {
+			if(isLms(sType, i)) {
+				reduced[j++] = i;
+			}
+		}
+		bucketEnds(text, buckets, n, k);
+		Arrays.fill(sa, 0, n, -1);
+		for(int i = n1 - 1; i >= 0; i--) {
+			int pos = reduced[reducedSa[i]];
+			sa[--buckets[text[pos]]] = pos;
+		}
+		induce(text, sa, sType, buckets, n, k);
+	}
+
+	/**
+	 * Induces the L type suffixes from left to right and the S type ones from right to left.
+	 */
+	private static void induce(int[] text, int[] sa, boolean[] sType, int[] buckets, int n, int k) {
+		bucketStarts(text, buckets, n, k);
+		for(int i = 0; i < n; i++) {
+			int j = sa[i] - 1;
+			if(j >= 0 && !sType[j]) {
+				sa[buckets[text[j]]++] = j;
+			}
+		}
+		bucketEnds(text, buckets, n, k);
+		for(int i = n - 1; i >= 0; i--) {
+			int j = sa[i] - 1;
+			if(j >= 0 && sType[j]) {
+				sa[--buckets[text[j]]] = j;
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the position is a leftmost S type one.
+	 */
+	private static boolean isLms(boolean[] sType, int i) {
+		return i > 0 && sType[i] && !sType[i - 1];
+	}
+
+	/**
+	 * Start of the bucket of every char.
+	 */
+	private static void bucketStarts(int[] text, int[] buckets, int n, int k) {
+		bucketEnds(text, buckets, n, k);
+		for(int c = k - 1; c > 0; c--) {
+			buckets[c] = buckets[c - 1];
+		}
+		buckets[0] = 0;
+	}
+
+	/**
+	 * End (exclusive) of the bucket of every char.
+	 */
+	private static void bucketEnds(int[] text, int[] buckets, int n, int k) {
+		Arrays.fill(buckets, 0, k, 0);
+		for(int i = 0; i < n; i++) {
+			buckets[text[i]]++;
+		}
+		int sum = 0;
+		for(int c = 0; c < k; c++) {
+			sum += buckets[c];
+			buckets[c] = sum;
+		}
+	}
+
+	/**
+	 * Reads the sidecar file if it was built for the data.
+	 *
+	 * @return the index, null if it is missing or does not match
+	 */
+	private static SuffixArrayIndex read(Path indexFile, byte[] data, long crc) {
+		return HexTableCache.readSidecar(indexFile, "Rom index", "it will be built again", channel -> {
+			if(channel.size() != HEADER_SIZE + (data.length + 1L) * Integer.BYTES) {
+				return null;
+			}
+			// Read in blocks, the suffixes are not held twice
+			ByteBuffer in = ByteBuffer.allocate(IO_BLOCK * Integer.BYTES);
+			in.limit(HEADER_SIZE);
+			HexTableCache.fill(channel, in);
+			if(in.getInt() != MAGIC || in.getInt() != VERSION || in.getLong() != data.length || in.getLong() != crc) {
+				return null;
+			}
+			int[] suffixes = new int[data.length + 1];
+			for(int i = 0; i < suffixes.length; i += in.limit() / Integer.BYTES) {
+				in.clear();
+				in.limit(Math.min(IO_BLOCK, suffixes.length - i) * Integer.BYTES);
+				HexTableCache.fill(channel, in);
+				in.asIntBuffer().get(suffixes, i, in.limit() / Integer.BYTES);
+			}
+			return new SuffixArrayIndex(data, suffixes);
+		});
+	}
+
+	/**
+	 * Writes the sidecar file.
+	 */
+	private void write(Path indexFile, long crc) {
+		HexTableCache.writeSidecar(indexFile, "Rom index", out -> {
+			ByteBuffer block = ByteBuffer.allocate(IO_BLOCK * Integer.BYTES);
+			block.putInt(MAGIC).putInt(VERSION).putLong(data.length).putLong(crc);
+			for(int i = 0; i < suffixes.length; i++) {
+				if(!block.hasRemaining()) {
+					out.write(block.array(), 0, block.position());
+					block.clear();
+				}
+				block.putInt(suffixes[i]);
+			}
+			out.write(block.array(), 0, block.position());
+		});
+	}
+
+}
@@ -0,0 +1,197 @@
+package com.wave.hextractor.object;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Reverse trie of the table, from the values to their keys, used to encode text with
+ * greedy longest-match or shortest encoding over the table values.
+ * <p>
+ * Every node stores its children as sorted char / node arrays searched with binary search.
+ * The trie is immutable once built. Lookups return the match length and the key index packed
+ * in a primitive long as {@link ByteTrie} does.
+ * @author slcantero
+ */
+final class ValueTrie {
+
+	/** Initial number of nodes. */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** Sorted child chars of each node. */
+	private final char[][] childChars;
+
+	/** Child node ids of each node, parallel to childChars. */
+	private final int[][] childNodes;
+
+	/** Key index of each node, or ByteTrie.NO_VALUE. */
+	private final int[] nodeKeys;
+
+	/** Keys by index. */
+	private final byte[][] keys;
+
+	/** Longest value stored, in chars. */
+	private final int maxLength;
+
+	/**
+	 * Builds the trie from the value to key map. Empty values and values with more than one
+	 * char containing any of the excluded chars are skipped.
+	 *
+	 * @param values the value to key map
+	 * @param excludedChars chars that can only appear in single char values
+	 */
+	ValueTrie(Map<String, byte[]> values, String excludedChars) {
+		char[][] chars = new char[INITIAL_CAPACITY][];
+		int[][] nodes = new int[INITIAL_CAPACITY][];
+		int[] counts = new int[INITIAL_CAPACITY];
+		int[] nodeValues = new int[INITIAL_CAPACITY];
+		nodeValues[0] = ByteTrie.NO_VALUE;
+		int nodeCount = 1;
+		byte[][] keyList = new byte[values.size()][];
+		int keyCount = 0;
+		int longest = 0;
+		for(Map.Entry<String, byte[]> entry : values.entrySet()) {
+			String value = entry.getKey();
+			if(value.isEmpty() || value.length() > 1 && containsAny(value, excludedChars)) {
+				continue;
+			}
+			int node = 0;
+			for(int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				int pos = counts[node] == 0 ? -1 : Arrays.binarySearch(chars[node], 0, counts[node], c);
+				if(pos >= 0) {
+					node = nodes[node][pos];
+					continue;
+				}
+				if(nodeCount == nodeValues.length) {
+					int capacity = nodeCount * 2;
+					chars = Arrays.copyOf(chars, capacity);
+					nodes = Arrays.copyOf(nodes, capacity);
+					counts = Arrays.copyOf(counts, capacity);
+					nodeValues = Arrays.copyOf(nodeValues, capacity);
+				}
+				int child = nodeCount++;
+				nodeValues[child] = ByteTrie.NO_VALUE;
+				// Insert keeping the chars sorted
+				int insert = -pos - 1;
+				int count = counts[node];
+				if(chars[node] == null) {
+					chars[node] = new char[2];
+					nodes[node] = new int[2];
+				}
+				else if(count == chars[node].length) {
+					chars[node] = Arrays.copyOf(chars[node], count * 2);
+					nodes[node] = Arrays.copyOf(nodes[node], count * 2);
+				}
+				System.arraycopy(chars[node], insert, chars[node], insert + 1, count - insert);
+				System.arraycopy(nodes[node], insert, nodes[node], insert + 1, count - insert);
+				chars[node][insert] = c;
+				nodes[node][insert] = child;
+				counts[node] = count + 1;
+				node = child;
+			}
+			keyList[keyCount] = entry.getValue().clone();
+			nodeValues[node] = keyCount++;
+			longest = Math.max(longest, value.length());
+		}
+		childChars = new char[nodeCount][];
+		childNodes = new int[nodeCount][];
+		for(int node = 0; node < nodeCount; node++) {
+			childChars[node] = counts[node] == 0 ? new char[0] : Arrays.copyOf(chars[node], counts[node]);
+			childNodes[node] = counts[node] == 0 ? new int[0] : Arrays.copyOf(nodes[node], counts[node]);
+		}
+		nodeKeys = Arrays.copyOf(nodeValues, nodeCount);
+		keys = Arrays.copyOf(keyList, keyCount);
+		maxLength = longest;
+	}
+
+	/**
+	 * Returns true if the value contains any of the chars.
+	 */
+	private static boolean containsAny(String value, String chars) {
+		for(int i = 0; i < chars.length(); i++) {
+			if(value.indexOf(chars.charAt(i)) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the longest value that starts at pos and ends before end.
+	 *
+	 * @param text the text
+	 * @param pos the start position
+	 * @param end the end position (exclusive)
+	 * @return the packed match, length in chars and key index, or ByteTrie.NO_MATCH
+	 */
+	long longestMatch(CharSequence text, int pos, int end) {
+		int node = 0;
+		int lastLen = 0;
+		int lastKey = ByteTrie.NO_VALUE;
+		for(int i = pos; i < end; i++) {
+			char[] chars = childChars[node];
+			if(chars.length == 0) {
+				break;
+			}
+			int child = Arrays.binarySearch(chars, text.charAt(i));
+			if(child < 0) {
+				break;
+			}
+			node = childNodes[node][child];
+			if(nodeKeys[node] != ByteTrie.NO_VALUE) {
+				lastLen = i - pos + 1;
+				lastKey = nodeKeys[node];
+			}
+		}
+		return lastLen == 0 ? ByteTrie.NO_MATCH : ByteTrie.pack(lastLen, lastKey);
+	}
+
+	/**
+	 * Finds every value that starts at pos and ends before end, shortest first.
+	 *
+	 * @param text the text
+	 * @param pos the start position
+	 * @param end the end position (exclusive)
+	 * @param matches receives the packed matches, at least {@link #maxLength()} long
+	 * @return the number of matches
+	 */
+	int matches(CharSequence text, int pos, int end, long[] matches) {
+		int node = 0;
+		int count = 0;
+		for(int i = pos; i < end; i++) {
+			char[] chars = childChars[node];
+			if(chars.length == 0) {
+				break;
+			}
+			int child = Arrays.binarySearch(chars, text.charAt(i));
+			if(child < 0) {
+				break;
+			}
+			node = childNodes[node][child];
+			if(nodeKeys[node] != ByteTrie.NO_VALUE) {
+				matches[count++] = ByteTrie.pack(i - pos + 1, nodeKeys[node]);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Longest value stored.
+	 *
+	 * @return the length in chars
+	 */
+	int maxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * Gets the key by index, the array must not be modified.
+	 *
+	 * @param keyId the key index
+	 * @return the key
+	 */
+	byte[] key(int keyId) {
+		return keys[keyId];
+	}
+
+}
@@ -78,6 +78,27 @@ public class OffsetEntry implements Comparable<OffsetEntry>, Serializable {
 	/** The end chars. */
 	private List<String> endChars = new ArrayList<>();
 
+	/** Confidence that the entry is text, from 0 to 1, 1 for the entries not scored. */
+	private float confidence = 1;
+
+	/**
+	 * Gets the confidence that the entry is text.
+	 *
+	 * @return the confidence, from 0 to 1
+	 */
+	public float getConfidence() {
+		return confidence;
+	}
+
+	/**
+	 * Sets the confidence that the entry is text.
+	 *
+	 * @param confidence the new confidence, from 0 to 1
+	 */
+	public void setConfidence(float confidence) {
+		this.confidence = confidence;
+	}
+
 	/**
 	 * Instantiates a new offset entry.
 	 */
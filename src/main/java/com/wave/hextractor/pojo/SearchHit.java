@@ -0,0 +1,14 @@
+package com.wave.hextractor.pojo;
+
+import java.util.Comparator;
+
+/**
+ * Offset found by a search and the number of chars matched by every wildcard, 0 if the word has none.
+ * @author slcantero
+ */
+public record SearchHit(int offset, int gapLength) {
+
+	/** Order of the hits, by offset and gap length. */
+	public static final Comparator<SearchHit> ORDER = Comparator.comparingInt(SearchHit::offset)
+			.thenComparingInt(SearchHit::gapLength);
+}
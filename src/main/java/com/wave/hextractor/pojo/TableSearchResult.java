@@ -17,6 +17,12 @@ public class TableSearchResult {
 	/** The word. */
 	private String word;
 
+	/** The chars matched by every wildcard of the word, 0 if it has none. */
+	private int gapLength;
+
+	/** The edit distance to the searched word, 0 for exact searches. */
+	private int distance;
+
 	/**
 	 * Gets the hex table.
 	 *
@@ -71,6 +77,42 @@ public class TableSearchResult {
 		this.word = word;
 	}
 
+	/**
+	 * Gets the chars matched by every wildcard.
+	 *
+	 * @return the gap length, 0 if the word has no wildcards
+	 */
+	public int getGapLength() {
+		return gapLength;
+	}
+
+	/**
+	 * Sets the chars matched by every wildcard.
+	 *
+	 * @param gapLength the new gap length
+	 */
+	public void setGapLength(int gapLength) {
+		this.gapLength = gapLength;
+	}
+
+	/**
+	 * Gets the edit distance to the searched word.
+	 *
+	 * @return the distance, 0 for exact searches
+	 */
+	public int getDistance() {
+		return distance;
+	}
+
+	/**
+	 * Sets the edit distance to the searched word.
+	 *
+	 * @param distance the new distance
+	 */
+	public void setDistance(int distance) {
+		this.distance = distance;
+	}
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
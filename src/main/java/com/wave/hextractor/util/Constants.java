@@ -105,6 +105,9 @@ public class Constants {
 	/** The Constant SPACE_STR. */
 	public static final String SPACE_STR = " ";
 
+	/** The Constant SPACE_CHAR. */
+	public static final char SPACE_CHAR = ' ';
+
 	/** The Constant ADDR_CHAR. */
 	public static final char ADDR_CHAR = '@';
 
@@ -162,6 +165,18 @@ public class Constants {
 	/** The Constant TABLE_SEPARATOR. */
 	public static final String TABLE_SEPARATOR = "=";
 
+	/** The Constant TABLE_SEPARATOR_CHAR. */
+	public static final char TABLE_SEPARATOR_CHAR = '=';
+
+	/** Starts the table lines of the control codes. */
+	public static final char CONTROL_CODE_CHAR = '$';
+
+	/** Starts the parameter placeholders of the control code templates, %1 to %9. */
+	public static final char CONTROL_CODE_PARAM = '%';
+
+	/** Starts the table lines of the table switch codes, "!HEX=table file". */
+	public static final char TABLE_SWITCH_CHAR = '!';
+
 	/** The Constant OFFSET_CHAR_SEPARATOR. */
 	public static final String OFFSET_CHAR_SEPARATOR = "-";
 
@@ -183,6 +198,27 @@ public class Constants {
 	/** The Constant TBL_EXTENSION_REGEX. */
 	public static final String TBL_EXTENSION_REGEX = "[.]tbl";
 
+	/** The Constant TBL_CACHE_EXTENSION. */
+	public static final String TBL_CACHE_EXTENSION = ".tbc";
+
+	/** System property that disables the compiled table cache when set to false. */
+	public static final String TBL_CACHE_PROPERTY = "hextractor.tableCache";
+
+	/** The Constant DICT_INDEX_EXTENSION. */
+	public static final String DICT_INDEX_EXTENSION = ".dix";
+
+	/** System property that disables the compiled dictionary index file when set to false. */
+	public static final String DICT_INDEX_PROPERTY = "hextractor.dictIndex";
+
+	/** The Constant ROM_INDEX_EXTENSION. */
+	public static final String ROM_INDEX_EXTENSION = ".sai";
+
+	/** System property that disables the rom index when set to false. */
+	public static final String ROM_INDEX_PROPERTY = "hextractor.romIndex";
+
+	/** Smaller roms are not indexed, scanning them is fast enough. */
+	public static final int ROM_INDEX_MIN_SIZE = 1 << 20;
+
 	/** The Constant PAD_CHAR. */
 	public static final byte PAD_CHAR = 0;
 
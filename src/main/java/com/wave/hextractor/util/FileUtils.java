@@ -1,12 +1,22 @@
 
 package com.wave.hextractor.util;
 
+import com.wave.hextractor.object.BytePatternMatcher;
+import com.wave.hextractor.object.DictionaryIndex;
+import com.wave.hextractor.object.FuzzySearch;
 import com.wave.hextractor.object.HexTable;
+import com.wave.hextractor.object.MaskedBytePattern;
+import com.wave.hextractor.object.RegexSearch;
+import com.wave.hextractor.object.RelativeSearch;
+import com.wave.hextractor.object.SearchHitBuffer;
+import com.wave.hextractor.object.SuffixArrayIndex;
 import com.wave.hextractor.pojo.FileWithDigests;
 import com.wave.hextractor.pojo.OffsetEntry;
+import com.wave.hextractor.pojo.SearchHit;
 import com.wave.hextractor.pojo.TableSearchResult;
 
 import java.io.*;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -14,6 +24,9 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.regex.Pattern;
 import java.util.zip.CRC32;
 
 import static java.lang.String.format;
@@ -31,6 +44,13 @@ public class FileUtils {
 	// Comma constant for file name parsing
 	public static final String COMMA_THE = ", The";
 
+	// Most byte sequences of the search prefix before shortening it
+	private static final int MAX_SEARCH_PREFIXES = 1024;
+
+	// Byte order arguments of the 16 bit relative search
+	public static final String BYTE_ORDER_BIG_ENDIAN = "be";
+	public static final String BYTE_ORDER_LITTLE_ENDIAN = "le";
+
 	// Extension to system map (dummy, adjust as needed)
 	// public static final Map<String, String> EXTENSION_TO_SYSTEM = new HashMap<>();
 
@@ -350,6 +370,20 @@ public class FileUtils {
 	 * @throws IOException the exception
 	 */
 	public static void insertAsciiAsHex(String firstFile, String secondFile, String thirdFile) throws IOException {
+		insertAsciiAsHex(firstFile, secondFile, thirdFile, HexTable.EncodingMode.GREEDY);
+	}
+
+	/**
+	 * Insert ascii as hex with the encoding mode, the optimal mode logs the bytes saved by every entry.
+	 *
+	 * @param firstFile the first file
+	 * @param secondFile the second file
+	 * @param thirdFile the third file
+	 * @param mode the encoding mode
+	 * @throws IOException the exception
+	 */
+	public static void insertAsciiAsHex(String firstFile, String secondFile, String thirdFile, HexTable.EncodingMode mode)
+			throws IOException {
 		Utils.log(Utils.getMessage("consoleInsertingAsciiFile", secondFile, firstFile, thirdFile));
 		HexTable hexTable = new HexTable(firstFile);
 		String input = getAsciiFile(secondFile);
@@ -357,6 +391,7 @@ public class FileUtils {
 		
 		String[] lines = input.split(Constants.S_NEWLINE);
 		int totalBytesWritten = 0;
+		int totalBytesSaved = 0;
 		int line = 0;
 		while ( line < lines.length) {
 			if (lines[line] != null && lines[line].contains(Constants.ADDR_STR)) {
@@ -380,7 +415,13 @@ public class FileUtils {
 				content.append(lines[line]).append(Constants.S_NEWLINE);
 
 			// Process
-				byte[] hex = hexTable.toHex(content.toString(), entry);
+				int[] saved = new int[1];
+				byte[] hex = hexTable.toHex(content.toString(), entry, mode, bytes -> saved[0] = bytes);
+				if (saved[0] > 0) {
+					totalBytesSaved += saved[0];
+					Utils.log(Utils.getMessage("consoleBytesSaved",
+							Utils.intToHexString(entry.getStart(), Constants.HEX_ADDR_SIZE), valueOf(saved[0])));
+				}
 				if (Utils.isDebug()) {
 					Utils.log(" TO OFFSET: " + Utils.intToHexString(entry.getStart(), Constants.HEX_ADDR_SIZE));
 				}
@@ -398,6 +439,9 @@ public class FileUtils {
 		Utils.log(Utils.getMessage("consoleTotalBytesWritten", 
 			Utils.fillLeft(valueOf(totalBytesWritten), Constants.HEX_ADDR_SIZE),
 			Utils.intToHexString(totalBytesWritten, Constants.HEX_ADDR_SIZE)));
+		if (mode == HexTable.EncodingMode.OPTIMAL) {
+			Utils.log(Utils.getMessage("consoleTotalBytesSaved", valueOf(totalBytesSaved)));
+		}
 		Files.write(Paths.get(thirdFile), outFileBytes);
 	}
 
@@ -423,15 +467,27 @@ public class FileUtils {
 	 * @throws IOException .
 	 */
 	public static String getAsciiFile(String filename) throws IOException {
+		return String.join(String.valueOf(Constants.NEWLINE), java.nio.file.Files.readAllLines(resolveFile(filename)));
+	}
+
+	/**
+	 * Resolves the file as provided or, if it does not exist, against the current working
+	 * directory, the application directory and their parents.
+	 *
+	 * @param filename the filename
+	 * @return the existing path
+	 * @throws IOException if the file is not found
+	 */
+	public static java.nio.file.Path resolveFile(String filename) throws IOException {
 		java.nio.file.Path requested = java.nio.file.Paths.get(filename);
 		// If the path exists as provided (absolute or relative), return it
 		if (java.nio.file.Files.exists(requested)) {
-			return String.join(String.valueOf(Constants.NEWLINE), java.nio.file.Files.readAllLines(requested));
+			return requested;
 		}
 		// Try to find the file by resolving the given path against the current working directory and its parents
 		java.nio.file.Path found = findInParents(requested);
 		if (found != null && java.nio.file.Files.exists(found)) {
-			return String.join(String.valueOf(Constants.NEWLINE), java.nio.file.Files.readAllLines(found));
+			return found;
 		}
 		// Not found: throw IOException similar to Files.readAllLines behavior
 		throw new java.io.IOException("File not found: " + filename);
@@ -484,17 +540,17 @@ public class FileUtils {
 	}
 
 	/**
-	 * Extracts the ascii file.
+	 * Extracts the ascii file, streaming every entry to the output file.
 	 */
 	public static void extractAsciiFile(HexTable hexTable, byte[] fileBytes, String outFile, List<OffsetEntry> offsets,
 			boolean showExtractions, boolean splitLines) throws IOException {
-		StringBuilder fileOut = new StringBuilder();
-		if (offsets != null && !offsets.isEmpty()) {
-			for (OffsetEntry entry : offsets) {
-				fileOut.append(hexTable.toAscii(fileBytes, entry, showExtractions, splitLines));
+		try (Writer out = Files.newBufferedWriter(Paths.get(outFile), StandardCharsets.UTF_8)) {
+			if (offsets != null) {
+				for (OffsetEntry entry : offsets) {
+					hexTable.toAscii(fileBytes, entry, showExtractions, splitLines, out);
+				}
 			}
 		}
-		writeFileAscii(outFile, fileOut.toString());
 	}
 
 	/**
@@ -510,6 +566,28 @@ public class FileUtils {
 				Utils.getLinesCleaned(getAsciiFile(firstFile).split(Constants.S_NEWLINE)).toString());
 	}
 
+	/**
+	 * Logs the offsets of the hex pattern on the file, ? matches any nibble.
+	 *
+	 * @param inputFile the file
+	 * @param hexPattern the hex pattern
+	 * @return the offsets found
+	 * @throws IOException the exception
+	 */
+	public static List<Integer> findHex(String inputFile, String hexPattern) throws IOException {
+		MaskedBytePattern pattern = new MaskedBytePattern(hexPattern);
+		byte[] fileBytes = Files.readAllBytes(Paths.get(inputFile));
+		List<Integer> offsets = pattern.findAll(fileBytes, 0, fileBytes.length);
+		StringBuilder sb = new StringBuilder();
+		sb.append("Found ").append(offsets.size()).append(" matches of ").append(hexPattern).append(" in ")
+				.append(inputFile);
+		for (int offset : offsets) {
+			sb.append(Constants.NEWLINE).append("0x").append(Utils.intToHexString(offset, Constants.HEX_ADDR_SIZE));
+		}
+		Utils.log(sb.toString());
+		return offsets;
+	}
+
 	/**
 	 * Generates a table file for the input string if found on the rom.
 	 *
@@ -521,14 +599,49 @@ public class FileUtils {
 	public static void searchRelative8Bits(String firstFile, String outFilePrefix, String searchString)
 			throws IOException {
 		Utils.log(Utils.getMessage("consoleSearchingRelativeString", searchString, firstFile, outFilePrefix + ".001"));
-		List<TableSearchResult> hexTables = searchRelative8Bits(Files.readAllBytes(Paths.get(firstFile)), searchString);
+		byte[] fileBytes = Files.readAllBytes(Paths.get(firstFile));
+		writeRelativeTables(outFilePrefix, searchRelative8Bits(fileBytes, searchString, 1));
+	}
+
+	/**
+	 * Generates a table file for the input string if found on the rom with 16 bit chars.
+	 *
+	 * @param firstFile .
+	 * @param outFilePrefix .
+	 * @param searchString .
+	 * @param byteOrder be (big endian) or le (little endian).
+	 * @throws IOException the exception
+	 */
+	public static void searchRelative16Bits(String firstFile, String outFilePrefix, String searchString,
+			String byteOrder) throws IOException {
+		ByteOrder order;
+		if (BYTE_ORDER_BIG_ENDIAN.equalsIgnoreCase(byteOrder)) {
+			order = ByteOrder.BIG_ENDIAN;
+		}
+		else if (BYTE_ORDER_LITTLE_ENDIAN.equalsIgnoreCase(byteOrder)) {
+			order = ByteOrder.LITTLE_ENDIAN;
+		}
+		else {
+			throw new IllegalArgumentException("Byte order must be " + BYTE_ORDER_BIG_ENDIAN + " or "
+					+ BYTE_ORDER_LITTLE_ENDIAN + ": " + byteOrder);
+		}
+		Utils.log(Utils.getMessage("consoleSearchingRelativeString", searchString, firstFile, outFilePrefix + ".001"));
+		byte[] fileBytes = Files.readAllBytes(Paths.get(firstFile));
+		writeRelativeTables(outFilePrefix, multiSearchRelative16Bits(fileBytes, searchString, 1, order));
+	}
+
+	/**
+	 * Writes the table of every result, numbered after the result.
+	 */
+	private static void writeRelativeTables(String outFilePrefix, List<TableSearchResult> hexTables)
+			throws IOException {
 		int tablesFound = 1;
-		List<HexTable> usedTables = new ArrayList<>();
+		// The results with the same displacement share the table
+		Set<HexTable> usedTables = Collections.newSetFromMap(new IdentityHashMap<>());
 		for (TableSearchResult t : hexTables) {
-			if (!usedTables.contains(t.getHexTable())) {
+			if (usedTables.add(t.getHexTable())) {
 				writeFileAscii(outFilePrefix + "." + Utils.fillLeft(valueOf(tablesFound), 3),
 						t.getHexTable().toAsciiTable());
-				usedTables.add(t.getHexTable());
 			}
 			tablesFound++;
 		}
@@ -539,100 +652,202 @@ public class FileUtils {
 	 *
 	 * @param fileBytes the file bytes
 	 * @param searchString the search string
+	 * @param expansion number of chars * can represent
 	 * @return list of tables.
 	 */
-	private static List<TableSearchResult> searchRelative8Bits(byte[] fileBytes, String searchString) {
+	private static List<TableSearchResult> searchRelative8Bits(byte[] fileBytes, String searchString, int expansion) {
+		return searchRelative(fileBytes, searchString, new RelativeSearch(searchString, expansion), 1,
+				HexTable::new);
+	}
+
+	/**
+	 * Searches tables that meet the letter correlation for the target phrase.
+	 *
+	 * @param fileBytes the file bytes
+	 * @param searchString the search string
+	 * @param search the compiled search
+	 * @param alignments number of code unit alignments to search, the code unit size
+	 * @param tableFactory table of a displacement
+	 * @return list of tables, ordered by offset.
+	 */
+	private static List<TableSearchResult> searchRelative(byte[] fileBytes, String searchString,
+			RelativeSearch search, int alignments, IntFunction<HexTable> tableFactory) {
 		List<TableSearchResult> res = new ArrayList<>();
-		int wordLength = searchString.length();
-		if (wordLength < Constants.MIN_SEARCH_WORD_LENGTH) {
-			throw new IllegalArgumentException(
-					"Minimal word length / Longitud minima de palabra : " + Constants.MIN_SEARCH_WORD_LENGTH);
-		}
-		byte[] searchBytes = searchString.getBytes(StandardCharsets.US_ASCII);
-		int i = 0;
-		while (i < fileBytes.length - wordLength) {
-			int displacement = searchBytes[0] - fileBytes[i] & Constants.MASK_8BIT;
-			if (equivalentChars(displacement, searchBytes, Arrays.copyOfRange(fileBytes, i, i + wordLength))) {
-				TableSearchResult tr = new TableSearchResult();
-				HexTable ht = new HexTable(displacement);
-				tr.setHexTable(ht);
-				tr.setOffset(i);
-				tr.setWord(searchString);
-				if (!res.contains(tr)) {
-					res.add(tr);
-				}
-				i += wordLength - 1;
-			}
-			if (res.size() > 999) {
-				break;
+		Map<Integer, HexTable> tables = new HashMap<>();
+		for (int alignment = 0; alignment < alignments; alignment++) {
+			for (SearchHit hit : search.find(fileBytes, alignment, search.differences(fileBytes, alignment))) {
+				res.add(toTableResult(tables.computeIfAbsent(search.displacement(fileBytes, hit), tableFactory::apply),
+						searchString, hit));
 			}
-			i++;
+		}
+		if (alignments > 1) {
+			res.sort(Comparator.comparing(TableSearchResult::getOffset)
+					.thenComparingInt(TableSearchResult::getGapLength));
 		}
 		return res;
 	}
 
 	/**
 	 * Searches relative but * can be expanded to up to expansion number of chars.
+	 * Every expansion is found in the same pass over the file.
 	 * @param fileBytes the file bytes
 	 * @param searchString the search string
 	 * @param expansion number of chars * can represent
 	 * @return list of tables.
 	 */
 	public static List<TableSearchResult> multiSearchRelative8Bits(byte[] fileBytes, String searchString, int expansion) {
-		Set<TableSearchResult>  res = new HashSet<>();
-		StringBuilder replacement = new StringBuilder();
-		if(searchString.contains(Constants.STR_ASTER)) {
-			for(int i = 0; i < expansion; i++) {
-				replacement.append(Constants.STR_ASTER);
-				res.addAll(searchRelative8Bits(fileBytes,
-						searchString.replaceAll(Constants.REGEX_STR_ASTER, replacement.toString())));
-			}
-		}
-		else {
-			res.addAll(searchRelative8Bits(fileBytes, searchString));
-		}
-		return new ArrayList<>(res);
+		return searchRelative8Bits(fileBytes, searchString, expansion);
+	}
+
+	/**
+	 * Searches relative with 16 bit chars at both alignments, * can be expanded to up to expansion number
+	 * of chars. The tables found have 16 bit values.
+	 * @param fileBytes the file bytes
+	 * @param searchString the search string
+	 * @param expansion number of chars * can represent
+	 * @param byteOrder byte order of the chars
+	 * @return list of tables, ordered by offset.
+	 */
+	public static List<TableSearchResult> multiSearchRelative16Bits(byte[] fileBytes, String searchString,
+			int expansion, ByteOrder byteOrder) {
+		return searchRelative(fileBytes, searchString, new RelativeSearch(searchString, expansion, byteOrder), 2,
+				displacement -> new HexTable(displacement, byteOrder));
 	}
 
 	/**
-	 * Gets the offsets for the string on the file using the table.
+	 * Gets the offsets for the string on the file using the table, every * matches from 1 to expansion chars.
+	 * The text before the first wildcard, the same for every expansion, is encoded into the byte sequences
+	 * that can decode to it, which are found in a single pass over the file. Only the offsets where one of
+	 * them starts are decoded to check the whole string of every expansion. The sequences are located with
+	 * the rom index if there is one, otherwise the file is scanned in parallel chunks.
 	 * @param fileBytes .
 	 * @param hexTable .
 	 * @param searchString .
 	 * @param ignoreCase .
-	 * @return .
+	 * @param expansion .
+	 * @param index index of the file bytes, null if none.
+	 * @param results receives every hit, ordered by offset and gap length, as soon as the chunks before it are scanned.
 	 * @throws IllegalArgumentException .
 	 */
-	private static List<Integer> findString(byte[] fileBytes, HexTable hexTable, String searchString, boolean ignoreCase) {
-		List<Integer> res = new ArrayList<>();
-		int wordLength = searchString.length();
-		if (ignoreCase) {
-			searchString = searchString.toUpperCase();
-		}
-		if (wordLength < Constants.MIN_SEARCH_WORD_LENGTH) {
+	private static void findString(byte[] fileBytes, HexTable hexTable, String searchString,
+			boolean ignoreCase, int expansion, SuffixArrayIndex index, Consumer<SearchHit> results) {
+		if (searchString.length() < Constants.MIN_SEARCH_WORD_LENGTH) {
 			throw new IllegalArgumentException(
 					"Minimal word length / Longitud minima de palabra : " + Constants.MIN_SEARCH_WORD_LENGTH);
 		}
-		int i = 0;
-		while (i < fileBytes.length - wordLength) {
-			String word = hexTable.toAscii(Arrays.copyOfRange(fileBytes, i, i + wordLength), true);
+		boolean wildcards = searchString.contains(Constants.STR_ASTER);
+		int gaps = wildcards ? Math.max(expansion, 0) : 1;
+		if (gaps == 0) {
+			return;
+		}
+		String[] words = new String[gaps];
+		int[] wordLengths = new int[gaps];
+		for (int g = 0; g < gaps; g++) {
+			String word = Utils.expandWildcards(searchString, g + 1);
+			wordLengths[g] = word.length();
+			words[g] = ignoreCase ? word.toUpperCase() : word;
+		}
+		List<byte[]> prefixes = prefixSequences(hexTable, words[0], wordLengths[0], wordLengths[gaps - 1],
+				ignoreCase);
+		// Offset where the next hit of every gap length can start
+		int[] next = new int[gaps];
+		Consumer<SearchHit> nonOverlapping = hit -> {
+			int g = Math.max(hit.gapLength(), 1) - 1;
+			if (hit.offset() >= next[g]) {
+				results.accept(hit);
+				next[g] = hit.offset() + wordLengths[g];
+			}
+		};
+		if (prefixes != null && index != null && index.isFor(fileBytes)) {
+			for (int i : locate(index, prefixes, fileBytes.length)) {
+				checkString(fileBytes, hexTable, words, wordLengths, ignoreCase, wildcards, i, nonOverlapping);
+			}
+		}
+		else {
+			BytePatternMatcher matcher = prefixes == null ? null : new BytePatternMatcher(prefixes);
+			ScanUtils.scan(fileBytes.length, matcher == null ? 0 : matcher.maxLength() - 1, SearchHit.ORDER,
+					(from, to, end, chunkHits) -> {
+						if (matcher == null) {
+							for (int i = from; i < to; i++) {
+								checkString(fileBytes, hexTable, words, wordLengths, ignoreCase, wildcards, i, chunkHits);
+							}
+							return;
+						}
+						BitSet candidates = new BitSet(to - from);
+						matcher.forEachMatch(fileBytes, from, end, start -> {
+							if (start < to) {
+								candidates.set(start - from);
+							}
+						});
+						for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+							checkString(fileBytes, hexTable, words, wordLengths, ignoreCase, wildcards, from + i,
+									chunkHits);
+						}
+					}, nonOverlapping);
+		}
+	}
+
+	/**
+	 * Reports the gap lengths whose string is found at the offset.
+	 */
+	private static void checkString(byte[] fileBytes, HexTable hexTable, String[] words, int[] wordLengths,
+			boolean ignoreCase, boolean wildcards, int offset, Consumer<SearchHit> results) {
+		for (int g = 0; g < words.length; g++) {
+			int wordLength = wordLengths[g];
+			if (offset >= fileBytes.length - wordLength) {
+				continue;
+			}
+			String word = hexTable.toAscii(Arrays.copyOfRange(fileBytes, offset, offset + wordLength), true);
 			if (ignoreCase) {
 				word = word.toUpperCase();
 			}
-			if (areEqual(searchString, wordLength, word)) {
-				if (!res.contains(i)) {
-					res.add(i);
-				}
-				i += wordLength - 1;
+			if (word.length() >= wordLength && areEqual(words[g], wordLength, word)) {
+				results.accept(new SearchHit(offset, wildcards ? g + 1 : 0));
 			}
-			if (res.size() > 999) {
-				break;
+		}
+	}
+
+	/**
+	 * Offsets where one of the byte sequences starts, located with the index.
+	 *
+	 * @return the offsets, ordered and without duplicates
+	 */
+	private static List<Integer> locate(SuffixArrayIndex index, List<byte[]> sequences, int length) {
+		BitSet offsets = new BitSet(length);
+		for (byte[] sequence : sequences) {
+			for (int offset : index.locate(sequence, 0, length)) {
+				offsets.set(offset);
 			}
-			i++;
+		}
+		List<Integer> res = new ArrayList<>(offsets.cardinality());
+		for (int i = offsets.nextSetBit(0); i >= 0; i = offsets.nextSetBit(i + 1)) {
+			res.add(i);
 		}
 		return res;
 	}
 
+	/**
+	 * Byte sequences of the text before the first wildcard, the search string can start where one of them
+	 * starts. The text is shortened while it has too many sequences.
+	 *
+	 * @return the sequences, null if the text can't be encoded and every offset is a candidate
+	 */
+	private static List<byte[]> prefixSequences(HexTable hexTable, String searchString, int wordLength,
+			int maxBytes, boolean ignoreCase) {
+		int prefixLength = Math.min(wordLength, searchString.length());
+		int wildcard = searchString.indexOf(Constants.CHR_ASTER);
+		if (wildcard >= 0 && wildcard < prefixLength) {
+			prefixLength = wildcard;
+		}
+		List<byte[]> prefixes = null;
+		while (prefixLength > 0 && prefixes == null) {
+			prefixes = hexTable.toHexPrefixes(searchString.substring(0, prefixLength), ignoreCase, maxBytes,
+					MAX_SEARCH_PREFIXES);
+			prefixLength--;
+		}
+		return prefixes;
+	}
+
 	private static boolean areEqual(String searchString, int wordLength, String word) {
 		boolean areEqual = true;
 		for (int j = 0; j < wordLength; j++) {
@@ -646,6 +861,7 @@ public class FileUtils {
 
 	/**
 	 * Searches but * can be expanded to up to expansion number of chars.
+	 * Every expansion is found in the same pass over the file.
 	 * @param fileBytes .
 	 * @param hexTable .
 	 * @param searchString .
@@ -656,58 +872,134 @@ public class FileUtils {
 	 */
 	public static List<TableSearchResult> multiFindString(byte[] fileBytes, HexTable hexTable, String searchString,
 			boolean ignoreCase, int expansion) {
+		return multiFindString(fileBytes, hexTable, searchString, ignoreCase, expansion, null);
+	}
+
+	/**
+	 * Searches but * can be expanded to up to expansion number of chars, using the index of the file bytes.
+	 * @param fileBytes .
+	 * @param hexTable .
+	 * @param searchString .
+	 * @param ignoreCase .
+	 * @param expansion .
+	 * @param index index of the file bytes, null to scan them.
+	 * @return .
+	 * @throws IllegalArgumentException .
+	 */
+	public static List<TableSearchResult> multiFindString(byte[] fileBytes, HexTable hexTable, String searchString,
+			boolean ignoreCase, int expansion, SuffixArrayIndex index) {
 		List<TableSearchResult> res = new ArrayList<>();
-		if (searchString.contains(Constants.STR_ASTER)) {
-			StringBuilder replacement = new StringBuilder();
-			for (int i = 0; i < expansion; i++) {
-				replacement.append(Constants.STR_ASTER);
-				String searchStrRep = searchString.replaceAll(Constants.REGEX_STR_ASTER, replacement.toString());
-				res.addAll(toTableResults(hexTable, searchStrRep,
-						findString(fileBytes, hexTable, searchStrRep, ignoreCase)));
-			}
-		}
-		else {
-			res.addAll(
-					toTableResults(hexTable, searchString, findString(fileBytes, hexTable, searchString, ignoreCase)));
-		}
-		return new ArrayList<>(res);
+		findString(fileBytes, hexTable, searchString, ignoreCase, expansion, index,
+				hit -> res.add(toTableResult(hexTable, searchString, hit)));
+		return res;
+	}
+
+	/**
+	 * Searches but * can be expanded to up to expansion number of chars, keeping every hit in a buffer
+	 * instead of building a result per hit.
+	 * @param fileBytes .
+	 * @param hexTable .
+	 * @param searchString .
+	 * @param ignoreCase .
+	 * @param expansion .
+	 * @param index index of the file bytes, null to scan them.
+	 * @return the hits, ordered by offset and gap length.
+	 * @throws IllegalArgumentException .
+	 */
+	public static SearchHitBuffer findStringHits(byte[] fileBytes, HexTable hexTable, String searchString,
+			boolean ignoreCase, int expansion, SuffixArrayIndex index) {
+		SearchHitBuffer res = new SearchHitBuffer();
+		findString(fileBytes, hexTable, searchString, ignoreCase, expansion, index, res);
+		return res;
+	}
+
+	/**
+	 * To table result, the word is the search string with the wildcards expanded to the gap length.
+	 * @param hexTable the table
+	 * @param searchString the search string
+	 * @param hit the hit
+	 * @return the result
+	 */
+	public static TableSearchResult toTableResult(HexTable hexTable, String searchString, SearchHit hit) {
+		TableSearchResult tsr = new TableSearchResult();
+		tsr.setHexTable(hexTable);
+		tsr.setOffset(hit.offset());
+		tsr.setWord(Utils.expandWildcards(searchString, hit.gapLength()));
+		tsr.setGapLength(hit.gapLength());
+		return tsr;
 	}
 
 	/**
-	 * To table results.
-	 * @return the list
+	 * Searches the strings within maxDistance edits of the search string, the best ones first.
+	 * @param fileBytes .
+	 * @param hexTable .
+	 * @param searchString .
+	 * @param ignoreCase .
+	 * @param maxDistance max number of inserted, deleted or replaced chars.
+	 * @return the results ordered by distance and offset.
+	 * @throws IllegalArgumentException .
 	 */
-	private static List<TableSearchResult> toTableResults(HexTable hexTable, String searchString,
-														  List<Integer> list) {
-		List<TableSearchResult> searchRes = new ArrayList<>();
-		for (Integer res : list) {
+	public static List<TableSearchResult> fuzzyFindString(byte[] fileBytes, HexTable hexTable, String searchString,
+			boolean ignoreCase, int maxDistance) {
+		List<TableSearchResult> res = new ArrayList<>();
+		for (FuzzySearch.Match match : new FuzzySearch(searchString, maxDistance, ignoreCase)
+				.find(fileBytes, hexTable, Integer.MAX_VALUE)) {
 			TableSearchResult tsr = new TableSearchResult();
 			tsr.setHexTable(hexTable);
-			tsr.setOffset(res);
-			tsr.setWord(searchString);
-			searchRes.add(tsr);
+			tsr.setOffset(match.offset());
+			tsr.setWord(match.text());
+			tsr.setDistance(match.distance());
+			res.add(tsr);
 		}
-		return searchRes;
+		return res;
 	}
 
 	/**
-	 * Equivalent chars.
+	 * Logs the strings of the file within maxDistance edits of the search string, the best ones first.
 	 *
-	 * @param displacement the displacement
-	 * @param searchBytes the search bytes
-	 * @param fileBytes the file bytes
-	 * @return true, if successful
+	 * @param tableFile the table file
+	 * @param inputFile the file
+	 * @param searchString the search string
+	 * @param maxDistance max number of inserted, deleted or replaced chars
+	 * @return the results
+	 * @throws IOException the exception
 	 */
-	private static boolean equivalentChars(int displacement, byte[] searchBytes, byte[] fileBytes) {
-		boolean res = true;
-		for (int i = 0; i < searchBytes.length; i++) {
-			if (searchBytes[i] != Constants.BYTE_ASTER
-					&& (searchBytes[i] & Constants.MASK_8BIT) != (fileBytes[i] + displacement & Constants.MASK_8BIT)) {
-				res = false;
-				break;
-			}
+	public static List<TableSearchResult> fuzzyFindString(String tableFile, String inputFile, String searchString,
+			int maxDistance) throws IOException {
+		List<TableSearchResult> results = fuzzyFindString(Files.readAllBytes(Paths.get(inputFile)),
+				new HexTable(tableFile), searchString, true, maxDistance);
+		StringBuilder sb = new StringBuilder();
+		sb.append("Found ").append(results.size()).append(" matches of ").append(searchString).append(" in ")
+				.append(inputFile);
+		for (TableSearchResult result : results) {
+			sb.append(Constants.NEWLINE).append("0x").append(Utils.intToHexString(result.getOffset(), Constants.HEX_ADDR_SIZE))
+					.append(" (").append(result.getDistance()).append(") ").append(result.getWord());
 		}
-		return res;
+		Utils.log(sb.toString());
+		return results;
+	}
+
+	/**
+	 * Logs the matches of the regular expression in the text of the file decoded with the table.
+	 *
+	 * @param tableFile the table file
+	 * @param inputFile the file
+	 * @param regex the regular expression
+	 * @return the matches
+	 * @throws IOException the exception
+	 */
+	public static List<RegexSearch.Match> findRegex(String tableFile, String inputFile, String regex)
+			throws IOException {
+		List<RegexSearch.Match> matches = new RegexSearch(Files.readAllBytes(Paths.get(inputFile)))
+				.find(new HexTable(tableFile), Pattern.compile(regex));
+		StringBuilder sb = new StringBuilder();
+		sb.append("Found ").append(matches.size()).append(" matches of ").append(regex).append(" in ")
+				.append(inputFile);
+		for (RegexSearch.Match match : matches) {
+			sb.append(Constants.NEWLINE).append(match.toOffsetEntry().toString()).append(' ').append(match.text());
+		}
+		Utils.log(sb.toString());
+		return matches;
 	}
 
 	/**
@@ -737,6 +1029,22 @@ public class FileUtils {
 	 */
 	public static void searchAllStrings(String tableFile, String dataFile, int numIgnoredChars, String endChars,
 			String dictFile) throws IOException {
+		searchAllStrings(tableFile, dataFile, numIgnoredChars, endChars, dictFile, 0);
+	}
+
+	/**
+	 * Searches all the strings on the rom for the given table, dropping the ones that do not look like text.
+	 *
+	 * @param tableFile the table file
+	 * @param dataFile the data file
+	 * @param numIgnoredChars the num ignored chars
+	 * @param endChars the end chars
+	 * @param dictFile the dict file
+	 * @param minConfidence the min confidence of the dictionary text model, from 0 to 1, 0 keeps all
+	 * @throws IOException the exception
+	 */
+	public static void searchAllStrings(String tableFile, String dataFile, int numIgnoredChars, String endChars,
+			String dictFile, float minConfidence) throws IOException {
 		String extractFile = dataFile + Constants.EXTRACT_EXTENSION;
 		// Java 21 Text Block
 		Utils.log("""
@@ -744,12 +1052,13 @@ public class FileUtils {
 				 using "%s"
 				 numIgnoredChars: %d
 				 endChars: %s
-				 dictionary: %s""".formatted(
+				 dictionary: %s
+				 minConfidence: %s""".formatted(
 				   dataFile, Constants.FILE_SEPARATOR, extractFile,
 				extractFile, Constants.OFFSET_EXTENSION,
-				tableFile, numIgnoredChars, endChars, dictFile));
+				tableFile, numIgnoredChars, endChars, dictFile, minConfidence));
 		searchAllStrings(new HexTable(tableFile), Files.readAllBytes(Paths.get(dataFile)), numIgnoredChars, endChars,
-				dictFile, dataFile + Constants.EXTRACT_EXTENSION);
+				dictFile, minConfidence, dataFile + Constants.EXTRACT_EXTENSION);
 	}
 
 	/**
@@ -757,13 +1066,52 @@ public class FileUtils {
 	 */
 	public static void searchAllStrings(HexTable hexTable, byte[] fileBytes, int numIgnoredChars, String endChars,
 										String dictFile, String extractFile) throws IOException {
-		String entries = hexTable.getAllEntries(fileBytes,
-				Constants.MIN_NUM_CHARS_WORD, numIgnoredChars, Arrays.asList(endChars.toUpperCase()
-						.replace(Constants.SPACE_STR, Constants.EMPTY).split(Constants.OFFSET_CHAR_SEPARATOR)),
-				dictFile);
-		if (entries != null && entries.length() > 0) {
-			extractAsciiFile(hexTable, fileBytes, extractFile, entries, false, true);
+		searchAllStrings(hexTable, fileBytes, numIgnoredChars, endChars, dictFile, 0, extractFile);
+	}
+
+	/**
+	 * Searches all the strings on the rom for the given table, the entries below the min confidence
+	 * are dropped before the extraction.
+	 */
+	public static void searchAllStrings(HexTable hexTable, byte[] fileBytes, int numIgnoredChars, String endChars,
+			String dictFile, float minConfidence, String extractFile) throws IOException {
+		DictionaryIndex dict = DictionaryIndex.load(resolveFile(dictFile));
+		int[] found = {0};
+		// The extraction and the offsets, created with the first entry found, nothing is written if there is none
+		Writer[] writers = new Writer[2];
+		try {
+			hexTable.searchAllEntries(fileBytes, Constants.MIN_NUM_CHARS_WORD, numIgnoredChars,
+					Arrays.asList(endChars.toUpperCase().replace(Constants.SPACE_STR, Constants.EMPTY)
+							.split(Constants.OFFSET_CHAR_SEPARATOR)),
+					dict, dict.model(), minConfidence, true, percent -> { }, entry -> {
+						try {
+							if (found[0]++ == 0) {
+								writers[0] = Files.newBufferedWriter(Paths.get(extractFile), StandardCharsets.UTF_8);
+								writers[1] = Files.newBufferedWriter(Paths.get(extractFile + Constants.OFFSET_EXTENSION),
+										StandardCharsets.UTF_8);
+							}
+							else {
+								writers[1].write(Constants.OFFSET_STR_SEPARATOR);
+							}
+							writers[1].write(entry.toEntryString());
+							hexTable.toAscii(fileBytes, entry, false, true, writers[0]);
+						}
+						catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					});
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		finally {
+			for (Writer writer : writers) {
+				if (writer != null) {
+					writer.close();
+				}
+			}
 		}
+		Utils.log("Found " + found[0] + " strings.");
 	}
 
 	/**
@@ -104,6 +104,9 @@ public class KeyConstants {
 	/** The Constant KEY_FIND_HEX_MENUITEM. */
 	public static final String KEY_FIND_HEX_MENUITEM = "findHexMenuItem";
 
+	/** The Constant KEY_FIND_REGEX_MENUITEM. */
+	public static final String KEY_FIND_REGEX_MENUITEM = "findRegexMenuItem";
+
 	/** The Constant KEY_FIND_POINTERS_MENUITEM. */
 	public static final String KEY_FIND_POINTERS_MENUITEM = "findPointersMenuItem";
 
@@ -146,6 +149,9 @@ public class KeyConstants {
 	/** The Constant KEY_FIND_HEX. */
 	public static final String KEY_FIND_HEX = "findHex";
 
+	/** The Constant KEY_FIND_REGEX. */
+	public static final String KEY_FIND_REGEX = "findRegex";
+
 	/** The Constant KEY_FIND. */
 	public static final String KEY_FIND = "find";
 
@@ -0,0 +1,222 @@
+package com.wave.hextractor.util;
+
+import com.wave.hextractor.object.BytePatternMatcher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Parallel scans of the rom.
+ * <p>
+ * The range to scan is split into chunks that are scanned on the common fork/join pool. Every chunk
+ * can read overlap bytes past its end, pattern length minus one, so the matches that cross a chunk
+ * boundary are found by the chunk where they start. The results of every chunk are sorted and passed on
+ * in chunk order, dropping duplicates.
+ * @author slcantero
+ */
+public class ScanUtils {
+
+	/** Minimal chunk size, smaller ranges are scanned by the calling thread. */
+	static final int MIN_CHUNK_SIZE = 1 << 16;
+
+	/** Chunks per worker of the pool, to balance the load. */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	/** Chunks per worker of the pool scanned ahead of the first unfinished one by the streaming scans. */
+	private static final int CHUNKS_AHEAD_PER_THREAD = 2;
+
+	/**
+	 * Scans a chunk of the range.
+	 *
+	 * @param <T> the type of the results
+	 */
+	@FunctionalInterface
+	public interface ChunkScanner<T> {
+
+		/**
+		 * Reports the matches that start between from and to (exclusive).
+		 *
+		 * @param from the chunk start
+		 * @param to the chunk end (exclusive)
+		 * @param end the end of the bytes that can be read (exclusive), to plus the overlap, at most the length
+		 * @param results receives the matches, in any order
+		 */
+		void scan(int from, int to, int end, Consumer<T> results);
+	}
+
+	/**
+	 * Instantiates a new scan utils.
+	 */
+	private ScanUtils() {
+	}
+
+	/**
+	 * Scans the range from 0 to length in parallel chunks.
+	 *
+	 * @param <T> the type of the results
+	 * @param length the length of the range
+	 * @param overlap the bytes that every chunk can read past its end
+	 * @param order the order of the results, the equal ones are reported once
+	 * @param scanner the chunk scanner
+	 * @return the results, ordered
+	 */
+	public static <T> List<T> scan(int length, int overlap, Comparator<? super T> order, ChunkScanner<T> scanner) {
+		return scan(length, overlap, chunkSize(length), order, scanner);
+	}
+
+	/**
+	 * Scans the range from 0 to length in parallel chunks of the given size.
+	 */
+	static <T> List<T> scan(int length, int overlap, int chunkSize, Comparator<? super T> order,
+			ChunkScanner<T> scanner) {
+		List<T> res = new ArrayList<>();
+		scan(length, overlap, chunkSize, order, scanner, res::add);
+		return res;
+	}
+
+	/**
+	 * Scans the range from 0 to length in parallel chunks, passing the results on in order as soon as
+	 * the chunks before them end. Only a few chunks ahead of the first unfinished one are scanned at
+	 * once, so the results kept do not grow with the results found.
+	 *
+	 * @param <T> the type of the results
+	 * @param length the length of the range
+	 * @param overlap the bytes that every chunk can read past its end
+	 * @param order the order of the results, the equal ones are reported once
+	 * @param scanner the chunk scanner
+	 * @param results receives the results in order, on the calling thread
+	 */
+	public static <T> void scan(int length, int overlap, Comparator<? super T> order, ChunkScanner<T> scanner,
+			Consumer<? super T> results) {
+		scan(length, overlap, chunkSize(length), order, scanner, results);
+	}
+
+	/**
+	 * Scans the range from 0 to length in parallel chunks of the given size, passing the results on in order.
+	 */
+	static <T> void scan(int length, int overlap, int chunkSize, Comparator<? super T> order,
+			ChunkScanner<T> scanner, Consumer<? super T> results) {
+		int chunks = length <= 0 ? 0 : (int) ((length - 1L) / chunkSize + 1);
+		IntFunction<List<T>> scanChunk = chunk -> {
+			int from = chunk * chunkSize;
+			int to = (int) Math.min(length, (long) from + chunkSize);
+			List<T> res = new ArrayList<>();
+			scanner.scan(from, to, (int) Math.min(length, (long) to + Math.max(overlap, 0)), res::add);
+			res.sort(order);
+			return res;
+		};
+		AtomicReference<T> last = new AtomicReference<>();
+		inOrder(chunks, scanChunk, chunkResults -> last.set(report(chunkResults, last.get(), order, results)));
+	}
+
+	/**
+	 * Runs the chunk tasks in parallel on the common fork/join pool, passing their results on in chunk
+	 * order as soon as the chunks before them end. Only a few chunks ahead of the first unfinished one
+	 * run at once, a single chunk is run by the calling thread.
+	 *
+	 * @param <R> the type of the result of a chunk
+	 * @param chunks the number of chunks
+	 * @param task runs the chunk
+	 * @param results receives the result of every chunk in order, on the calling thread
+	 */
+	public static <R> void inOrder(int chunks, IntFunction<R> task, Consumer<? super R> results) {
+		if (chunks == 1) {
+			results.accept(task.apply(0));
+			return;
+		}
+		int window = ForkJoinPool.getCommonPoolParallelism() * CHUNKS_AHEAD_PER_THREAD;
+		Deque<ForkJoinTask<R>> running = new ArrayDeque<>();
+		int submitted = 0;
+		try {
+			for (int chunk = 0; chunk < chunks; chunk++) {
+				while (submitted < chunks && submitted - chunk < window) {
+					int next = submitted++;
+					running.add(ForkJoinPool.commonPool().submit(() -> task.apply(next)));
+				}
+				results.accept(running.poll().join());
+			}
+		}
+		finally {
+			running.forEach(pending -> pending.cancel(false));
+		}
+	}
+
+	/**
+	 * Chunk size of a scan of the length, so every worker of the pool scans a few chunks.
+	 *
+	 * @param length the length of the range
+	 * @return the chunk size, the whole length is one chunk if it is not larger
+	 */
+	public static int chunkSize(int length) {
+		int parallelism = ForkJoinPool.getCommonPoolParallelism();
+		return Math.max(MIN_CHUNK_SIZE, length / (parallelism * CHUNKS_PER_THREAD) + 1);
+	}
+
+	/**
+	 * Reports the ordered results of a chunk after the last result reported, the ones that do not
+	 * follow it were already reported by the chunk before.
+	 *
+	 * @return the last result reported
+	 */
+	private static <T> T report(List<T> chunkResults, T last, Comparator<? super T> order,
+			Consumer<? super T> results) {
+		T res = last;
+		for (T result : chunkResults) {
+			if (res == null || order.compare(res, result) < 0) {
+				results.accept(result);
+				res = result;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Finds every occurrence of the pattern that lies between from and to (exclusive).
+	 *
+	 * @param data the data
+	 * @param pattern the pattern
+	 * @param from the start offset
+	 * @param to the end offset (exclusive)
+	 * @return the start offsets of the occurrences, ordered
+	 */
+	public static List<Integer> findAll(byte[] data, byte[] pattern, int from, int to) {
+		int start = Math.max(from, 0);
+		int end = Math.min(to, data.length);
+		if (pattern.length == 0 || end - start < pattern.length) {
+			return new ArrayList<>();
+		}
+		BytePatternMatcher matcher = new BytePatternMatcher(List.of(pattern));
+		return findStarts(start, end, pattern.length, (chunkFrom, chunkTo, chunkEnd, results) ->
+				matcher.forEachMatch(data, chunkFrom, chunkEnd, results::accept));
+	}
+
+	/**
+	 * Finds the occurrences of a pattern of the length between from and to (exclusive) in parallel chunks
+	 * of start offsets. Every chunk can read the pattern length minus one bytes past its last start, so the
+	 * occurrences that end at to are found too.
+	 *
+	 * @param from the start offset
+	 * @param to the end offset (exclusive)
+	 * @param patternLength the pattern length
+	 * @param scanner reports the occurrences that start between its from and to (exclusive), reading up to
+	 * its end, all of them offsets of the data
+	 * @return the start offsets of the occurrences, ordered
+	 */
+	public static List<Integer> findStarts(int from, int to, int patternLength, ChunkScanner<Integer> scanner) {
+		int starts = to - from - patternLength + 1;
+		if (patternLength <= 0 || starts <= 0) {
+			return new ArrayList<>();
+		}
+		return scan(starts, 0, Comparator.naturalOrder(), (chunkFrom, chunkTo, chunkEnd, results) ->
+				scanner.scan(from + chunkFrom, from + chunkTo, from + chunkTo + patternLength - 1, results));
+	}
+
+}
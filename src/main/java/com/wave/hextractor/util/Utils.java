@@ -409,6 +409,18 @@ public class Utils {
 		return num;
 	}
 
+	/**
+	 * Replaces every wildcard of the search string with gapLength wildcards.
+	 *
+	 * @param searchString the search string
+	 * @param gapLength the chars matched by every wildcard
+	 * @return the expanded search string
+	 */
+	public static String expandWildcards(String searchString, int gapLength) {
+		return gapLength <= 1 ? searchString
+				: searchString.replace(Constants.STR_ASTER, Constants.STR_ASTER.repeat(gapLength));
+	}
+
 	/**
 	 * Translates an array of hex values to int values.
 	 *
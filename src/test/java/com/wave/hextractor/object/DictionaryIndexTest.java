@@ -0,0 +1,80 @@
+package com.wave.hextractor.object;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DictionaryIndexTest {
+
+    private static List<String> randomWords(long seed, int count) {
+        Random random = new Random(seed);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            char[] chars = new char[1 + random.nextInt(10)];
+            for (int c = 0; c < chars.length; c++) {
+                chars[c] = (char) ('a' + random.nextInt(26));
+            }
+            words.add(new String(chars));
+        }
+        return words;
+    }
+
+    @Test
+    public void contains() {
+        List<String> words = randomWords(23, 5000);
+        words.addAll(Arrays.asList("it's", "año", "日本語", ""));
+        DictionaryIndex index = DictionaryIndex.of(words);
+        for (String word : words) {
+            assertTrue(index.contains(word), word);
+        }
+        for (String word : randomWords(24, 5000)) {
+            assertEquals(words.contains(word), index.contains(new StringBuilder(word)), word);
+        }
+        assertFalse(index.contains("ano"));
+        assertFalse(index.contains("日本"));
+        assertFalse(index.contains("it'"));
+
+        // The hash grows a char at a time
+        long hash = DictionaryIndex.EMPTY_HASH;
+        for (char c : "año".toCharArray()) {
+            hash = DictionaryIndex.hash(hash, c);
+        }
+        assertEquals(DictionaryIndex.hash("año"), hash);
+        assertTrue(index.contains(hash, "año"));
+        assertFalse(DictionaryIndex.of(List.of()).contains("word"));
+    }
+
+    @Test
+    public void load(@TempDir Path dir) throws IOException {
+        Path dictFile = dir.resolve("EngDict.txt");
+        Files.write(dictFile, Arrays.asList("hello", "world", "año"), StandardCharsets.UTF_8);
+        DictionaryIndex index = DictionaryIndex.load(dictFile);
+        assertTrue(Files.exists(DictionaryIndex.indexFile(dictFile)));
+        assertEquals(3, index.size());
+
+        // Loaded from the index file
+        DictionaryIndex cached = DictionaryIndex.load(dictFile);
+        assertEquals(3, cached.size());
+        assertTrue(cached.contains("año"));
+        assertTrue(cached.contains("world"));
+        assertFalse(cached.contains("worlds"));
+
+        // A changed dictionary is parsed again
+        Files.write(dictFile, Arrays.asList("hello", "worlds"), StandardCharsets.UTF_8);
+        DictionaryIndex changed = DictionaryIndex.load(dictFile);
+        assertEquals(2, changed.size());
+        assertTrue(changed.contains("worlds"));
+        assertFalse(changed.contains("world"));
+    }
+
+}
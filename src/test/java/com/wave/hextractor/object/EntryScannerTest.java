@@ -0,0 +1,204 @@
+package com.wave.hextractor.object;
+
+import com.wave.hextractor.pojo.OffsetEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EntryScannerTest {
+
+    private static final DictionaryIndex DICT = DictionaryIndex.of(List.of("hello", "world", "suborner", "kionotomy"));
+
+    private static final String[] WORDS = {"hello", "world", "suborner", "kionotomy", "the", "cat", "a", "HELLO"};
+
+    private static HexTable table() {
+        HexTable kana = new HexTable(Arrays.asList("61=a", "62=b", "20= "));
+        HexTable table = new HexTable(Arrays.asList("20= ", "2E=.", "0A=\n", "$F0=col %1", "6865=he"));
+        for (char c = 'a'; c <= 'z'; c++) {
+            table.addToTable((byte) c, String.valueOf(c));
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            table.addToTable((byte) c, String.valueOf(c));
+        }
+        table.addTableSwitch(new byte[]{(byte) 0xF8}, "kana", kana);
+        kana.addTableSwitch(new byte[]{(byte) 0xF9}, "main", table);
+        return table;
+    }
+
+    private static byte[] randomData(long seed, int length) {
+        Random random = new Random(seed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        while (out.size() < length) {
+            int kind = random.nextInt(12);
+            if (kind < 5) {
+                out.writeBytes(WORDS[random.nextInt(WORDS.length)].getBytes(StandardCharsets.US_ASCII));
+            } else if (kind < 7) {
+                out.write(0x20);
+            } else if (kind < 8) {
+                out.write(new int[]{0xF0, 0xF8, 0xF9, 0x2E, 0x0A, 0x0D}[random.nextInt(6)]);
+            } else if (kind < 10) {
+                out.write(random.nextInt(256));
+            } else {
+                // Padding runs, the longer ones are split points
+                out.writeBytes(new byte[random.nextInt(24)]);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static List<OffsetEntry> sequentialScan(EntryScanner scanner, int length) {
+        List<OffsetEntry> res = new ArrayList<>();
+        scanner.scan(0, length - 4, Thread.currentThread(), bytes -> {}, res::add);
+        return res;
+    }
+
+    private static final String[] TEXT = {"castle", "princess", "sword", "dragon", "the", "of", "a", "Kingdom", "xq"};
+
+    private static HexTable textTable() {
+        List<String> lines = new ArrayList<>(List.of("20= ", "2E=.", "21=!", "8081=the "));
+        for (char c = 'a'; c <= 'z'; c++) {
+            lines.add(String.format("%02X=%c", (int) c, c));
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            lines.add(String.format("%02X=%c", (int) c, c));
+        }
+        return new HexTable(lines);
+    }
+
+    private static byte[] textData(long seed, int length) {
+        Random random = new Random(seed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        while (out.size() < length) {
+            int kind = random.nextInt(10);
+            if (kind < 4) {
+                out.writeBytes(TEXT[random.nextInt(TEXT.length)].getBytes(StandardCharsets.US_ASCII));
+            } else if (kind < 6) {
+                out.write(0x20);
+            } else if (kind < 7) {
+                out.writeBytes(new byte[][]{{(byte) 0x80, (byte) 0x81}, {0x2E}, {0x21}, {(byte) 0x80}}[random.nextInt(4)]);
+            } else if (kind < 9) {
+                // No carriage returns, the old search removed them shifting the offsets
+                int b = random.nextInt(256);
+                out.write(b == 0x0D ? 0 : b);
+            } else {
+                out.writeBytes(new byte[random.nextInt(6)]);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void sameEntriesAsBeforeTheScanner(@TempDir Path dir) throws IOException {
+        Path dictFile = dir.resolve("dict.txt");
+        Files.write(dictFile, List.of("castle", "princess", "sword", "dragon", "kingdom"));
+        byte[] data = textData(21, 1500);
+        // Output of the search all loop before the entry scanner
+        assertEquals("00000001-00000010-00,00000011-00000064-00,000000AF-0000010C-00,0000011D-000001A8-00,"
+                        + "000001D9-0000023C-00,0000028E-000002CB-00,000002CE-000002DB-00,00000306-0000034D-00,"
+                        + "0000037E-00000389-00,0000038A-000003AF-00,000003B1-000003CC-00,000004B0-000004B8-00,"
+                        + "000004BB-000004ED-00,000004F2-00000500-00,00000501-0000050C-00,00000564-000005B5-00,"
+                        + "000005B7-000005CF-00,000005D0-000005DB-00,",
+                textTable().getAllEntries(data, 4, 2, List.of("00"), dictFile.toString(), true));
+        assertEquals("00000001-00000010-00,00000044-00000064-00,000000AF-000000F0-00,0000011D-00000140-00,"
+                        + "00000141-0000015D-00,0000015F-000001A8-00,000001C2-000001C9-00,000001D9-0000023C-00,"
+                        + "0000028E-000002CB-00,000002CE-000002DB-00,00000306-00000348-00,0000037E-00000389-00,"
+                        + "0000038A-000003AF-00,000003B1-000003CC-00,000004B0-000004B8-00,000004BB-000004ED-00,"
+                        + "000004F2-00000500-00,00000501-0000050C-00,00000564-000005B5-00,000005B7-000005CF-00,"
+                        + "000005D0-000005DB-00,",
+                textTable().getAllEntries(data, 4, 2, List.of("00"), dictFile.toString(), false));
+    }
+
+    @Test
+    public void carriageReturns() {
+        byte[] text = "the princess and the castle".getBytes(StandardCharsets.US_ASCII);
+        byte[] data = new byte[64];
+        System.arraycopy(text, 0, data, 10, 4);
+        data[14] = 0x0D;
+        System.arraycopy(text, 4, data, 15, text.length - 4);
+        DictionaryIndex dict = DictionaryIndex.of(List.of("princess", "castle"));
+        // The carriage returns are skipped in multi-byte mode, the offsets are the ones of the data
+        List<OffsetEntry> entries = textTable().searchAllEntries(data, 4, 1, List.of("00"), dict, dict.model(), 0,
+                true, percent -> {});
+        assertEquals(1, entries.size());
+        assertEquals(10, entries.get(0).getStart());
+        assertEquals(10 + text.length + 2, entries.get(0).getEnd());
+        // A multi-byte mapping is not split by a carriage return
+        data[12] = (byte) 0x80;
+        data[13] = 0x0D;
+        data[14] = (byte) 0x81;
+        entries = textTable().searchAllEntries(data, 4, 1, List.of("00"), dict, dict.model(), 0, true,
+                percent -> {});
+        assertEquals(1, entries.size());
+        assertEquals(15, entries.get(0).getStart());
+    }
+
+    @Test
+    public void parallelScan() {
+        HexTable table = table();
+        byte[] data = randomData(22, 1 << 20);
+        for (int ignored = 0; ignored < 3; ignored++) {
+            for (boolean multibyte : new boolean[]{true, false}) {
+                EntryScanner scanner = new EntryScanner(table, data, 4, ignored, List.of("00"), DICT, DICT.model(), 0,
+                        multibyte);
+                List<OffsetEntry> sequential = sequentialScan(scanner, data.length);
+                // Streamed in order on the calling thread
+                Thread caller = Thread.currentThread();
+                List<OffsetEntry> parallel = new ArrayList<>();
+                scanner.scan(percent -> {}, entry -> {
+                    assertSame(caller, Thread.currentThread());
+                    parallel.add(entry);
+                });
+                assertFalse(sequential.isEmpty());
+                assertEquals(sequential.size(), parallel.size());
+                for (int i = 0; i < sequential.size(); i++) {
+                    assertEquals(sequential.get(i).toEntryString(), parallel.get(i).toEntryString(), "entry " + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void confidence() {
+        HexTable table = new HexTable(0);
+        byte[] text = "hello world and the world of suborner".getBytes(StandardCharsets.US_ASCII);
+        byte[] junk = "xq hello zzkx qwv jjk".getBytes(StandardCharsets.US_ASCII);
+        byte[] data = new byte[200];
+        System.arraycopy(text, 0, data, 10, text.length);
+        System.arraycopy(junk, 0, data, 100, junk.length);
+        DictionaryIndex dict = DictionaryIndex.of(List.of("hello", "world", "and", "the", "of", "suborner"));
+        List<OffsetEntry> all = new EntryScanner(table, data, 4, 1, List.of("00"), dict, dict.model(), 0, true)
+                .scan(percent -> {});
+        assertEquals(2, all.size());
+        float textConfidence = all.get(0).getConfidence();
+        float junkConfidence = all.get(1).getConfidence();
+        assertTrue(textConfidence > junkConfidence, textConfidence + " " + junkConfidence);
+        float threshold = (textConfidence + junkConfidence) / 2;
+        List<OffsetEntry> pruned = new EntryScanner(table, data, 4, 1, List.of("00"), dict, dict.model(), threshold,
+                true).scan(percent -> {});
+        assertEquals(List.of(all.get(0)), pruned);
+    }
+
+    @Test
+    public void parallelScanWithoutSplitPoints() {
+        // Every byte is mapped, the data is scanned as one chunk
+        HexTable table = new HexTable();
+        for (int b = 0; b < 0x100; b++) {
+            table.addToTable((byte) b, String.valueOf((char) Math.max(b, ' ')));
+        }
+        byte[] data = randomData(23, 1 << 18);
+        EntryScanner scanner = new EntryScanner(table, data, 4, 1, List.of("00"), DICT, DICT.model(), 0, true);
+        assertEquals(sequentialScan(scanner, data.length), scanner.scan(percent -> {}));
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.wave.hextractor.object;
+
+import com.wave.hextractor.pojo.TableSearchResult;
+import com.wave.hextractor.util.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FuzzySearchTest {
+
+    private static int bestDistanceEndingAt(String text, String word, int end) {
+        int[] previous = new int[end + 2];
+        int[] current = new int[end + 2];
+        for (int p = 1; p <= word.length(); p++) {
+            current[0] = p;
+            for (int t = 1; t <= end + 1; t++) {
+                int cost = text.charAt(t - 1) == word.charAt(p - 1) ? 0 : 1;
+                current[t] = Math.min(previous[t - 1] + cost, Math.min(previous[t], current[t - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[end + 1];
+    }
+
+    private static int distance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            for (int j = 0; j <= b.length(); j++) {
+                if (i == 0 || j == 0) {
+                    d[i][j] = i + j;
+                } else {
+                    int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                    d[i][j] = Math.min(d[i - 1][j - 1] + cost, Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    @Test
+    public void find() {
+        Random random = new Random(18);
+        byte[] data = new byte[300000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(20));
+        }
+        byte[] planted = "PRINCESS".getBytes(StandardCharsets.US_ASCII);
+        byte[] misspelled = "PRINSESS".getBytes(StandardCharsets.US_ASCII);
+        byte[] missing = "PRNCESS".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(planted, 0, data, 1000, planted.length);
+        // Across the chunk limit of the parallel scan
+        System.arraycopy(misspelled, 0, data, (1 << 16) - 3, misspelled.length);
+        System.arraycopy(missing, 0, data, 250000, missing.length);
+
+        List<FuzzySearch.Match> matches = new FuzzySearch("Princess", 1, true).find(data, new HexTable(0), 10);
+        assertEquals(3, matches.size());
+        assertEquals(new FuzzySearch.Match(1000, 8, 0, "PRINCESS"), matches.get(0));
+        assertEquals(new FuzzySearch.Match((1 << 16) - 3, 8, 1, "PRINSESS"), matches.get(1));
+        assertEquals(new FuzzySearch.Match(250000, 7, 1, "PRNCESS"), matches.get(2));
+        assertEquals(1, new FuzzySearch("Princess", 1, true).find(data, new HexTable(0), 1).size());
+        assertTrue(new FuzzySearch("Princess", 1, false).find(data, new HexTable(0), 10).isEmpty());
+    }
+
+    @Test
+    public void findAgainstDynamicProgramming() {
+        Random random = new Random(19);
+        byte[] data = new byte[3000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(3));
+        }
+        String text = new String(data, StandardCharsets.US_ASCII);
+        String word = "abcab";
+        List<TableSearchResult> results = FileUtils.fuzzyFindString(data, new HexTable(0), word, false, 1);
+        assertFalse(results.isEmpty());
+        int previousDistance = 0;
+        for (TableSearchResult result : results) {
+            int end = result.getOffset() + result.getWord().length() - 1;
+            assertEquals(result.getWord(), text.substring(result.getOffset(), end + 1));
+            assertEquals(bestDistanceEndingAt(text, word, end), result.getDistance());
+            assertEquals(result.getDistance(), distance(word, result.getWord()));
+            assertTrue(result.getDistance() >= previousDistance);
+            previousDistance = result.getDistance();
+        }
+        // One result for every run of consecutive ends within the distance
+        int runs = 0;
+        for (int end = 0; end < text.length(); end++) {
+            if (bestDistanceEndingAt(text, word, end) <= 1
+                    && (end == 0 || bestDistanceEndingAt(text, word, end - 1) > 1)) {
+                runs++;
+            }
+        }
+        assertEquals(runs, results.size());
+    }
+
+    @Test
+    public void findWithUnknownBytes() {
+        List<String> lines = new ArrayList<>();
+        for (char c = 'a'; c <= 'z'; c++) {
+            lines.add(String.format("%02X=%c", (int) c, c));
+        }
+        HexTable table = new HexTable(lines);
+        byte[] data = "xxprin?essxxbe?xx".getBytes(StandardCharsets.US_ASCII);
+        data[6] = (byte) 0xC0;
+        data[14] = (byte) 0xEF;
+
+        // The unknown byte is one edit, not the chars of its hex
+        assertEquals(List.of(new FuzzySearch.Match(2, 8, 1, "prin~C0~ess")),
+                new FuzzySearch("princess", 1, false).find(data, table, 10));
+        // Its hex digits do not match the letters of the word
+        assertTrue(new FuzzySearch("beef", 1, true).find(data, table, 10).isEmpty());
+        assertEquals(2, new FuzzySearch("beef", 2, true).find(data, table, 10).get(0).distance());
+    }
+
+    @Test
+    public void arguments() {
+        assertThrows(IllegalArgumentException.class, () -> new FuzzySearch("a", 0, true));
+        assertThrows(IllegalArgumentException.class, () -> new FuzzySearch("abc", 3, true));
+        assertThrows(IllegalArgumentException.class, () -> new FuzzySearch("abc", -1, true));
+        assertThrows(IllegalArgumentException.class, () -> new FuzzySearch("a".repeat(65), 1, true));
+    }
+
+}
@@ -2,10 +2,14 @@ package com.wave.hextractor.object;
 
 import com.wave.hextractor.pojo.OffsetEntry;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -67,6 +71,212 @@ public class HexTableTest {
         assertEquals("ab", table.toString((byte)3, true));
     }
 
+    @Test
+    public void byteLookupFollowsTableChanges() {
+        HexTable table = new HexTable(LINES);
+        assertEquals('a', table.toChar((byte) 0));
+        assertEquals('.', table.toChar((byte) 3));
+        assertEquals('.', table.toChar((byte) 0xF0));
+        table.addToTable((byte) 0xF0, "z");
+        assertEquals("z", table.toString((byte) 0xF0, false, true));
+        assertEquals('z', table.toChar((byte) 0xF0));
+        HexTable merged = new HexTable();
+        assertEquals("~01~", merged.toString((byte) 1, true, true));
+        merged.mergeFrom(table);
+        assertEquals("b", merged.toString((byte) 1, true, true));
+        assertEquals("ab", merged.toString((byte) 3, true, false));
+        assertEquals("~03~", merged.toString((byte) 3, false, true));
+    }
+
+    @Test
+    public void matchAtAndDecodeRange() {
+        HexTable table = new HexTable(Arrays.asList("41=Z", "4142=B", "414243=C"));
+        byte[] data = {0x41, 0x42, 0x43, 0x00, 0x41, 0x42};
+        long match = table.matchAt(data, 0, data.length);
+        assertEquals(3, HexTable.matchLength(match));
+        assertEquals("C", table.getValue(HexTable.matchValueId(match)));
+        match = table.matchAt(data, 0, 2);
+        assertEquals(2, HexTable.matchLength(match));
+        assertEquals("B", table.getValue(HexTable.matchValueId(match)));
+        assertEquals(HexTable.NO_MATCH, table.matchAt(data, 3, data.length));
+        int[] lengths = new int[2];
+        int[] valueIds = new int[2];
+        assertEquals(2, table.decodeRange(data, 0, data.length, lengths, valueIds));
+        assertArrayEquals(new int[]{3, 1}, lengths);
+        assertEquals(HexTable.UNKNOWN_VALUE_ID, valueIds[1]);
+        assertEquals(1, table.decodeRange(data, 4, data.length, lengths, valueIds));
+        assertEquals("B", table.getValue(valueIds[0]));
+    }
+
+    @Test
+    public void compiledTableIsSnapshot() throws Exception {
+        HexTable table = new HexTable(Arrays.asList("41=Z", "4142=B", "00=a"));
+        CompiledHexTable compiled = table.compile();
+        table.addToTable((byte) 0x42, "Y");
+        table.addToTable(new byte[]{0x41, 0x43}, "W");
+        byte[] data = {0x41, 0x42, 0x41, 0x43, 0x00};
+        assertEquals("BZ~43~a", compiled.toAscii(data, true, true));
+        assertEquals("BWa", table.toAscii(data, true, true));
+        assertEquals(".", compiled.toString((byte) 0x42, true, false));
+        assertArrayEquals(new byte[]{0, 0x41}, compiled.toHex("aZ"));
+        assertEquals(compiled, CompiledHexTable.of(new HexTable(Arrays.asList("41=Z", "4142=B", "00=a"))));
+        HexTable copy = compiled.toHexTable();
+        copy.addToTable((byte) 0x43, "X");
+        assertEquals("~43~", compiled.toString((byte) 0x43, true, true));
+        List<Thread> threads = new java.util.ArrayList<>();
+        java.util.concurrent.atomic.AtomicInteger errors = new java.util.concurrent.atomic.AtomicInteger();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    if (!"BZ~43~a".equals(compiled.toAscii(data, true, true))) {
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, errors.get());
+    }
+
+    @Test
+    public void loadLinesParser() {
+        HexTable table = new HexTable(Arrays.asList("\uFEFF", "41 42=x=y\r", " 43 =z", "4G=q", "414=w", "7E=~", "44="));
+        assertEquals("x=y", table.toAscii(new byte[]{0x41, 0x42}, true));
+        assertEquals("z", table.toString((byte) 0x43, true));
+        assertEquals("4142=x=y\n", table.toAsciiTable().replace("43=z\n", ""));
+    }
+
+    @Test
+    public void tableFileCache(@TempDir Path dir) throws IOException {
+        Path tbl = dir.resolve("test.tbl");
+        Files.write(tbl, Arrays.asList("\uFEFF00=a", "01=b", "4142=B", "4143=B", "41=Z"), StandardCharsets.UTF_8);
+        HexTable parsed = new HexTable(tbl.toString());
+        Path cache = dir.resolve("test.tbl.tbc");
+        assertTrue(Files.exists(cache));
+        HexTable cached = new HexTable(tbl.toString());
+        assertEquals(parsed, cached);
+        assertEquals(parsed.toAsciiTable(), cached.toAsciiTable());
+        byte[] data = {0x41, 0x42, 0x41, 0x43, 0x00, 0x01, 0x41};
+        assertEquals("BBabZ", cached.toAscii(data, true));
+        assertArrayEquals(parsed.toHex("aBZ", new OffsetEntry(0, 3, Collections.emptyList())),
+                cached.toHex("aBZ", new OffsetEntry(0, 3, Collections.emptyList())));
+        assertEquals("a", cached.toString((byte) 0, false));
+
+        // A changed table must not use the old cache
+        Files.write(tbl, Arrays.asList("00=c"), StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(tbl, FileTime.fromMillis(Files.getLastModifiedTime(tbl).toMillis() + 2000));
+        assertEquals("c", new HexTable(tbl.toString()).toString((byte) 0, false));
+
+        // A corrupt cache is ignored and rewritten
+        Files.write(cache, new byte[]{1, 2, 3});
+        assertEquals("c", new HexTable(tbl.toString()).toString((byte) 0, false));
+        assertTrue(Files.size(cache) > 3);
+    }
+
+    @Test
+    public void tableSwitches(@TempDir Path dir) throws IOException {
+        Files.write(dir.resolve("main.tbl"), Arrays.asList("61=a", "62=b", "!F8=kana.tbl", "FF=<end>"), StandardCharsets.UTF_8);
+        Files.write(dir.resolve("kana.tbl"), Arrays.asList("61=ア", "62=イ", "!F9=main.tbl"), StandardCharsets.UTF_8);
+        byte[] data = {0x61, (byte) 0xF8, 0x61, 0x62, (byte) 0xF9, 0x62, (byte) 0xFF};
+        for (int load = 0; load < 2; load++) {
+            // The second load reads the cached tables
+            HexTable table = new HexTable(dir.resolve("main.tbl").toString());
+            assertEquals("a~F8~アイ~F9~b<end>", table.toAscii(data, true));
+            assertEquals("a~F8~アイ~F9~b<end>", table.compile().toAscii(data, true, false));
+            OffsetEntry entry = new OffsetEntry(0, data.length - 1, Collections.singletonList("FF"));
+            assertTrue(table.toAscii(data, entry, false, true).contains("a~F8~アイ~F9~b<end>#007"));
+            assertArrayEquals(new byte[]{0x61, (byte) 0xF8}, table.toHex("a~F8~|2\n", entry));
+            assertTrue(table.toAsciiTable().contains("!F8=kana.tbl\n"));
+
+            long m = table.matchAt(data, 1, data.length);
+            assertTrue(table.isTableSwitch(m));
+            HexTable kana = table.nextTable(m);
+            assertNotSame(table, kana);
+            assertEquals("ア", kana.getValue(HexTable.matchValueId(kana.matchAt(data, 2, data.length))));
+            assertSame(table, kana.nextTable(kana.matchAt(data, 4, data.length)));
+            assertSame(table, table.nextTable(table.matchAt(data, 0, data.length)));
+        }
+        HexTable merged = new HexTable();
+        HexTable table = new HexTable(dir.resolve("main.tbl").toString());
+        merged.mergeFrom(table);
+        assertEquals(table.toAscii(data, true), merged.toAscii(data, true));
+    }
+
+    @Test
+    public void tableSwitchesRoundTrip(@TempDir Path dir) throws IOException {
+        Files.write(dir.resolve("main.tbl"), Arrays.asList("61=a", "62=b", "!F8=kana.tbl", "FF=<end>"), StandardCharsets.UTF_8);
+        Files.write(dir.resolve("kana.tbl"), Arrays.asList("10=ア", "11=イ", "12=a", "1314=ab", "!F9F0=main.tbl"),
+                StandardCharsets.UTF_8);
+        HexTable table = new HexTable(dir.resolve("main.tbl").toString());
+        byte[] data = {0x61, (byte) 0xF8, 0x10, 0x11, 0x12, 0x13, 0x14, (byte) 0xF9, (byte) 0xF0, 0x61, 0x62, (byte) 0xFF};
+        String text = table.toAscii(data, true);
+        assertEquals("a~F8~アイaab~F9~~F0~ab<end>", text);
+        // The text after every switch code is encoded with the table it switches to
+        OffsetEntry entry = new OffsetEntry(0, data.length - 1, Collections.singletonList("FF"));
+        for (HexTable.EncodingMode mode : HexTable.EncodingMode.values()) {
+            assertArrayEquals(data, table.toHex(text + "|12\n", entry, mode, saved -> {}), mode.name());
+        }
+        assertArrayEquals(data, table.compile().toHex(text + "|12\n", entry));
+        // Lines and comments between the switch and the text
+        assertArrayEquals(new byte[]{0x61, (byte) 0xF8, 0x10, 0x12},
+                table.toHex("a~F8~\n;comment\nア\na|4\n", entry));
+    }
+
+    @Test
+    public void toHexOptimalEncoding() {
+        HexTable table = new HexTable(Arrays.asList("61=a", "62=b", "63=c", "64=d", "80=ab", "81=cd", "9000=abc"));
+        OffsetEntry entry = new OffsetEntry(0, 0, Collections.singletonList("FF"));
+        int[] saved = new int[1];
+        assertArrayEquals(new byte[]{(byte) 0x90, 0, 0x64},
+                table.toHex("abcd|3\n", entry, HexTable.EncodingMode.GREEDY, bytes -> saved[0] = bytes));
+        assertEquals(0, saved[0]);
+        assertArrayEquals(new byte[]{(byte) 0x80, (byte) 0x81, (byte) 0xFF, (byte) 0x90, 0x00, 0x00},
+                table.toHex("abcd~FF~#003\nabc;abc\nx|6\n", entry, HexTable.EncodingMode.OPTIMAL, bytes -> saved[0] = bytes));
+        assertEquals(1, saved[0]);
+    }
+
+    @Test
+    public void controlCodes() {
+        HexTable table = new HexTable(Arrays.asList("61=a", "62=b", "FF=<end>", "$F0=wait %1", "$F5=var %2,%1", "$F5F6=clear"));
+        byte[] data = {0x61, (byte) 0xF0, 0x3C, 0x62, (byte) 0xF5, 0x01, 0x02, (byte) 0xF5, (byte) 0xF6, (byte) 0xFF};
+        assertEquals("a{wait 3C}b{var 02,01}{clear}<end>", table.toAscii(data, true));
+        assertEquals("a~F0~~3C~b~F5~~01~~02~~F5~~F6~~FF~", table.toAscii(data, false, true));
+        // Parameters beyond the end are not decoded as the control code
+        assertEquals("a~F0~", table.toAscii(new byte[]{0x61, (byte) 0xF0}, true, true));
+        OffsetEntry entry = new OffsetEntry(0, data.length - 1, Collections.singletonList("FF"));
+        String ascii = table.toAscii(data, entry, false, true);
+        assertTrue(ascii.contains("a{wait 3C}b{var 02,01}{clear}<end>#010"));
+        assertArrayEquals(data, table.toHex("a{wait 3C}b{var 02,01}{clear}<end>#010\n|10\n", entry));
+        assertEquals("$F0=wait %1\n$F5=var %2,%1\n$F5F6=clear\n",
+                table.toAsciiTable().replaceAll("(?m)^[0-9A-F]{2}=.*\n", ""));
+        HexTable merged = new HexTable();
+        merged.mergeFrom(table);
+        assertEquals(table.toAscii(data, true), merged.compile().toAscii(data, true, false));
+    }
+
+    @Test
+    public void overlappingControlCodes() {
+        HexTable table = new HexTable(Arrays.asList("61=a", "7A=z", "F5F6=zz", "FF=<end>", "$F1=X%1%2", "$F2=X01%1",
+                "$F3=X%1"));
+        OffsetEntry entry = new OffsetEntry(0, 9, Collections.singletonList("FF"));
+        // The template with more literal chars wins, then the one with more parameters
+        assertArrayEquals(new byte[]{(byte) 0xF2, 0x02, (byte) 0xF3, 0x05, (byte) 0xF1, 0x05, 0x06, (byte) 0xFF},
+                table.toHex("{X0102}{X05}{X0506}<end>|8\n", entry));
+        assertArrayEquals(new byte[]{(byte) 0xF2, 0x02, (byte) 0xFF}, table.compile().toHex("{X0102}<end>|3\n", entry));
+        // The keys taken by control codes are not used for the old values anymore
+        table.addControlCode(new byte[]{0x7A}, "z%1");
+        table.addControlCode(new byte[]{(byte) 0xF5, (byte) 0xF6}, "w");
+        assertArrayEquals(new byte[]{0x61, 0x7A, 0x05, (byte) 0xF5, (byte) 0xF6, (byte) 0xFF},
+                table.toHex("a{z05}{w}<end>|6\n", entry));
+        assertArrayEquals(new byte[]{0x61, 0, 0, 0, (byte) 0xFF}, table.toHex("azzz<end>|5\n", entry));
+        table.addControlCode(new byte[]{(byte) 0xF2}, "X%1%2");
+        assertArrayEquals(new byte[]{(byte) 0xF2, 0x01, 0x02, (byte) 0xFF}, table.toHex("{X0102}<end>|4\n", entry));
+    }
+
     @Test
     public void toSelectionString() {
         HexTable table = new HexTable(LINES);
@@ -123,12 +333,39 @@ public class HexTableTest {
         assertEquals(ascii, table.toAscii(data, entry,false, true));
     }
 
+    @Test
+    public void toAsciiAppendable() throws IOException {
+        HexTable table = new HexTable(LINES);
+        byte[] data = new byte[300];
+        data[150] = (byte) 0xFF;
+        OffsetEntry entry = new OffsetEntry(0x1A, 299, Collections.singletonList("FF"));
+        StringBuilder sb = new StringBuilder();
+        table.toAscii(data, entry, false, true, sb);
+        String ascii = sb.toString();
+        assertEquals(table.toAscii(data, entry, false, true), ascii);
+        assertTrue(ascii.contains(";0000001A{" + "a".repeat(124) + "~FF~}#128#125\n"));
+        assertTrue(ascii.contains(";00000097{" + "a".repeat(149) + "}#149#149\n"));
+        assertTrue(ascii.endsWith("|274\n"));
+    }
+
     @Test
     public void toHex1() {
         HexTable table = new HexTable(LINES);
-        byte[] data = new byte[]{0, 1, 2, 3, 4};
         OffsetEntry entry = new OffsetEntry(0, 4, Collections.singletonList("FF"));
-        assertArrayEquals(data, table.toHex("abc{ab}~04~#005\n|5\n", entry));
+        // "ab" is encoded greedily as 03, the line is padded to its 5 bytes
+        assertArrayEquals(new byte[]{3, 2, 3, 4, 0}, table.toHex("abc{ab}~04~#005\n|5\n", entry));
+    }
+
+    @Test
+    public void toHexGreedyLongestMatch() {
+        HexTable table = new HexTable(Arrays.asList("20= ", "41=a", "42=b", "4142=ab", "434445=abc", "50=x#y", "60=\uD83D\uDE00"));
+        OffsetEntry entry = new OffsetEntry(0, 0, Collections.singletonList("FF"));
+        assertArrayEquals(new byte[]{0x43, 0x44, 0x45, 0x41, 0x42, 0x41, 0x20, 0x60, 0x20},
+                table.toHex("abcaba ;abc\n\uD83D\uDE00x|9\n", entry));
+        assertArrayEquals(new byte[]{0x50, 0x41}, table.toHex("{x#y}a|2\n", entry));
+        table.addToTable(new byte[]{0x41, 0x41}, "aa");
+        assertArrayEquals(new byte[]{0x41, 0x41}, table.toHex("aa|2\n", entry));
+        assertArrayEquals(new byte[]{0x43, 0x44, 0x45}, table.compile().toHex("abc|3\n", entry));
     }
 
     @Test
@@ -211,4 +448,15 @@ public class HexTableTest {
         assertEquals(expected, table.toAscii(data, entry, true, true));
     }
 
+    @Test
+    public void longestMatchMultiByte() {
+        HexTable table = new HexTable(Arrays.asList("41=Z", "4142=B", "414243=C", "8142=K", "8143=L"));
+        assertEquals("CBZ", table.toAscii(new byte[]{0x41, 0x42, 0x43, 0x41, 0x42, 0x41}, true));
+        assertEquals("KL~81~", table.toAscii(new byte[]{(byte) 0x81, 0x42, (byte) 0x81, 0x43, (byte) 0x81}, true, true));
+        HexTable merged = new HexTable();
+        merged.mergeFrom(table);
+        assertEquals(table.toAsciiTable(), merged.toAsciiTable());
+        assertEquals("41=Z\n4142=B\n414243=C\n8142=K\n8143=L\n", table.toAsciiTable());
+    }
+
 }
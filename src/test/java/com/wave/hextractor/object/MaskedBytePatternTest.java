@@ -0,0 +1,77 @@
+package com.wave.hextractor.object;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MaskedBytePatternTest {
+
+    private static List<Integer> findAllPerOffset(byte[] data, String hex, int from, int to) {
+        String clean = hex.replace(" ", "");
+        List<Integer> res = new ArrayList<>();
+        for (int i = from; i + clean.length() / 2 <= to; i++) {
+            boolean match = true;
+            for (int j = 0; j < clean.length() && match; j++) {
+                char c = clean.charAt(j);
+                int nibble = j % 2 == 0 ? (data[i + j / 2] >> 4) & 0xF : data[i + j / 2] & 0xF;
+                match = c == '?' || Character.digit(c, 16) == nibble;
+            }
+            if (match) {
+                res.add(i);
+            }
+        }
+        return res;
+    }
+
+    @Test
+    public void findAll() {
+        Random random = new Random(17);
+        byte[] data = new byte[200000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (random.nextInt(4) * 0x11 + 0xA8);
+        }
+        List<String> patterns = new ArrayList<>(List.of("A9 ?? BB ?A", "??", "a9", "?9 B?", "BB BB BB BB BB BB"));
+        StringBuilder longPattern = new StringBuilder();
+        for (int i = 0; i < 70; i++) {
+            longPattern.append(i % 9 == 0 ? "??" : "?B");
+        }
+        patterns.add(longPattern.toString());
+        // A long pattern that is found, with the start of data copied
+        StringBuilder found = new StringBuilder();
+        for (int i = 0; i < 80; i++) {
+            found.append(i % 5 == 0 ? "?" : String.format("%X", (data[1000 + i] >> 4) & 0xF));
+            found.append(String.format("%X", data[1000 + i] & 0xF));
+        }
+        patterns.add(found.toString());
+        for (String hex : patterns) {
+            MaskedBytePattern pattern = new MaskedBytePattern(hex);
+            List<Integer> expected = findAllPerOffset(data, hex, 0, data.length);
+            assertEquals(expected, pattern.findAll(data, 0, data.length), hex);
+            assertEquals(findAllPerOffset(data, hex, 33, 70000), pattern.findAll(data, 33, 70000), hex);
+        }
+        assertTrue(new MaskedBytePattern(found.toString()).findAll(data, 0, data.length).contains(1000));
+        // Ending at the end of the data or at to
+        byte[] end = {9, 9, 9, (byte) 0xA9, 0x12, (byte) 0x8D};
+        assertEquals(List.of(3), new MaskedBytePattern("A9 ?? 8D").findAll(end, 0, end.length));
+        assertEquals(List.of(2), new MaskedBytePattern("?9 A?").findAll(end, 0, 4));
+        assertEquals(List.of(5), new MaskedBytePattern("8?").findAll(end, 0, end.length));
+    }
+
+    @Test
+    public void parse() {
+        MaskedBytePattern exact = new MaskedBytePattern("a9 00\t8D");
+        assertTrue(exact.isExact());
+        assertEquals(3, exact.length());
+        assertArrayEquals(new byte[]{(byte) 0xA9, 0, (byte) 0x8D}, exact.toBytes());
+        assertFalse(new MaskedBytePattern("A9 ?0").isExact());
+        assertThrows(IllegalArgumentException.class, () -> new MaskedBytePattern("A9 0"));
+        assertThrows(IllegalArgumentException.class, () -> new MaskedBytePattern("A9 G0"));
+        assertThrows(IllegalArgumentException.class, () -> new MaskedBytePattern(" "));
+        assertTrue(exact.findAll(new byte[]{(byte) 0xA9, 0}, 0, 2).isEmpty());
+    }
+
+}
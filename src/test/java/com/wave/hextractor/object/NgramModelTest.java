@@ -0,0 +1,51 @@
+package com.wave.hextractor.object;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NgramModelTest {
+
+    private static final NgramModel MODEL = NgramModel.of(List.of("the quick brown fox jumps over the lazy dog",
+            "then the other fox went over there", "the dog sleeps"));
+
+    private static float confidence(String text) {
+        int trigram = NgramModel.START;
+        double sum = 0;
+        for (char c : text.toCharArray()) {
+            trigram = NgramModel.next(trigram, c);
+            sum += MODEL.logProbability(trigram);
+        }
+        return NgramModel.confidence(sum, text.length());
+    }
+
+    @Test
+    public void confidence() {
+        float text = confidence("the fox jumps over the dog");
+        float junk = confidence("qzx#jv kk%w pq");
+        assertTrue(text > 0.3f, String.valueOf(text));
+        assertTrue(junk < text, junk + " " + text);
+        assertTrue(junk >= 0 && text <= 1);
+        // Case does not change the score
+        assertEquals(text, confidence("THE FOX JUMPS OVER THE DOG"));
+        assertEquals(0, NgramModel.confidence(0, 0));
+    }
+
+    @Test
+    public void rollingTrigram() {
+        // The trigram only depends on the last three chars
+        int a = NgramModel.START;
+        int b = NgramModel.START;
+        for (char c : "xyz the".toCharArray()) {
+            a = NgramModel.next(a, c);
+        }
+        for (char c : "abc the".toCharArray()) {
+            b = NgramModel.next(b, c);
+        }
+        assertEquals(a, b);
+        assertTrue(MODEL.logProbability(a) < 0);
+    }
+
+}
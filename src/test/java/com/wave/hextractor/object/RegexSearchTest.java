@@ -0,0 +1,118 @@
+package com.wave.hextractor.object;
+
+import com.wave.hextractor.pojo.OffsetEntry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RegexSearchTest {
+
+    private static final HexTable TABLE = new HexTable(Arrays.asList("41=a", "42=b", "43=c", "3F=?", "4142=the ",
+            "$F0=col %1"));
+
+    private static final byte[] BYTES = {0x41, 0x42, 0x43, 0x3F, (byte) 0xF0, 0x00};
+
+    private static byte[] randomData(long seed, int length) {
+        Random random = new Random(seed);
+        byte[] data = new byte[length];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = BYTES[random.nextInt(BYTES.length)];
+        }
+        return data;
+    }
+
+    @Test
+    public void decodedText() {
+        byte[] data = randomData(20, 5000);
+        DecodedText text = DecodedText.decode(data, TABLE, 7, 4990);
+        assertEquals(TABLE.toAscii(Arrays.copyOfRange(data, 7, 4990), true, true), text.toString());
+        assertEquals(7, text.offset(0));
+        assertEquals(4990, text.offset(text.length()));
+        assertEquals(4990, text.endOffset(text.length()));
+        for (int i = 0; i < text.length(); i = text.tokenEnd(i + 1)) {
+            int j = text.tokenEnd(Math.min(i + 13, text.length()));
+            assertEquals(text.subSequence(i, j),
+                    TABLE.toAscii(Arrays.copyOfRange(data, text.offset(i), text.offset(j)), true, true), "char " + i);
+            // Chars inside a token map to its start
+            for (int k = i + 1; k < text.tokenEnd(i + 1); k++) {
+                assertEquals(text.offset(i), text.offset(k));
+                assertEquals(text.offset(text.tokenEnd(i + 1)), text.endOffset(k));
+            }
+        }
+        assertEquals(0, DecodedText.decode(data, TABLE, 10, 10).length());
+    }
+
+    @Test
+    public void decodedTextEmptyValues() {
+        HexTable table = new HexTable(Arrays.asList("41=a", "42=b"));
+        table.addToTable((byte) 0x55, "");
+        byte[] data = new byte[604];
+        Arrays.fill(data, (byte) 0x55);
+        data[1] = 0x41;
+        data[302] = 0x42;
+        // The bytes without text belong to the char before them, the leading ones to no char
+        DecodedText text = DecodedText.decode(data, table, 0, data.length);
+        assertEquals("ab", text.toString());
+        assertEquals(1, text.offset(0));
+        assertEquals(302, text.offset(1));
+        assertEquals(302, text.endOffset(1));
+        assertEquals(604, text.endOffset(2));
+    }
+
+    @Test
+    public void find() {
+        byte[] data = randomData(21, 3000);
+        byte[] planted = {0x41, 0x42, 0x43, 0x3F, (byte) 0xF0, 0x07};
+        System.arraycopy(planted, 0, data, 1500, planted.length);
+        RegexSearch search = new RegexSearch(data);
+        List<RegexSearch.Match> matches = search.find(TABLE, Pattern.compile("the c\\?\\{col 07\\}"));
+        assertEquals(List.of(new RegexSearch.Match(1500, 1506, "the c?{col 07}")), matches);
+        assertEquals(1500, matches.get(0).toOffsetEntry().getStart());
+        assertEquals(1505, matches.get(0).toOffsetEntry().getEnd());
+
+        // A match in the middle of a token takes the whole token
+        for (RegexSearch.Match match : search.find(TABLE, Pattern.compile("he c"))) {
+            assertEquals(0x41, data[match.start()]);
+            assertEquals("the c", TABLE.toAscii(Arrays.copyOfRange(data, match.start(), match.end()), true, true));
+        }
+
+        // Every match of the ranges is a match of the whole data
+        Pattern pattern = Pattern.compile("\\?(~00~)+");
+        List<RegexSearch.Match> all = search.find(TABLE, pattern);
+        assertFalse(all.isEmpty());
+        List<RegexSearch.Match> ranged = search.find(TABLE, pattern,
+                List.of(new OffsetEntry(0, 999, null), new OffsetEntry(2000, 2999, null)));
+        assertFalse(ranged.isEmpty());
+        for (RegexSearch.Match match : ranged) {
+            assertTrue(match.start() < 1000 || match.start() >= 2000);
+            assertEquals(match.text(), TABLE.toAscii(Arrays.copyOfRange(data, match.start(), match.end()), true, true));
+        }
+        assertTrue(search.find(TABLE, Pattern.compile("x*")).isEmpty());
+        assertSame(search.view(TABLE), search.view(TABLE));
+        assertTrue(search.isFor(data));
+    }
+
+    @Test
+    public void findAfterTheTableChanges() {
+        byte[] data = {0x01, 0x02, 0x01, 0x02};
+        HexTable table = new HexTable(List.of("01=a", "02=b"));
+        RegexSearch search = new RegexSearch(data);
+        assertEquals(2, search.find(table, Pattern.compile("ab")).size());
+        // Loaded into the same table, as the viewer does
+        table.mergeFrom(new HexTable(List.of("01=x", "02=y")));
+        assertEquals(2, search.find(table, Pattern.compile("xy")).size());
+        assertTrue(search.find(table, Pattern.compile("ab")).isEmpty());
+        // A change of a table of the switch codes too
+        HexTable kana = new HexTable(List.of("01=k"));
+        table.addTableSwitch(new byte[]{0x02}, "kana", kana);
+        assertEquals("x~02~k~02~", search.view(table).toString());
+        kana.addToTable((byte) 0x01, "z");
+        assertEquals("x~02~z~02~", search.view(table).toString());
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.wave.hextractor.object;
+
+import com.wave.hextractor.util.Constants;
+import com.wave.hextractor.util.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SuffixArrayIndexTest {
+
+    private static List<Integer> findAllPerOffset(byte[] data, byte[] pattern, int from, int to) {
+        List<Integer> res = new ArrayList<>();
+        for (int i = Math.max(from, 0); i + pattern.length <= Math.min(to, data.length); i++) {
+            boolean match = true;
+            for (int j = 0; j < pattern.length && match; j++) {
+                match = data[i + j] == pattern[j];
+            }
+            if (match) {
+                res.add(i);
+            }
+        }
+        return res;
+    }
+
+    private static void assertLocates(byte[] data, SuffixArrayIndex index, int alphabet) {
+        for (int length = 1; length <= 3; length++) {
+            byte[] pattern = new byte[length];
+            int combinations = (int) Math.pow(alphabet, length);
+            for (int c = 0; c < combinations; c++) {
+                for (int i = 0, rest = c; i < length; i++, rest /= alphabet) {
+                    // Include bytes over 0x7F to check the unsigned order
+                    pattern[i] = (byte) (rest % alphabet * 0x55);
+                }
+                List<Integer> expected = findAllPerOffset(data, pattern, 0, data.length);
+                assertEquals(expected, index.locate(pattern, 0, data.length));
+                assertEquals(expected.size(), index.count(pattern));
+                assertEquals(findAllPerOffset(data, pattern, 3, data.length - 5), index.locate(pattern, 3, data.length - 5));
+            }
+        }
+    }
+
+    @Test
+    public void locate() {
+        Random random = new Random(15);
+        for (int alphabet : new int[]{1, 2, 4}) {
+            for (int size : new int[]{0, 1, 2, 17, 1000}) {
+                byte[] data = new byte[size];
+                for (int i = 0; i < size; i++) {
+                    data[i] = (byte) (random.nextInt(alphabet) * 0x55);
+                }
+                assertLocates(data, SuffixArrayIndex.build(data), alphabet);
+            }
+        }
+        // Periodic data has deep recursion levels
+        byte[] periodic = new byte[3000];
+        for (int i = 0; i < periodic.length; i++) {
+            periodic[i] = (byte) (i % 7 == 0 || i % 11 == 0 ? 0x55 : 0xAA);
+        }
+        assertLocates(periodic, SuffixArrayIndex.build(periodic), 4);
+        assertTrue(SuffixArrayIndex.build(periodic).locate(new byte[0], 0, periodic.length).isEmpty());
+    }
+
+    @Test
+    public void sidecarFile(@TempDir Path dir) throws IOException {
+        Random random = new Random(16);
+        // Several read blocks, the last one partial
+        byte[] data = new byte[150000];
+        random.nextBytes(data);
+        Path rom = dir.resolve("test.rom");
+        Files.write(rom, data);
+        Path sidecar = dir.resolve("test.rom" + Constants.ROM_INDEX_EXTENSION);
+        byte[] pattern = {data[1234], data[1235], data[1236]};
+
+        SuffixArrayIndex built = SuffixArrayIndex.load(rom, data);
+        assertTrue(Files.isRegularFile(sidecar));
+        assertTrue(built.isFor(data));
+        SuffixArrayIndex loaded = SuffixArrayIndex.load(rom, data);
+        assertEquals(built.locate(pattern, 0, data.length), loaded.locate(pattern, 0, data.length));
+        assertTrue(loaded.locate(pattern, 0, data.length).contains(1234));
+        byte[] last = {data[149990], data[149991], data[149992]};
+        assertEquals(built.locate(last, 0, data.length), loaded.locate(last, 0, data.length));
+        assertTrue(loaded.locate(last, 0, data.length).contains(149990));
+
+        // Other data with the same size does not use the stored index
+        byte[] other = data.clone();
+        other[1234]++;
+        assertEquals(findAllPerOffset(other, pattern, 0, other.length),
+                SuffixArrayIndex.load(rom, other).locate(pattern, 0, other.length));
+
+        Files.write(sidecar, new byte[]{1, 2, 3});
+        assertEquals(built.locate(pattern, 0, data.length), SuffixArrayIndex.load(rom, data).locate(pattern, 0, data.length));
+    }
+
+    @Test
+    public void multiFindStringWithIndex() {
+        HexTable table = new HexTable(0);
+        byte[] data = new byte[20000];
+        Random random = new Random(17);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(3));
+        }
+        SuffixArrayIndex index = SuffixArrayIndex.build(data);
+        for (String search : new String[]{"abc", "Cab", "a*c", "..a"}) {
+            assertEquals(FileUtils.multiFindString(data, table, search, true, 2),
+                    FileUtils.multiFindString(data, table, search, true, 2, index), search);
+        }
+    }
+
+}
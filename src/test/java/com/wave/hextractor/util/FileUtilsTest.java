@@ -1,14 +1,21 @@
 package com.wave.hextractor.util;
 
 import com.wave.hextractor.object.HexTable;
+import com.wave.hextractor.object.SearchHitBuffer;
 import com.wave.hextractor.pojo.FileWithDigests;
+import com.wave.hextractor.pojo.TableSearchResult;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteOrder;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Objects;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -274,16 +281,214 @@ public class FileUtilsTest {
 	public void searchRelative8Bits() {
 	}
 
+	@Test
+	public void multiSearchRelative16Bits() {
+		Random random = new Random(16);
+		byte[] data = new byte[20000];
+		random.nextBytes(data);
+		// Plant the word as big endian units at an odd offset and little endian units at an even one
+		byte[] word = "Hello world".getBytes();
+		for (int i = 0; i < word.length; i++) {
+			int bigEndian = word[i] + 0x1200 & 0xFFFF;
+			data[301 + i * 2] = (byte) (bigEndian >> 8);
+			data[302 + i * 2] = (byte) bigEndian;
+			int littleEndian = word[i] - 0x20 & 0xFFFF;
+			data[8000 + i * 2] = (byte) littleEndian;
+			data[8001 + i * 2] = (byte) (littleEndian >> 8);
+		}
+		for (String search : Arrays.asList("Hello world", "Hel*o world", "ello")) {
+			int start = search.equals("ello") ? 2 : 0;
+			List<TableSearchResult> bigEndianResults = FileUtils.multiSearchRelative16Bits(data, search, 2,
+					ByteOrder.BIG_ENDIAN);
+			List<TableSearchResult> littleEndianResults = FileUtils.multiSearchRelative16Bits(data, search, 2,
+					ByteOrder.LITTLE_ENDIAN);
+			TableSearchResult bigEndian = bigEndianResults.stream()
+					.filter(r -> r.getOffset() == 301 + start && r.getGapLength() <= 1).findFirst().orElseThrow();
+			TableSearchResult littleEndian = littleEndianResults.stream()
+					.filter(r -> r.getOffset() == 8000 + start && r.getGapLength() <= 1).findFirst().orElseThrow();
+			assertEquals(new HexTable(-0x1200, ByteOrder.BIG_ENDIAN), bigEndian.getHexTable());
+			assertEquals(new HexTable(0x20, ByteOrder.LITTLE_ENDIAN), littleEndian.getHexTable());
+			assertEquals("Hello world", bigEndian.getHexTable().toAscii(Arrays.copyOfRange(data, 301, 323), true));
+			assertEquals("Hello world", littleEndian.getHexTable().toAscii(Arrays.copyOfRange(data, 8000, 8022), true));
+			for (List<TableSearchResult> results : Arrays.asList(bigEndianResults, littleEndianResults)) {
+				for (int i = 0; i < results.size(); i++) {
+					// Every table decodes the word where it was found
+					TableSearchResult result = results.get(i);
+					String decoded = result.getHexTable().toAscii(Arrays.copyOfRange(data, result.getOffset(),
+							result.getOffset() + result.getWord().length() * 2), true);
+					for (int c = 0; c < decoded.length(); c++) {
+						if (result.getWord().charAt(c) != '*') {
+							assertEquals(result.getWord().charAt(c), decoded.charAt(c), search);
+						}
+					}
+					assertTrue(i == 0 || results.get(i - 1).getOffset() <= result.getOffset());
+				}
+			}
+		}
+	}
+
 	@Test
 	public void multiSearchRelative8Bits() {
+		Random random = new Random(7);
+		byte[] data = new byte[20000];
+		random.nextBytes(data);
+		// Plant the word with two displacements
+		byte[] word = "Hello".getBytes();
+		for (int i = 0; i < word.length; i++) {
+			data[100 + i] = (byte) (word[i] - 0x20);
+			data[5000 + i] = (byte) (word[i] + 0x31);
+			data[9000 + i] = (byte) (word[i] - 0x20);
+		}
+		for (String search : Arrays.asList("Hello", "He*lo", "*ello", "ell", "H*l*o")) {
+			List<TableSearchResult> results = FileUtils.multiSearchRelative8Bits(data, search, 2);
+			List<Integer> offsets = new ArrayList<>();
+			for (TableSearchResult result : results) {
+				offsets.add(result.getOffset() * 4 + result.getGapLength());
+				int anchor = result.getWord().indexOf(result.getWord().replace("*", "").charAt(0));
+				int displacement = result.getWord().charAt(anchor) - data[result.getOffset() + anchor] & 0xFF;
+				assertEquals(new HexTable(displacement), result.getHexTable());
+			}
+			List<Integer> expected = new ArrayList<>();
+			int gaps = search.contains("*") ? 2 : 1;
+			for (int gap = 1; gap <= gaps; gap++) {
+				for (int offset : searchRelativePerOffset(data, search.replace("*", "*".repeat(gap)))) {
+					expected.add(offset * 4 + (gaps > 1 ? gap : 0));
+				}
+			}
+			expected.sort(null);
+			assertEquals(expected, offsets, search);
+			int shift = search.equals("ell") ? 1 : 0;
+			assertTrue(offsets.containsAll(Arrays.asList((100 + shift) * 4 + gaps - 1, (5000 + shift) * 4 + gaps - 1,
+					(9000 + shift) * 4 + gaps - 1)), search);
+		}
+		List<TableSearchResult> results = FileUtils.multiSearchRelative8Bits(data, "Hello", 1);
+		results.sort(Comparator.comparing(TableSearchResult::getOffset));
+		assertSame(results.get(0).getHexTable(), results.get(2).getHexTable());
+	}
+
+	/**
+	 * Checks the relative word at every offset, the reference for multiSearchRelative8Bits.
+	 */
+	private static List<Integer> searchRelativePerOffset(byte[] data, String search) {
+		List<Integer> res = new ArrayList<>();
+		byte[] word = search.getBytes();
+		int anchor = search.indexOf(search.replace("*", "").charAt(0));
+		int i = 0;
+		while (i < data.length - word.length) {
+			boolean equal = true;
+			for (int j = 0; equal && j < word.length; j++) {
+				equal = word[j] == '*' || (byte) (data[i + j] - data[i + anchor]) == (byte) (word[j] - word[anchor]);
+			}
+			if (equal) {
+				res.add(i);
+				i += word.length;
+			}
+			else {
+				i++;
+			}
+		}
+		return res;
 	}
 
 	@Test
 	public void multiFindString() {
+		HexTable table = new HexTable(Arrays.asList("41=A", "42=B", "43=C", "61=a", "62=b", "63=c", "80=ab",
+				"9000=Ca", "20= "));
+		Random random = new Random(42);
+		byte[] alphabet = {0x41, 0x42, 0x43, 0x61, 0x62, 0x63, (byte) 0x80, (byte) 0x90, 0x00, 0x20, 0x7F};
+		byte[] data = new byte[20000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = alphabet[random.nextInt(alphabet.length)];
+		}
+		for (String search : Arrays.asList("abc", "cab", "Cab", "a*c", "*ba", "ab.", "..a", "a b", "a*b*a")) {
+			for (boolean ignoreCase : new boolean[]{false, true}) {
+				// Every expansion of the wildcards is found in one call, ordered by offset and gap length
+				List<Integer> expected = new ArrayList<>();
+				int gaps = search.contains("*") ? 3 : 1;
+				for (int gap = 1; gap <= gaps; gap++) {
+					String word = search.replace("*", "*".repeat(gap));
+					for (int offset : findStringPerOffset(data, table, word, ignoreCase)) {
+						expected.add(offset * 4 + (gaps > 1 ? gap : 0));
+					}
+				}
+				expected.sort(null);
+				List<Integer> found = new ArrayList<>();
+				for (TableSearchResult result : FileUtils.multiFindString(data, table, search, ignoreCase, 3)) {
+					found.add(result.getOffset() * 4 + result.getGapLength());
+					assertEquals(search.replace("*", "*".repeat(Math.max(result.getGapLength(), 1))), result.getWord());
+				}
+				assertEquals(expected, found, search + " " + ignoreCase);
+			}
+		}
+		assertFalse(FileUtils.multiFindString(data, table, "abc", false, 1).isEmpty());
 	}
 
 	@Test
-	public void searchAllStrings() {
+	public void findStringHits() {
+		HexTable table = new HexTable(0);
+		byte[] data = new byte[100001];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) "abcd".charAt(i % 4);
+		}
+		// Broad searches keep every hit
+		SearchHitBuffer hits = FileUtils.findStringHits(data, table, "bcd", false, 1, null);
+		assertEquals(25000, hits.size());
+		assertEquals(25, hits.pageCount(1000));
+		assertEquals(1000, hits.page(24, 1000).size());
+		assertEquals(4 * 24001 + 1, hits.page(24, 1000).get(1).offset());
+		assertTrue(hits.page(25, 1000).isEmpty());
+		List<TableSearchResult> results = FileUtils.multiFindString(data, table, "bcd", false, 1);
+		assertEquals(hits.size(), results.size());
+		for (int i = 0; i < hits.size(); i++) {
+			assertEquals(hits.offset(i), results.get(i).getOffset());
+			assertEquals(results.get(i), FileUtils.toTableResult(table, "bcd", hits.get(i)));
+		}
+		assertEquals(findStringPerOffset(data, table, "Bcd", true), hits.offsets().boxed().toList());
+	}
+
+	/**
+	 * Decodes the string at every offset, the reference for multiFindString.
+	 */
+	private static List<Integer> findStringPerOffset(byte[] data, HexTable table, String search, boolean ignoreCase) {
+		List<Integer> res = new ArrayList<>();
+		String searchString = ignoreCase ? search.toUpperCase() : search;
+		int i = 0;
+		while (i < data.length - search.length()) {
+			String word = table.toAscii(Arrays.copyOfRange(data, i, i + search.length()), true);
+			if (ignoreCase) {
+				word = word.toUpperCase();
+			}
+			boolean equal = word.length() >= search.length();
+			for (int j = 0; equal && j < search.length(); j++) {
+				equal = searchString.charAt(j) == '*' || searchString.charAt(j) == word.charAt(j);
+			}
+			if (equal) {
+				res.add(i);
+				i += search.length();
+			}
+			else {
+				i++;
+			}
+		}
+		return res;
+	}
+
+	@Test
+	public void searchAllStrings() throws IOException {
+		java.nio.file.Path base = java.nio.file.Files.createTempDirectory("searchAllStrings");
+		java.nio.file.Path dictFile = base.resolve("dict.txt");
+		Files.write(dictFile, Arrays.asList("hello", "world"));
+		String extractFile = base.resolve("data.ext").toString();
+		// Nothing found, nothing written
+		FileUtils.searchAllStrings(new HexTable(0), new byte[64], 1, "00", dictFile.toString(), extractFile);
+		assertFalse(new File(extractFile).exists());
+		assertFalse(new File(extractFile + Constants.OFFSET_EXTENSION).exists());
+		byte[] data = new byte[64];
+		byte[] text = "hello world".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+		System.arraycopy(text, 0, data, 10, text.length);
+		FileUtils.searchAllStrings(new HexTable(0), data, 1, "00", dictFile.toString(), extractFile);
+		assertTrue(FileUtils.getAsciiFile(extractFile).contains("hello world"));
+		assertEquals("0000000A-00000016-00", FileUtils.getAsciiFile(extractFile + Constants.OFFSET_EXTENSION));
 	}
 
 	@Test
@@ -0,0 +1,120 @@
+package com.wave.hextractor.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ScanUtilsTest {
+
+	private static List<Integer> findAllPerOffset(byte[] data, byte[] pattern, int from, int to) {
+		List<Integer> res = new ArrayList<>();
+		for (int i = from; i + pattern.length <= to; i++) {
+			boolean match = true;
+			for (int j = 0; j < pattern.length && match; j++) {
+				match = data[i + j] == pattern[j];
+			}
+			if (match) {
+				res.add(i);
+			}
+		}
+		return res;
+	}
+
+	@Test
+	public void findAll() {
+		Random random = new Random(14);
+		byte[] data = new byte[ScanUtils.MIN_CHUNK_SIZE * 5 + 123];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) random.nextInt(3);
+		}
+		// Occurrences across every chunk boundary
+		byte[] pattern = {0, 1, 2, 1, 0, 0};
+		for (int i = 1; i <= 5; i++) {
+			for (int shift = -pattern.length; shift <= 0; shift++) {
+				System.arraycopy(pattern, 0, data, ScanUtils.MIN_CHUNK_SIZE * i + shift, pattern.length);
+			}
+		}
+		List<Integer> expected = findAllPerOffset(data, pattern, 0, data.length);
+		assertTrue(expected.size() > 10);
+		assertEquals(expected, ScanUtils.findAll(data, pattern, 0, data.length));
+		assertEquals(findAllPerOffset(data, pattern, 777, 300000), ScanUtils.findAll(data, pattern, 777, 300000));
+		assertEquals(findAllPerOffset(data, new byte[]{2}, 0, data.length),
+				ScanUtils.findAll(data, new byte[]{2}, 0, data.length));
+		assertTrue(ScanUtils.findAll(data, pattern, 10, 12).isEmpty());
+		assertTrue(ScanUtils.findAll(data, new byte[0], 0, data.length).isEmpty());
+	}
+
+	@Test
+	public void findAllAtTheEnd() {
+		byte[] data = {9, 9, 9, 1, 2, 3};
+		// At the last possible start and ending exactly at to
+		assertEquals(List.of(3), ScanUtils.findAll(data, new byte[]{1, 2, 3}, 0, 6));
+		assertEquals(List.of(2), ScanUtils.findAll(data, new byte[]{9, 1}, 0, 4));
+		assertEquals(List.of(5), ScanUtils.findAll(data, new byte[]{3}, 0, 6));
+		assertTrue(ScanUtils.findAll(data, new byte[]{1, 2, 3}, 0, 5).isEmpty());
+		// And at the end of a range of several chunks, every chunk reads past its last start
+		byte[] large = new byte[ScanUtils.MIN_CHUNK_SIZE * 5];
+		byte[] pattern = {1, 2, 3, 4};
+		System.arraycopy(pattern, 0, large, large.length - pattern.length, pattern.length);
+		assertEquals(List.of(large.length - pattern.length), ScanUtils.findAll(large, pattern, 0, large.length));
+		List<Integer> starts = ScanUtils.findStarts(10, large.length, pattern.length, (from, to, end, results) -> {
+			assertEquals(to + pattern.length - 1, end);
+			results.accept(to - 1);
+		});
+		assertEquals(large.length - pattern.length, starts.get(starts.size() - 1));
+	}
+
+	@Test
+	public void scanMergesChunksInOrder() {
+		int length = 10000;
+		for (int chunkSize : new int[]{1, 7, 100, 4096, length}) {
+			// Every chunk reports its offsets in reverse order, plus the offsets of the overlap and duplicates
+			List<Integer> res = ScanUtils.scan(length, 3, chunkSize, Comparator.<Integer>naturalOrder(),
+					(from, to, end, results) -> {
+						for (int i = end - 1; i >= from; i--) {
+							results.accept(i);
+							results.accept(i);
+						}
+					});
+			assertEquals(length, res.size(), "chunk " + chunkSize);
+			for (int i = 0; i < length; i++) {
+				assertEquals(i, res.get(i));
+			}
+		}
+		assertTrue(ScanUtils.scan(0, 3, Comparator.<Integer>naturalOrder(), (from, to, end, results) -> results.accept(from))
+				.isEmpty());
+	}
+
+	@Test
+	public void scanStreamsChunksInOrder() {
+		int length = 100000;
+		int chunkSize = 100;
+		int window = ForkJoinPool.getCommonPoolParallelism() * 2;
+		AtomicInteger started = new AtomicInteger();
+		List<Integer> res = new ArrayList<>();
+		Thread caller = Thread.currentThread();
+		ScanUtils.scan(length, 0, chunkSize, Comparator.<Integer>naturalOrder(), (from, to, end, results) -> {
+			started.incrementAndGet();
+			results.accept(from);
+		}, from -> {
+			assertSame(caller, Thread.currentThread());
+			// Only a few chunks are scanned ahead of the ones reported
+			assertTrue(started.get() <= res.size() + window, started.get() + " " + res.size());
+			res.add(from);
+		});
+		assertEquals(length / chunkSize, res.size());
+		for (int i = 0; i < res.size(); i++) {
+			assertEquals(i * chunkSize, res.get(i));
+		}
+	}
+
+}